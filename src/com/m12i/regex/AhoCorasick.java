@@ -0,0 +1,300 @@
+package com.m12i.regex;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick法による辞書照合オートマトン.
+ * 正規表現パターンが多数のリテラル（文字列）の選択（{@code foo|bar|baz|...}）だけで構成される場合に、
+ * DFAに代わってパターンマッチを行います。
+ * 構築にかかる時間はリテラルの長さの合計に比例し、探索にかかる時間はリテラルの数によらず入力文字列の長さに比例します。
+ * <p>トライ木の状態遷移はプリミティブ型の平坦な配列で表現されます。
+ * 状態ごとの遷移は文字の昇順に整列されて格納され、二分探索により参照されます。
+ * 失敗遷移と、その状態に到達した時点で終了するもっとも長いリテラルの長さは構築時に計算されます。</p>
+ * <p>このオブジェクトはイミュータブルであり、複数のスレッドで共有することができます。</p>
+ */
+final class AhoCorasick {
+	/**
+	 * 辞書照合オートマトンを使用するリテラルの数の下限.
+	 * リテラルの数が少ない場合はDFAのほうが高速です。
+	 */
+	static final int MIN_WORDS = 32;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * 構文木がリテラルの選択だけで構成されていればそれを辞書照合オートマトンに変換する.
+	 * @param node 構文木
+	 * @return 辞書照合オートマトン（リテラルの選択でない場合や表明を含む場合、リテラルの数が{@link #MIN_WORDS}未満の場合は{@code null}）
+	 */
+	static AhoCorasick of(final Node node) {
+		// 表明を含むパターンはリテラルの一致だけでは判定できない
+		if (node.hasAssertion()) {
+			return null;
+		}
+		final List<String> words = new ArrayList<String>();
+		// 選択の木を反復によりたどって各選択肢のリテラルを集める
+		final Deque<Node> todo = new ArrayDeque<Node>();
+		todo.push(node);
+		while (!todo.isEmpty()) {
+			final Node n = todo.pop();
+			if (n.kind == Node.Kind.GROUP) {
+				todo.push(n.left);
+				continue;
+			}
+			if (n.kind == Node.Kind.UNION) {
+				todo.push(n.right);
+				todo.push(n.left);
+				continue;
+			}
+			final String exact = Literals.analyze(n).exact;
+			if (exact == null) {
+				return null;
+			}
+			words.add(exact);
+		}
+		return words.size() < MIN_WORDS ? null : new AhoCorasick(words);
+	}
+
+	// 状態IDをキーにして遷移の一覧の開始位置を管理（状態IDが s の遷移は edgeStart[s] から edgeStart[s + 1] - 1 まで）
+	private final int[] edgeStart;
+	// 遷移の入力文字（状態ごとに昇順に整列済み）
+	private final char[] edgeChar;
+	// 遷移先の状態ID
+	private final int[] edgeTarget;
+	// 状態IDをキーにして失敗遷移の遷移先を管理
+	private final int[] fail;
+	// 状態IDをキーにしてその状態でリテラルが終了するかどうかを管理
+	private final boolean[] terminal;
+	// 状態IDをキーにしてその状態に到達した時点で終了するもっとも長いリテラルの長さを管理（ない場合は0）
+	private final int[] longest;
+	/**
+	 * もっとも長いリテラルの長さ.
+	 */
+	private final int maxLength;
+	/**
+	 * もととなったリテラル.
+	 */
+	private final List<String> words;
+
+	/**
+	 * リテラルの一覧をもとにオブジェクトを初期化する.
+	 * リテラルを辞書順に整列したうえで、同じ接頭辞をもつリテラルの範囲を幅優先でたどってトライ木を構築します。
+	 * 状態IDは幅優先の順に割り当てられ、各状態の遷移は文字の昇順に連続して格納されます。
+	 * @param words リテラルの一覧
+	 */
+	AhoCorasick(final List<String> words) {
+		this.words = words;
+		final String[] sorted = words.toArray(new String[words.size()]);
+		Arrays.sort(sorted);
+		int capacity = 1;
+		int max = 0;
+		for (final String word : sorted) {
+			capacity += word.length();
+			max = Math.max(max, word.length());
+		}
+		this.maxLength = max;
+		// 状態IDをキーにしてその状態の接頭辞をもつリテラルの範囲（sorted[lo] から sorted[hi - 1] まで）と深さを管理
+		final int[] lo = new int[capacity];
+		final int[] hi = new int[capacity];
+		final int[] depth = new int[capacity];
+		final int[] edgeStart = new int[capacity + 1];
+		final char[] edgeChar = new char[capacity];
+		final int[] edgeTarget = new int[capacity];
+		final boolean[] terminal = new boolean[capacity];
+		hi[0] = sorted.length;
+		int size = 1;
+		int edges = 0;
+		for (int s = 0; s < size; s ++) {
+			final int d = depth[s];
+			int i = lo[s];
+			// 接頭辞そのものであるリテラルは範囲の先頭に集まる
+			while (i < hi[s] && sorted[i].length() == d) {
+				terminal[s] = true;
+				i ++;
+			}
+			while (i < hi[s]) {
+				final char c = sorted[i].charAt(d);
+				int j = i + 1;
+				while (j < hi[s] && sorted[j].charAt(d) == c) {
+					j ++;
+				}
+				lo[size] = i;
+				hi[size] = j;
+				depth[size] = d + 1;
+				edgeChar[edges] = c;
+				edgeTarget[edges] = size;
+				edges ++;
+				size ++;
+				i = j;
+			}
+			edgeStart[s + 1] = edges;
+		}
+		this.edgeStart = Arrays.copyOf(edgeStart, size + 1);
+		this.edgeChar = Arrays.copyOf(edgeChar, edges);
+		this.edgeTarget = Arrays.copyOf(edgeTarget, edges);
+		this.terminal = Arrays.copyOf(terminal, size);
+		// 幅優先（状態IDの順）で失敗遷移と終了するリテラルの長さを計算する
+		this.fail = new int[size];
+		this.longest = new int[size];
+		for (int s = 0; s < size; s ++) {
+			longest[s] = terminal[s] ? depth[s] : longest[fail[s]];
+			for (int e = edgeStart[s]; e < edgeStart[s + 1]; e ++) {
+				fail[edgeTarget[e]] = s == 0 ? 0 : next(fail[s], edgeChar[e]);
+			}
+		}
+	}
+
+	/**
+	 * リテラルをUTF-8で符号化したバイト列（各バイトを{@code 0}から{@code 255}までの値の文字とみなした文字列）に
+	 * 置き換えた辞書照合オートマトンを返す.
+	 * バイト単位のパターンマッチで使用します（{@link Utf8}）。
+	 * サロゲートを含むリテラルはバイト単位のDFAと同様に適合しないため取り除かれます。
+	 * @return 辞書照合オートマトン
+	 */
+	AhoCorasick utf8() {
+		final List<String> encoded = new ArrayList<String>(words.size());
+		for (final String word : words) {
+			boolean surrogate = false;
+			for (int i = 0; i < word.length(); i ++) {
+				surrogate |= Character.isSurrogate(word.charAt(i));
+			}
+			if (surrogate) {
+				continue;
+			}
+			final byte[] bytes = word.getBytes(UTF_8);
+			final char[] chars = new char[bytes.length];
+			for (int i = 0; i < bytes.length; i ++) {
+				chars[i] = (char) (bytes[i] & 0xFF);
+			}
+			encoded.add(new String(chars));
+		}
+		return new AhoCorasick(encoded);
+	}
+	/**
+	 * 入力文字列の範囲全体がいずれかのリテラルと一致するかどうかを返す.
+	 * @param input 入力文字列
+	 * @param from 開始位置
+	 * @param to 終了位置（この位置の文字は含まない）
+	 * @return 検証結果
+	 */
+	boolean matches(final CharSequence input, final int from, final int to) {
+		int s = 0;
+		for (int i = from; i < to; i ++) {
+			s = child(s, input.charAt(i));
+			if (s < 0) {
+				return false;
+			}
+		}
+		return terminal[s];
+	}
+	/**
+	 * 入力文字列の指定された位置からはじまるリテラルを探して、その終了位置を返す.
+	 * @param input 入力文字列
+	 * @param from 開始位置
+	 * @param to 評価を終了する位置（この位置の文字は評価しない）
+	 * @param longest {@code true}の場合はもっとも長いリテラルを、{@code false}の場合はもっとも短いリテラルを探す
+	 * @return 終了位置（該当するリテラルがない場合は{@code -1}）
+	 */
+	int matchPrefix(final CharSequence input, final int from, final int to, final boolean longest) {
+		int s = 0;
+		int last = -1;
+		for (int i = from; i < to; i ++) {
+			s = child(s, input.charAt(i));
+			if (s < 0) {
+				break;
+			}
+			if (terminal[s]) {
+				last = i + 1;
+				if (!longest) {
+					break;
+				}
+			}
+		}
+		return last;
+	}
+	/**
+	 * 入力文字列の範囲のなかでいずれかのリテラルと一致するもっとも左側の部分文字列のうちもっとも長いものの位置を返す.
+	 * はじめにリテラルが終了する位置を失敗遷移を使用した1回の走査で求めたうえで、
+	 * それより左側からはじまりうる位置についてだけトライ木を直接たどって一致するリテラルを確認します。
+	 * @param input 入力文字列
+	 * @param from 探索を開始する位置
+	 * @param to 探索を終了する位置（この位置の文字は評価しない）
+	 * @return 開始位置と終了位置からなる配列、一致する部分文字列がない場合は{@code null}
+	 */
+	int[] locate(final CharSequence input, final int from, final int to) {
+		int s = 0;
+		int firstEnd = -1;
+		for (int i = from; i < to; i ++) {
+			s = next(s, input.charAt(i));
+			if (longest[s] > 0) {
+				firstEnd = i + 1;
+				break;
+			}
+		}
+		if (firstEnd < 0) {
+			return null;
+		}
+		// firstEnd で終了するもっとも長いリテラルより左側からはじまる部分文字列は firstEnd より後ろで終了し、
+		// その長さはリテラルの長さの上限を超えない
+		final int last = firstEnd - longest[s];
+		for (int start = Math.max(from, firstEnd - maxLength + 1); start < last; start ++) {
+			final int end = matchPrefix(input, start, to, true);
+			if (end >= 0) {
+				return new int[]{start, end};
+			}
+		}
+		return new int[]{last, matchPrefix(input, last, to, true)};
+	}
+	/**
+	 * 確保済みのメモリの量を概算して返す.
+	 * @return メモリの量（バイト）
+	 */
+	long footprint() {
+		return edgeStart.length * 4L + edgeChar.length * 6L + (fail.length + longest.length) * 4L + terminal.length;
+	}
+	/**
+	 * 失敗遷移を使用して状態遷移を行う.
+	 * @param from 遷移元の状態ID
+	 * @param by 入力文字
+	 * @return 遷移先の状態ID
+	 */
+	private int next(final int from, final char by) {
+		int s = from;
+		while (true) {
+			final int t = child(s, by);
+			if (t >= 0) {
+				return t;
+			}
+			if (s == 0) {
+				return 0;
+			}
+			s = fail[s];
+		}
+	}
+	/**
+	 * トライ木の子を返す.
+	 * @param from 遷移元の状態ID
+	 * @param by 入力文字
+	 * @return 遷移先の状態ID（子がない場合は{@code -1}）
+	 */
+	private int child(final int from, final char by) {
+		int lo = edgeStart[from];
+		int hi = edgeStart[from + 1] - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			final char c = edgeChar[mid];
+			if (c < by) {
+				lo = mid + 1;
+			} else if (c > by) {
+				hi = mid - 1;
+			} else {
+				return edgeTarget[mid];
+			}
+		}
+		return -1;
+	}
+}
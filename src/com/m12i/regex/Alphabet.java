@@ -0,0 +1,126 @@
+package com.m12i.regex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * 入力文字クラスの一覧.
+ * {@link NFA}の状態遷移パスで使用されるすべての{@link Char}オブジェクトの境界をもとに
+ * 入力文字（{@code char}）の値域をいくつかの区間に分割したうえで、
+ * いずれの{@link Char}オブジェクトに適合するかが等しい区間どうしを1つの入力文字クラス（同値類）にまとめ、
+ * それぞれの入力文字クラスにIDを割り当てます。
+ * 同じ入力文字クラスに属する文字はいずれの状態遷移パスからも区別されないため、
+ * {@link DFA}は文字そのものではなく入力文字クラスIDをキーにして状態遷移表を管理することができ、
+ * 状態遷移表の幅は文字クラスの大きさによらず入力文字クラスの数に比例します。
+ * <p>入力文字から入力文字クラスIDへの変換は2段階の表引きにより定数時間で行われます。
+ * 1段目の表は文字の上位8ビットをキーにして2段目の表のなかの256文字分のブロックの開始位置を管理し、
+ * 内容の等しいブロックは共有されます。</p>
+ */
+final class Alphabet {
+	private static final int BLOCK = 256;
+
+	/**
+	 * 状態遷移パスで使用される入力文字のセットをもとに入力文字クラスの一覧を初期化する.
+	 * @param chars 入力文字のセット
+	 * @return 入力文字クラスの一覧
+	 */
+	static Alphabet of(final Set<Char> chars) {
+		final SortedSet<Integer> bounds = new TreeSet<Integer>();
+		for (final Char ch : chars) {
+			ch.collectBounds(bounds);
+		}
+		return new Alphabet(bounds, chars.toArray(new Char[chars.size()]));
+	}
+
+	// 文字の上位8ビットをキーにしてブロックの開始位置を管理
+	private final int[] index;
+	// 入力文字クラスIDをブロック単位で管理
+	private final char[] blocks;
+	// 入力文字クラスIDをキーにして代表文字を管理
+	private final char[] representatives;
+
+	private Alphabet(final SortedSet<Integer> bounds, final Char[] chars) {
+		// 区間の開始位置（先頭の区間は文字コード0からはじまる）
+		final int[] starts = new int[bounds.size() + 1];
+		final Iterator<Integer> iter = bounds.iterator();
+		for (int i = 1; i < starts.length; i ++) {
+			starts[i] = iter.next();
+		}
+		// 区間の代表文字が適合する{@link Char}オブジェクトの集合（シグネチャ）が等しい区間に同じIDを割り当てる
+		final Map<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+		final char[] table = new char[Character.MAX_VALUE + 1];
+		final char[] representatives = new char[starts.length];
+		for (int i = 0; i < starts.length; i ++) {
+			final char r = (char) starts[i];
+			final BitSet signature = new BitSet(chars.length);
+			for (int j = 0; j < chars.length; j ++) {
+				if (chars[j].matches(r)) {
+					signature.set(j);
+				}
+			}
+			Integer id = ids.get(signature);
+			if (id == null) {
+				id = ids.size();
+				ids.put(signature, id);
+				representatives[id] = r;
+			}
+			final int end = i + 1 < starts.length ? starts[i + 1] : table.length;
+			Arrays.fill(table, starts[i], end, (char) id.intValue());
+		}
+		this.representatives = Arrays.copyOf(representatives, ids.size());
+		// 内容の等しいブロックを共有して2段目の表を構成する
+		final Map<String, Integer> offsets = new HashMap<String, Integer>();
+		final StringBuilder buff = new StringBuilder();
+		this.index = new int[table.length / BLOCK];
+		for (int b = 0; b < index.length; b ++) {
+			final String block = new String(table, b * BLOCK, BLOCK);
+			Integer offset = offsets.get(block);
+			if (offset == null) {
+				offset = buff.length();
+				offsets.put(block, offset);
+				buff.append(block);
+			}
+			index[b] = offset;
+		}
+		this.blocks = buff.toString().toCharArray();
+	}
+
+	/**
+	 * 入力文字クラスの数を返す.
+	 * @return 入力文字クラスの数
+	 */
+	int size() {
+		return representatives.length;
+	}
+	/**
+	 * 入力文字が属する入力文字クラスのIDを返す.
+	 * @param ch 入力文字
+	 * @return 入力文字クラスID
+	 */
+	int classOf(final char ch) {
+		return blocks[index[ch >>> 8] + (ch & 0xFF)];
+	}
+	/**
+	 * 入力文字クラスを代表する文字を返す.
+	 * 同じ入力文字クラスに属する文字はすべて同じ状態遷移を引き起こすため、
+	 * 状態遷移の計算にはこの文字を使用すれば十分です。
+	 * @param id 入力文字クラスID
+	 * @return 代表文字
+	 */
+	char representative(final int id) {
+		return representatives[id];
+	}
+	/**
+	 * 確保済みのメモリの量を概算して返す.
+	 * @return メモリの量（バイト）
+	 */
+	long footprint() {
+		return index.length * 4L + (blocks.length + representatives.length) * 2L;
+	}
+}
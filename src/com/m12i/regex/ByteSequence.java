@@ -0,0 +1,58 @@
+package com.m12i.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * バイト列を文字シーケンスとして参照するビュー.
+ * 各バイトは{@code 0}から{@code 255}までの値の文字として扱われます（{@link Utf8}）。
+ * もとのバッファはコピーされず、その位置（position）やリミット（limit）も変更されません。
+ * バッファはヒープ・バッファとダイレクト・バッファのいずれでもかまいません。
+ * <p>{@link #toString()}はバイト列をUTF-8として復号した文字列を返します。</p>
+ */
+final class ByteSequence implements CharSequence {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+
+	/**
+	 * バッファの位置（position）からリミット（limit）までのバイト列をもとにオブジェクトを初期化する.
+	 * @param buffer バッファ
+	 */
+	ByteSequence(final ByteBuffer buffer) {
+		this(buffer, buffer.position(), buffer.remaining());
+	}
+	private ByteSequence(final ByteBuffer buffer, final int offset, final int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+	@Override
+	public char charAt(final int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException();
+		}
+		return (char) (buffer.get(offset + index) & 0xFF);
+	}
+	@Override
+	public CharSequence subSequence(final int start, final int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new ByteSequence(buffer, offset + start, end - start);
+	}
+	@Override
+	public String toString() {
+		final ByteBuffer view = buffer.duplicate();
+		view.limit(offset + length);
+		view.position(offset);
+		return UTF_8.decode(view).toString();
+	}
+}
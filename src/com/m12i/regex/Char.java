@@ -1,22 +1,36 @@
 package com.m12i.regex;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 状態遷移のための入力文字をあらわすオブジェクト.
- * 空文字（イプシロン）やドットや文字クラスもこのオブジェクトで表現されます。
+ * 空文字（イプシロン）やドットや文字クラス、位置に関する表明（{@link Look}）もこのオブジェクトで表現されます。
+ * <p>文字クラスは文字の区間の集合として表現されます。
+ * 区間は昇順に整列され、重なりあう区間や隣接する区間は1つにまとめられるため（正規形）、
+ * 同じ文字の集合をあらわす文字クラスは記述の仕方によらず同じオブジェクトとなります。
+ * 入力文字が文字クラスに属するかどうかは区間の二分探索により検証されます。</p>
  */
 final class Char {
 	static enum Kind {
-		CHAR, KLASS, NEGATIVE_KLASS, EPSILON, DOT;
+		CHAR, KLASS, NEGATIVE_KLASS, EPSILON, DOT, ASSERTION;
 	}
 	
 	static final Char EPSILON = new Char(-1, null, Kind.EPSILON);
 	static final Char DOT = new Char(-1, null, Kind.DOT);
-	private static final Map<Character,Char> kharCache = new HashMap<Character,Char>();
-	private static final Map<String,Char> klassCache = new HashMap<String,Char>();
-	private static final Map<String,Char> negativeKlassCache = new HashMap<String,Char>();
+	private static final Char[] assertions = {
+		new Char(Look.TEXT_START, null, Kind.ASSERTION),
+		new Char(Look.LINE_START, null, Kind.ASSERTION),
+		new Char(Look.TEXT_END, null, Kind.ASSERTION),
+		new Char(Look.LINE_END, null, Kind.ASSERTION),
+		new Char(Look.WORD_BOUNDARY, null, Kind.ASSERTION),
+		new Char(Look.NOT_WORD_BOUNDARY, null, Kind.ASSERTION),
+	};
+	private static final ConcurrentMap<Character,Char> kharCache = new ConcurrentHashMap<Character,Char>();
+	private static final ConcurrentMap<String,Char> klassCache = new ConcurrentHashMap<String,Char>();
+	private static final ConcurrentMap<String,Char> negativeKlassCache = new ConcurrentHashMap<String,Char>();
 	
 	/**
 	 * 通常の文字をあらわす{@link Char}オブジェクトを返す.
@@ -26,7 +40,7 @@ final class Char {
 	static Char khar(final char c) {
 		// もし同じ意味のクラスがすでに定義済みならそれを返す
 		// ＊これにより同じ意味のオブジェクトが重複して生成されるのを防止する
-		// ＊ただしこのロジックはスレッド・アンセーフである
+		// ＊複数のスレッドが同時に生成した場合も先に登録されたインスタンスだけが使用される
 		final Char cached = kharCache.get(c);
 		if (cached != null) {
 			// 定義済みインスタンスがあればそれを返す
@@ -35,20 +49,36 @@ final class Char {
 			// 未定義であれば新たにインスタンスを生成
 			final Char result = new Char(c, null, Kind.CHAR);
 			// キャッシュに登録してから呼び出し元に返す
-			kharCache.put(c, result);
-			return result;
+			final Char raced = kharCache.putIfAbsent(c, result);
+			return raced != null ? raced : result;
 		}
 	}
+	/**
+	 * 位置に関する表明をあらわす{@link Char}オブジェクトを返す.
+	 * 表明による状態遷移は入力文字を消費せず、直前と直後の文字の種別が表明を満たす場合にだけ行われます。
+	 * @param assertion 表明（{@link Look#TEXT_START}など）
+	 * @return {@link Char}オブジェクト
+	 */
+	static Char assertion(final char assertion) {
+		for (final Char each : assertions) {
+			if (each.c == assertion) {
+				return each;
+			}
+		}
+		throw new IllegalArgumentException("Unknown assertion.");
+	}
 	/**
 	 * 文字クラスをあらわす{@link Char}オブジェクトを返す.
-	 * 引数の{@code char[]}の要素は文字クラスに属する文字をあらわします。
-	 * @param cs 文字クラスに属する文字配列
+	 * 引数の配列は文字クラスに属する文字の区間の下限と上限（いずれも区間に含まれる）を交互に格納します。
+	 * 区間の順序や重なりは問いません。
+	 * @param ranges 文字クラスに属する文字の区間の列
 	 * @return {@link Char}オブジェクト
 	 */
-	static Char klass(final String klass) {
+	static Char klass(final int[] ranges) {
+		final String klass = normalize(ranges);
 		// もし同じ意味のクラスがすでに定義済みならそれを返す
 		// ＊これにより同じ意味のオブジェクトが重複して生成されるのを防止する
-		// ＊ただしこのロジックはスレッド・アンセーフである
+		// ＊複数のスレッドが同時に生成した場合も先に登録されたインスタンスだけが使用される
 		final Char cached = klassCache.get(klass);
 		if (cached != null) {
 			// 定義済みインスタンスがあればそれを返す
@@ -57,20 +87,22 @@ final class Char {
 			// 未定義であれば新たにインスタンスを生成
 			final Char result = new Char(-1, klass, Kind.KLASS);
 			// キャッシュに登録してから呼び出し元に返す
-			klassCache.put(klass, result);
-			return result;
+			final Char raced = klassCache.putIfAbsent(klass, result);
+			return raced != null ? raced : result;
 		}
 	}
 	/**
 	 * 否定文字クラスをあらわす{@link Char}オブジェクトを返す.
-	 * 引数の{@code char[]}の要素は文字クラスに属さない文字をあらわします。
-	 * @param cs 文字クラスに属さない文字配列
+	 * 引数の配列は文字クラスに属さない文字の区間の下限と上限（いずれも区間に含まれる）を交互に格納します。
+	 * 区間の順序や重なりは問いません。
+	 * @param ranges 文字クラスに属さない文字の区間の列
 	 * @return {@link Char}オブジェクト
 	 */
-	static Char negativeKlass(final String klass) {
+	static Char negativeKlass(final int[] ranges) {
+		final String klass = normalize(ranges);
 		// もし同じ意味のクラスがすでに定義済みならそれを返す
 		// ＊これにより同じ意味のオブジェクトが重複して生成されるのを防止する
-		// ＊ただしこのロジックはスレッド・アンセーフである
+		// ＊複数のスレッドが同時に生成した場合も先に登録されたインスタンスだけが使用される
 		final Char cached = negativeKlassCache.get(klass);
 		if (cached != null) {
 			// 定義済みインスタンスがあればそれを返す
@@ -79,8 +111,159 @@ final class Char {
 			// 未定義であれば新たにインスタンスを生成
 			final Char result = new Char(-1, klass, Kind.NEGATIVE_KLASS);
 			// キャッシュに登録してから呼び出し元に返す
-			negativeKlassCache.put(klass, result);
-			return result;
+			final Char raced = negativeKlassCache.putIfAbsent(klass, result);
+			return raced != null ? raced : result;
+		}
+	}
+	
+	/**
+	 * 文字の区間の列を正規形にして文字列として返す.
+	 * 戻り値の文字列は区間の下限と上限を交互に格納し、区間は昇順に並び、互いに重なりも隣接もしません。
+	 * @param ranges 文字の区間の列
+	 * @return 正規形の区間の列
+	 */
+	private static String normalize(final int[] ranges) {
+		// 区間を下限の昇順に整列する
+		final long[] sorted = new long[ranges.length / 2];
+		for (int i = 0; i < sorted.length; i ++) {
+			sorted[i] = ((long) ranges[i * 2] << 32) | ranges[i * 2 + 1];
+		}
+		Arrays.sort(sorted);
+		final StringBuilder buff = new StringBuilder(ranges.length);
+		int lo = -1;
+		int hi = -2;
+		for (final long range : sorted) {
+			final int rangeLo = (int) (range >>> 32);
+			final int rangeHi = (int) range;
+			if (rangeLo > hi + 1) {
+				// 重なりも隣接もしない区間があらわれたらそれまでの区間を確定する
+				if (lo >= 0) {
+					buff.append((char) lo).append((char) hi);
+				}
+				lo = rangeLo;
+				hi = rangeHi;
+			} else {
+				hi = Math.max(hi, rangeHi);
+			}
+		}
+		if (lo >= 0) {
+			buff.append((char) lo).append((char) hi);
+		}
+		return buff.toString();
+	}
+	/**
+	 * 文字の区間の列に、区間に属する文字の大文字・小文字の変種を加えた区間の列を返す.
+	 * 大文字・小文字を区別しないパターンマッチのために文字と文字クラスを変換するのに使用します。
+	 * 変換はコンパイル時に1度だけ行われ、DFAの状態遷移は変換後の文字クラスについて構成されるため、
+	 * パターンマッチの1文字あたりの処理時間は大文字・小文字を区別する場合と変わりません。
+	 * <p>ASCIIの範囲だけを対象とする場合は{@code A-Z}と{@code a-z}を互いに加えます。
+	 * Unicodeを対象とする場合は{@link Character#toUpperCase(char)}と{@link Character#toLowerCase(char)}により
+	 * 互いに移りあう基本多言語面（BMP）の文字をすべて加えます（たとえば{@code k}、{@code K}とケルビン記号）。</p>
+	 * @param ranges 文字の区間の列
+	 * @param unicode Unicodeの大文字・小文字を対象とする場合は{@code true}、ASCIIの範囲だけを対象とする場合は{@code false}
+	 * @return 元の区間の列の後に加えた文字の区間を続けた列（加えた文字がなければ元の区間の列と同じ長さ）
+	 */
+	static int[] caseFold(final int[] ranges, final boolean unicode) {
+		int[] result = Arrays.copyOf(ranges, ranges.length + 4);
+		int n = ranges.length;
+		for (int i = 0; i < ranges.length; i += 2) {
+			final int lo = ranges[i];
+			final int hi = ranges[i + 1];
+			if (!unicode) {
+				// 区間と A-Z、a-z の重なりをずらして加える
+				for (final int base : new int[]{'A', 'a'}) {
+					final int from = Math.max(lo, base);
+					final int to = Math.min(hi, base + 25);
+					if (from <= to) {
+						if (n + 2 > result.length) {
+							result = Arrays.copyOf(result, result.length * 2);
+						}
+						final int shift = base == 'A' ? 'a' - 'A' : 'A' - 'a';
+						result[n ++] = from + shift;
+						result[n ++] = to + shift;
+					}
+				}
+				continue;
+			}
+			final char[] orbits = CaseOrbits.NEXT;
+			for (int ch = lo; ch <= Math.min(hi, Character.MAX_VALUE); ch ++) {
+				for (int variant = orbits[ch]; variant != ch; variant = orbits[variant]) {
+					if (variant < lo || hi < variant) {
+						if (n + 2 > result.length) {
+							result = Arrays.copyOf(result, result.length * 2);
+						}
+						result[n ++] = variant;
+						result[n ++] = variant;
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+	/**
+	 * 大文字・小文字の変換により互いに移りあう文字の集合（軌道）の表.
+	 * 表ははじめて使用される時点で構築されます。
+	 */
+	private static final class CaseOrbits {
+		/**
+		 * 文字をキーにして同じ軌道に属する次の文字（昇順で循環）を管理する表.
+		 * 変種をもたない文字については自分自身となります。
+		 */
+		static final char[] NEXT = build();
+		private static char[] build() {
+			final int size = Character.MAX_VALUE + 1;
+			final int[] parent = new int[size];
+			for (int ch = 0; ch < size; ch ++) {
+				parent[ch] = ch;
+			}
+			for (int ch = 0; ch < size; ch ++) {
+				if (!isSurrogate(ch)) {
+					union(parent, ch, Character.toUpperCase((char) ch));
+					union(parent, ch, Character.toLowerCase((char) ch));
+				}
+			}
+			// 同じ集合に属する文字を昇順につないで循環させる
+			final int[] first = new int[size];
+			final int[] last = new int[size];
+			Arrays.fill(first, -1);
+			final char[] next = new char[size];
+			for (int ch = 0; ch < size; ch ++) {
+				final int root = find(parent, ch);
+				if (first[root] < 0) {
+					first[root] = ch;
+				} else {
+					next[last[root]] = (char) ch;
+				}
+				last[root] = ch;
+			}
+			for (int ch = 0; ch < size; ch ++) {
+				final int root = find(parent, ch);
+				if (last[root] == ch) {
+					next[ch] = (char) first[root];
+				}
+			}
+			return next;
+		}
+		private static int find(final int[] parent, final int ch) {
+			int root = ch;
+			while (parent[root] != root) {
+				root = parent[root];
+			}
+			// 経路を圧縮する
+			int i = ch;
+			while (parent[i] != root) {
+				final int up = parent[i];
+				parent[i] = root;
+				i = up;
+			}
+			return root;
+		}
+		private static void union(final int[] parent, final int a, final int b) {
+			final int ra = find(parent, a);
+			final int rb = find(parent, b);
+			if (ra != rb) {
+				parent[Math.max(ra, rb)] = Math.min(ra, rb);
+			}
 		}
 	}
 	
@@ -89,12 +272,15 @@ final class Char {
 	 */
 	final Kind kind;
 	private final int c;
+	// 文字クラスに属する（否定文字クラスの場合は属さない）文字の区間の列（正規形）
 	private final String cs;
+	private final char[] bounds;
 	private final int hash;
 	
 	private Char(final int c, final String cs, final Kind kind) {
 		this.c = c;
 		this.cs = cs;
+		this.bounds = cs == null ? null : cs.toCharArray();
 		this.kind = kind;
 		// ハッシュコードを計算する
 		// ＊このオブジェクトはイミュータブルなのでハッシュコードはこの段階で確定する
@@ -108,7 +294,7 @@ final class Char {
 	 * <li>文字そのものをあらわす場合は単純な値比較が行われます。</li>
 	 * <li>文字クラスをあらわす場合はクラスに属する文字との値比較が行われます。</li>
 	 * <li>ドットをあわらす場合はいかなる入力文字も適合するものと見なされます。</li>
-	 * <li>空文字（イプシロン）をあわらす場合はいかなる入力文字も適合しないものと見なされます。</li>
+	 * <li>空文字（イプシロン）や表明をあわらす場合はいかなる入力文字も適合しないものと見なされます。</li>
 	 * </ul>
 	 * @param ch 入力文字
 	 * @return 検証結果
@@ -118,11 +304,11 @@ final class Char {
 			// 文字そのものの場合、入力文字との単純比較でOK
 			return this.c == ch;
 		} else if (kind == Kind.KLASS) {
-			// 文字クラスの場合、文字集合（cs）のなかに入力文字が含まれればOK
-			return -1 < cs.indexOf(ch);
+			// 文字クラスの場合、いずれかの区間に入力文字が含まれればOK
+			return contains(ch);
 		} else if (kind == Kind.NEGATIVE_KLASS) {
-			// 否定文字クラスの場合、文字集合（cs）のなかに入力文字が含まれなければOK
-			return -1 == cs.indexOf(ch);
+			// 否定文字クラスの場合、いずれの区間にも入力文字が含まれなければOK
+			return !contains(ch);
 		} else if (kind == Kind.DOT) {
 			// ドットの場合、入力文字がいかなるものでもOK
 			return true;
@@ -131,6 +317,118 @@ final class Char {
 			return false;
 		}
 	}
+	/**
+	 * 通常の文字をあらわす場合にその文字を、表明をあらわす場合にその種別を返す.
+	 * @return 文字（通常の文字と表明以外の場合は不定）
+	 */
+	char value() {
+		return (char) c;
+	}
+	/**
+	 * 入力文字がいずれかの区間に含まれるかどうかを二分探索により検証する.
+	 * @param ch 入力文字
+	 * @return 検証結果
+	 */
+	private boolean contains(final char ch) {
+		// 入力文字以下の境界（下限と上限の次の文字）の数が奇数であれば区間に含まれる
+		int lo = 0;
+		int hi = bounds.length / 2;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (bounds[mid * 2 + 1] < ch) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo < bounds.length / 2 && bounds[lo * 2] <= ch;
+	}
+	/**
+	 * このオブジェクトが適合する文字の区間の境界をセットに登録する.
+	 * 境界とはその文字の前後で{@link #matches(char)}の結果が変化しうる位置のことです。
+	 * ドットと空文字（イプシロン）はすべての文字について結果が同じなので境界をもちません。
+	 * @param bounds 境界を登録するセット
+	 */
+	void collectBounds(final Set<Integer> bounds) {
+		if (kind == Kind.CHAR) {
+			bounds.add(c);
+			bounds.add(c + 1);
+		} else if (kind == Kind.KLASS || kind == Kind.NEGATIVE_KLASS) {
+			for (int i = 0; i < this.bounds.length; i += 2) {
+				bounds.add((int) this.bounds[i]);
+				bounds.add(this.bounds[i + 1] + 1);
+			}
+		}
+		// 文字の値域を超える境界は不要
+		bounds.remove(Character.MAX_VALUE + 1);
+	}
+	/**
+	 * このオブジェクトが適合する文字をUnicodeのコードポイントの区間の列として返す.
+	 * 戻り値の配列は区間の下限と上限（いずれも区間に含まれる）を交互に格納し、区間は昇順に並びます。
+	 * 通常の文字と文字クラスは基本多言語面（BMP）の文字として扱われ、
+	 * 単独ではUTF-8で符号化できないサロゲート・コードユニットは除外されます。
+	 * ドットと否定文字クラスはサロゲート領域を除くすべてのコードポイントを対象とします。
+	 * 空文字（イプシロン）の場合は空の配列を返します。
+	 * @return コードポイントの区間の列
+	 */
+	int[] ranges() {
+		if (kind == Kind.CHAR) {
+			return isSurrogate(c) ? new int[0] : new int[]{c, c};
+		} else if (kind == Kind.DOT) {
+			return new int[]{0, Character.MIN_SURROGATE - 1, Character.MAX_SURROGATE + 1, Character.MAX_CODE_POINT};
+		} else if (kind != Kind.KLASS && kind != Kind.NEGATIVE_KLASS) {
+			return new int[0];
+		}
+		// 否定文字クラスの場合は区間の補集合を求める
+		// ＊否定文字クラスは基本多言語面（BMP）の外側の文字にも適合する
+		final int[] members;
+		if (kind == Kind.KLASS) {
+			members = new int[bounds.length];
+			for (int i = 0; i < bounds.length; i ++) {
+				members[i] = bounds[i];
+			}
+		} else {
+			members = new int[bounds.length + 2];
+			int n = 0;
+			int next = 0;
+			for (int i = 0; i < bounds.length; i += 2) {
+				if (next < bounds[i]) {
+					members[n ++] = next;
+					members[n ++] = bounds[i] - 1;
+				}
+				next = bounds[i + 1] + 1;
+			}
+			members[n ++] = next;
+			members[n ++] = Character.MAX_CODE_POINT;
+			return withoutSurrogates(Arrays.copyOf(members, n));
+		}
+		return withoutSurrogates(members);
+	}
+	/**
+	 * 区間の列からサロゲート領域を取り除く.
+	 * @param ranges 区間の列（昇順）
+	 * @return サロゲート領域を取り除いた区間の列
+	 */
+	private static int[] withoutSurrogates(final int[] ranges) {
+		final int[] buff = new int[ranges.length + 2];
+		int n = 0;
+		for (int i = 0; i < ranges.length; i += 2) {
+			final int lo = ranges[i];
+			final int hi = ranges[i + 1];
+			if (lo < Character.MIN_SURROGATE) {
+				buff[n ++] = lo;
+				buff[n ++] = Math.min(hi, Character.MIN_SURROGATE - 1);
+			}
+			if (hi > Character.MAX_SURROGATE) {
+				buff[n ++] = Math.max(lo, Character.MAX_SURROGATE + 1);
+				buff[n ++] = hi;
+			}
+		}
+		return Arrays.copyOf(buff, n);
+	}
+	private static boolean isSurrogate(final int ch) {
+		return Character.MIN_SURROGATE <= ch && ch <= Character.MAX_SURROGATE;
+	}
 	@Override
 	public int hashCode() {
 		return hash;
@@ -147,9 +445,7 @@ final class Char {
 	public boolean equals(Object obj) {
 		// 等価性判定は参照そのものの比較でOK
 		// ＊このオブジェクトは重複なし制御されているため参照比較のみでよい
-		if (this == obj)
-			return true;
-		return true;
+		return this == obj;
 	}
 	/**
 	 * オブジェクトの内容を文字列表現として整形する.
@@ -162,21 +458,38 @@ final class Char {
 			return "(epsilon)";
 		} else if (kind == Kind.DOT) {
 			return "(dot)";
+		} else if (kind == Kind.ASSERTION) {
+			return "(assert " + (char) c + ")";
 		} else if (kind == Kind.KLASS) {
 			final StringBuilder buff = new StringBuilder();
 			buff.append('[');
-			buff.append(cs);
+			buff.append(inspectRanges(bounds));
 			buff.append(']');
 			return buff.toString();
 		} else if (kind == Kind.NEGATIVE_KLASS) {
 			final StringBuilder buff = new StringBuilder();
 			buff.append('[');
 			buff.append('^');
-			buff.append(cs);
+			buff.append(inspectRanges(bounds));
 			buff.append(']');
 			return buff.toString();
 		} else {
 			return "?";
 		}
 	}
-}
\ No newline at end of file
+	/**
+	 * 文字の区間の列を文字クラスの記法で整形する.
+	 * @param ranges 文字の区間の列
+	 * @return 整形結果
+	 */
+	static String inspectRanges(final char[] ranges) {
+		final StringBuilder buff = new StringBuilder();
+		for (int i = 0; i < ranges.length; i += 2) {
+			buff.append(Functions.escapedChar(ranges[i]));
+			if (ranges[i] != ranges[i + 1]) {
+				buff.append('-').append(Functions.escapedChar(ranges[i + 1]));
+			}
+		}
+		return buff.toString();
+	}
+}
@@ -4,13 +4,36 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 決定性有限オートマトン（Deterministic Finite Automaton）.
  * 初期状態と受理状態、そして状態遷移パスを管理します。
  * このオブジェクトは{@link NFA}オブジェクトから導出されます。
+ * <p>DFAの状態はパターンマッチの過程で必要になった時点で導出され（遅延構築）、
+ * 導出された状態には0からはじまる連番のIDが割り当てられます。
+ * 状態遷移の結果は状態IDと入力文字クラスID（{@link Alphabet}）をキーにした
+ * 状態遷移表に記録されます（{@link StateStore}）。
+ * 状態と状態遷移表はロックを使用せずに複数のスレッドで共有されるため、
+ * 1つのDFAオブジェクトを複数のスレッドから同時に使用することができます。</p>
+ * <p>{@link #determinize(int)}によりすべての状態をあらかじめ導出して最小化した
+ * DFAを得ることもできます。このDFAはパターンマッチの過程で状態を導出することがありません。</p>
+ * <p>遅延構築されるDFAの状態の数には上限（キャッシュ上限）があり、
+ * 上限に達した時点で導出済みの状態はすべて破棄されて導出がやりなおされます。
+ * 1回のパターンマッチのなかで破棄が頻発する場合、
+ * そのパターンマッチは状態を導出せずにNFAの状態セットを直接遷移させる方式（NFAシミュレーション）に切り替えられます。
+ * これによりどのような入力文字列に対しても使用するメモリの量が制限され、処理時間は入力文字列の長さに比例します。</p>
+ * <p>正規表現パターンが位置に関する表明（{@link Look}）を含む場合、DFAの状態はNFAの状態セットと直前の文字の種別の組となります。
+ * 表明による遷移は状態遷移の際に直後の文字（状態遷移に使用する入力文字）の種別が判明した時点でたどられ、
+ * 受理状態の検証は直後の文字の種別（入力文字列の末尾では{@link Look#EDGE}）ごとに行われます。
+ * そのため表明を含むパターンでもNFAシミュレーションなどに切り替えることなくDFAで評価できます。
+ * 表明を含まないパターンでは直前の文字の種別は区別されず、状態の数は増えません。</p>
  */
 final class DFA {
 	/**
@@ -20,222 +43,1278 @@ final class DFA {
 	 */
 	static final class Runtime {
 		private final DFA dfa;
-		private Long[] currentState;
+		// 使用中の状態と状態遷移表（すべての状態遷移が計算済みのDFAではnull）
+		private StateStore store;
+		private int currentState;
+		// NFAシミュレーションを行うオブジェクト（はじめて切り替える時点で初期化）
+		private Simulator simulator = null;
+		// NFAシミュレーションに切り替えた後であれば true
+		private boolean simulating;
+		// 処理した文字数
+		private long consumed;
+		// 最後にキャッシュを破棄した時点で処理済みだった文字数（破棄していない場合は-1）
+		private long clearedAt;
 		private Runtime(final DFA dfa) {
 			this.dfa = dfa;
-			currentState = dfa.froms;
+			reset();
+		}
+		/**
+		 * 入力文字列（リージョン）の先頭にあたる初期状態に戻す.
+		 * @return このオブジェクト
+		 * @see #reset(int)
+		 */
+		Runtime reset() {
+			return reset(Look.EDGE);
+		}
+		/**
+		 * 初期状態に戻す.
+		 * NFAシミュレーションに切り替えていた場合もDFAによる評価に戻ります。
+		 * 同じオブジェクトを繰り返し使用することで、パターンマッチのたびにNFAシミュレーションのための領域を確保せずにすみます。
+		 * @param before 評価を開始する位置の直前の文字の種別（{@link Look#before(CharSequence, int, int)}）
+		 * @return このオブジェクト
+		 */
+		Runtime reset(final int before) {
+			store = dfa.table == null ? dfa.store.get() : null;
+			currentState = dfa.initialStates[before];
+			consumed = 0;
+			clearedAt = -1;
+			simulating = false;
+			if (dfa.simulated) {
+				simulate(dfa.initialSet, dfa.nfa.look(before));
+			}
+			return this;
+		}
+		/**
+		 * NFAシミュレーションに切り替える.
+		 * @param set 現在の状態に対応するNFAの状態セット
+		 * @param before 現在の状態に対応する直前の文字の種別
+		 */
+		private void simulate(final int[] set, final int before) {
+			if (simulator == null) {
+				simulator = new Simulator(dfa.nfa, dfa.unanchored);
+			}
+			simulator.reset(set, before);
+			simulating = true;
 		}
 		/**
 		 * 入力文字を利用して状態遷移を行う.
 		 * @param by 入力文字
 		 */
 		void doTransition(final char by) {
-			currentState = dfa.transition(currentState, by);
+			consumed ++;
+			final int klass = dfa.alphabet.classOf(by);
+			if (simulating) {
+				simulator.doTransition(klass);
+				return;
+			}
+			if (store == null) {
+				// すべての状態遷移が計算済みであれば状態遷移表を参照するだけでよい
+				currentState = dfa.table[currentState * dfa.width + klass];
+				return;
+			}
+			final int cached = store.next(currentState, klass);
+			if (cached != StateStore.UNKNOWN) {
+				currentState = cached;
+				return;
+			}
+			// 未計算の場合、状態の数がキャッシュ上限に達していればキャッシュを破棄する
+			if (store.size() >= dfa.cacheLimit && !clearCache()) {
+				// 破棄が頻発している場合はNFAシミュレーションに切り替える
+				simulator.doTransition(klass);
+				return;
+			}
+			currentState = dfa.computeTransition(store, currentState, klass);
+		}
+		/**
+		 * 現在の状態が受理状態であるかどうかを返す.
+		 * @param after 直後の文字の種別（{@link Look#after(CharSequence, int, int)}）
+		 * @return 検証結果
+		 */
+		boolean isAccepting(final int after) {
+			if (simulating) {
+				return simulator.isAccepting(after);
+			}
+			return (acceptance() & (1 << after)) != 0;
+		}
+		/**
+		 * 直後の文字の種別ごとに現在の状態が受理状態であるかどうかを返す.
+		 * 直後の文字がまだ与えられていない場合に、その種別によらず結果が定まるかどうかを判断するのに使用します。
+		 * @return 直後の文字の種別（{@link Look#EDGE}など）のビットを受理状態となる場合に立てた値
+		 */
+		int acceptance() {
+			if (simulating) {
+				int result = 0;
+				for (int after = 0; after < Look.COUNT; after ++) {
+					if (simulator.isAccepting(after)) {
+						result |= 1 << after;
+					}
+				}
+				return result;
+			}
+			return store != null ? store.acceptance(currentState) : dfa.acceptance[currentState];
+		}
+		/**
+		 * 現在の状態に含まれる受理状態のラベルの一覧を返す.
+		 * 同じ状態については常に同じ配列オブジェクトが返されます（NFAシミュレーションに切り替えた後を除く）。
+		 * @param after 直後の文字の種別（{@link Look#after(CharSequence, int, int)}）
+		 * @return ラベルの一覧（昇順に整列済み）
+		 * @see NFA#labels
+		 */
+		int[] labels(final int after) {
+			if (simulating) {
+				return simulator.labels(after);
+			}
+			return (store != null ? store.labels(currentState) : dfa.labels[currentState])[after];
+		}
+		/**
+		 * 入力文字列の位置の直後の文字の種別を返す.
+		 * 直後の文字の種別によって成否が変わる表明をもたないパターンでは文字を参照せずに{@link Look#OTHER}を返します。
+		 * @param input 入力文字列
+		 * @param at 位置
+		 * @param to 入力文字列の末尾とみなす位置
+		 * @return 種別
+		 */
+		private int after(final CharSequence input, final int at, final int to) {
+			return dfa.nfa.looksAhead ? Look.after(input, at, to) : Look.OTHER;
+		}
+		/**
+		 * 現在の状態がデッド状態であるかどうかを返す.
+		 * デッド状態とはNFAの状態セットが空である状態のことで、
+		 * 以降どのような入力文字を与えても受理状態に遷移することはありません。
+		 * @return 検証結果
+		 */
+		boolean isDead() {
+			if (simulating) {
+				return !dfa.unanchored && simulator.isEmpty();
+			}
+			if (store == null) {
+				return dfa.dead[currentState];
+			}
+			// 非アンカー型のDFAでは状態セットが空でも次の位置からはじまるスレッドが追加される
+			if (dfa.unanchored) {
+				return false;
+			}
+			final int[] set = store.set(currentState);
+			if (dfa.leftmost) {
+				return set.length == 1 && set[0] != 0;
+			}
+			return set.length == 0;
+		}
+		/**
+		 * 現在の状態がアイドル状態であるかどうかを返す.
+		 * アイドル状態とは非アンカー型のDFAにおいて状態セットが空である状態のことで、
+		 * それまでに評価した文字からはじまる部分文字列がパターンに適合する可能性がもはやないことを意味します。
+		 * すべての状態遷移が計算済みのDFAでは最小化によりこの区別が失われるため常に{@code false}を返します。
+		 * @return 検証結果
+		 * @see DFA#lazy()
+		 */
+		boolean isIdle() {
+			if (simulating) {
+				return dfa.unanchored && simulator.isEmpty();
+			}
+			if (store == null) {
+				return false;
+			}
+			final int[] set = store.set(currentState);
+			if (dfa.leftmost) {
+				return set.length == 1 && set[0] == 0;
+			}
+			return set.length == 0;
+		}
+		/**
+		 * キャッシュを破棄して現在の状態を新しいキャッシュに移す.
+		 * 前回の破棄から処理した文字数が少なすぎる場合は破棄を行わず、NFAシミュレーションに切り替えます。
+		 * ただし開始位置の順序を区別するDFA（{@link DFA#leftmost}）には対応するNFAシミュレーションがないため常に破棄を行います。
+		 * @return 破棄を行った場合は{@code true}、NFAシミュレーションに切り替えた場合は{@code false}
+		 */
+		private boolean clearCache() {
+			final int[] set = store.set(currentState);
+			final int before = store.before(currentState);
+			if (!dfa.leftmost && clearedAt >= 0 && consumed - clearedAt < 10L * dfa.cacheLimit) {
+				dfa.fallbacks.incrementAndGet();
+				simulate(set, before);
+				return false;
+			}
+			store = dfa.clearCache(store);
+			currentState = dfa.intern(store, set, before);
+			clearedAt = consumed;
+			return true;
 		}
 		/**
 		 * 入力文字列を評価して最終的に受理状態となるか検証した結果を返す.
-		 * 入力文字列を文字シーケンスに分解して、{@link DFA}を使用して順次評価。
+		 * 入力文字列を構成する文字を{@link DFA}を使用して順次評価。
 		 * 末尾まで評価したあとで最終的に受理状態となるかどうかを検証します。
+		 * 途中でデッド状態に到達した場合はその時点で評価を打ち切ります。
+		 * 評価を終了する位置は入力文字列の末尾（{@link Look#EDGE}）とみなされます。
 		 * @param input 入力文字列
+		 * @param from 評価を開始する位置
+		 * @param to 評価を終了する位置（この位置の文字は評価しない）
 		 * @return 検証結果
 		 */
-		boolean doesAccept(final String input) {
-			final char[] chars = input.toCharArray();
-			for (int i = 0; i < chars.length; i ++) {
-				currentState = dfa.transition(currentState, chars[i]);
+		boolean doesAccept(final CharSequence input, final int from, final int to) {
+			for (int i = from; i < to; i ++) {
+				if (isDead()) {
+					return false;
+				}
+				doTransition(input.charAt(i));
 			}
-			return dfa.accepts.contains(currentState);
+			return isAccepting(Look.EDGE);
 		}
 		/**
 		 * 入力文字列を前方一致的に評価して中間段階もしくは最終段階で受理状態となるか検証した結果を返す.
-		 * {@link #doesAccept(String)}とちがうのは入力文字列を構成する1文字1文字を処理した都度、
+		 * {@link #doesAccept(CharSequence, int, int)}とちがうのは入力文字列を構成する1文字1文字を処理した都度、
 		 * 受理状態にあるかどうかを検証する点です。これにより前方一致パターンマッチを実現します。
+		 * <p>最短一致の場合ははじめて受理状態となった時点で、最長一致の場合はデッド状態に到達した時点で評価を打ち切ります。
+		 * いずれの場合も評価されるのは適合する部分文字列を決定するのに必要な文字だけです。</p>
 		 * @param input 入力文字列
-		 * @return 検証結果
+		 * @param from 評価を開始する位置
+		 * @param to 評価を終了する位置（この位置の文字は評価しない）
+		 * @param longest {@code true}の場合は最長一致、{@code false}の場合は最短一致
+		 * @return 適合した部分文字列の終了位置（評価済みの文字の直後のインデックス）、適合しなかった場合は{@code -1}
+		 */
+		int doesAcceptPrefix(final CharSequence input, final int from, final int to, final boolean longest) {
+			int last = isAccepting(after(input, from, to)) ? from : -1;
+			if (last >= 0 && !longest) {
+				return last;
+			}
+			for (int i = from; i < to; i ++) {
+				if (isDead()) {
+					break;
+				}
+				doTransition(input.charAt(i));
+				if (isAccepting(after(input, i + 1, to))) {
+					last = i + 1;
+					if (!longest) {
+						break;
+					}
+				}
+			}
+			return last;
+		}
+		/**
+		 * 入力文字列を最長一致の前方一致的に評価して受理状態となったもっとも後方の位置を返す.
+		 * {@link #doesAcceptPrefix(CharSequence, int, int, boolean)}と同じ結果を返しますが、
+		 * 一定の間隔の位置（{@link Trail#STRIDE}の倍数）ごとに到達した状態を記録しておき、
+		 * 以前の走査でそれ以降に受理状態とならなかった位置と状態の組に到達した時点で評価を打ち切ります。
+		 * 状態が同じであればそれ以降の状態遷移も受理状態となる位置も同じだからです。
+		 * <p>同じ入力文字列に対して開始位置を前方にずらしながら繰り返し評価する場合に使用します（{@link Regex.Matcher#find()}）。
+		 * 位置と状態の組が記録されるのは1度だけなので、評価される文字の数の合計は、走査の回数と
+		 * 記録される組の数（入力文字列の長さを{@link Trail#STRIDE}で割った値とDFAの状態の数の積が上限）の和に
+		 * {@link Trail#STRIDE}を掛けた値を超えず、入力文字列の長さに比例します。</p>
+		 * @param input 入力文字列
+		 * @param from 評価を開始する位置
+		 * @param to 評価を終了する位置（この位置の文字は評価しない）
+		 * @param trail 以前の走査の記録（この走査の記録が追加されます）
+		 * @return 適合した部分文字列の終了位置（評価済みの文字の直後のインデックス）、適合しなかった場合は{@code -1}
+		 */
+		int doesAcceptPrefix(final CharSequence input, final int from, final int to, final Trail trail) {
+			// 状態IDは状態の格納庫ごとに割り当てられるため、格納庫が異なる記録は使用できない
+			final StateStore origin = store;
+			if (simulating || trail.to != to || trail.store != origin) {
+				trail.reset(origin, to);
+			}
+			int last = isAccepting(after(input, from, to)) ? from : -1;
+			int count = 0;
+			for (int i = from; i < to; i ++) {
+				if (isDead()) {
+					break;
+				}
+				doTransition(input.charAt(i));
+				if ((i + 1) % Trail.STRIDE == 0 && !simulating && store == origin) {
+					final long key = ((long) (i + 1) << 32) | currentState;
+					if (trail.deadEnds.contains(key)) {
+						// 以前の走査と同じ位置で同じ状態に到達したのでそれ以降に受理状態となることはない
+						break;
+					}
+					count = trail.push(count, key);
+				}
+				if (isAccepting(after(input, i + 1, to))) {
+					last = i + 1;
+				}
+			}
+			// 最後に受理状態となった位置より後方で到達した位置と状態の組を記録する
+			for (int j = 0; j < count; j ++) {
+				if ((int) (trail.pending[j] >>> 32) > last) {
+					trail.deadEnds.add(trail.pending[j]);
+				}
+			}
+			return last;
+		}
+		/**
+		 * 入力文字列を指定された位置から評価してはじめて受理状態となった位置を返す.
+		 * 先頭に暗黙の{@code .*}をもつ（非アンカー型の）DFAとともに使用することで、
+		 * 入力文字列のなかでパターンに適合する部分文字列がはじめて終了する位置を1回の走査で求めます。
+		 * @param input 入力文字列
+		 * @param from 評価を開始する位置
+		 * @param to 評価を終了する位置（この位置の文字は評価しない）
+		 * @return 受理状態となった位置（評価済みの文字の直後のインデックス）、受理状態とならなかった場合は{@code -1}
 		 */
-		int doesAcceptPrefix(final String input) {
-			final char[] cs = input.toCharArray();
-			for (int i = 0; i < cs.length; i ++) {
-				currentState = dfa.transition(currentState, cs[i]);
-				if (dfa.accepts.contains(currentState)) {
-					return i;
+		int findAccept(final CharSequence input, final int from, final int to) {
+			if (isAccepting(after(input, from, to))) {
+				return from;
+			}
+			for (int i = from; i < to; i ++) {
+				doTransition(input.charAt(i));
+				if (isAccepting(after(input, i + 1, to))) {
+					return i + 1;
 				}
 			}
 			return -1;
 		}
+		/**
+		 * 入力文字列を末尾側から先頭側に向かって評価して受理状態となったもっとも先頭側の位置を返す.
+		 * 正規表現パターンを逆向きにしたDFA（{@link Node#assemble(IDFactory, boolean, boolean)}）とともに使用することで、
+		 * {@code to}で終了する部分文字列のうちパターンに適合するもっとも長いものの開始位置を求めます。
+		 * デッド状態に到達した時点で評価を打ち切ります。
+		 * <p>逆向きに評価するため、表明の評価ではある位置の直前の文字が直後の文字として扱われます。
+		 * 評価を開始する前に{@code to}の位置の直後の文字の種別を指定して{@link #reset(int)}を呼び出しておく必要があります。</p>
+		 * @param input 入力文字列
+		 * @param from 評価を終了する位置（この位置より前の文字は評価しない）
+		 * @param to 評価を開始する位置（この位置の直前の文字から評価する）
+		 * @param start 入力文字列の先頭とみなす位置（リージョンの開始位置）
+		 * @return 適合した部分文字列の開始位置、適合しなかった場合は{@code -1}
+		 */
+		int doesAcceptSuffix(final CharSequence input, final int from, final int to, final int start) {
+			int last = isAccepting(before(input, to, start)) ? to : -1;
+			for (int i = to; i > from; i --) {
+				if (isDead()) {
+					break;
+				}
+				doTransition(input.charAt(i - 1));
+				if (isAccepting(before(input, i - 1, start))) {
+					last = i - 1;
+				}
+			}
+			return last;
+		}
+		/**
+		 * 入力文字列の位置の直前の文字の種別を返す.
+		 * 逆向きに評価するDFAにおける直後の文字の種別にあたります。
+		 * @param input 入力文字列
+		 * @param at 位置
+		 * @param start 入力文字列の先頭とみなす位置
+		 * @return 種別
+		 * @see #after(CharSequence, int, int)
+		 */
+		private int before(final CharSequence input, final int at, final int start) {
+			return dfa.nfa.looksAhead ? Look.before(input, at, start) : Look.OTHER;
+		}
 	}
-	static final class NonDisjoinSets {
-		private final Long[] inner;
-		private NonDisjoinSets(final Long...es) {
-			inner = es;
+
+	/**
+	 * 最長一致の前方走査（{@link Runtime#doesAcceptPrefix(CharSequence, int, int, Trail)}）の記録.
+	 * 一定の間隔の位置ごとに、その位置で到達した状態のうちそこから評価を続けても受理状態とならなかったものを保持します。
+	 * 同じ入力文字列と評価を終了する位置に対してだけ使用でき、入力文字列が異なる場合は新しいオブジェクトを使用します。
+	 * このオブジェクトはスレッドセーフではありません。
+	 */
+	static final class Trail {
+		/**
+		 * 状態を記録する位置の間隔.
+		 */
+		static final int STRIDE = 256;
+		// 記録の対象とする状態の格納庫（すべての状態遷移が計算済みのDFAではnull）と評価を終了する位置
+		private StateStore store = null;
+		private int to = -1;
+		// それ以降に受理状態とならない位置と状態IDの組（上位32ビットが位置、下位32ビットが状態ID）
+		private final Set<Long> deadEnds = new HashSet<Long>();
+		// 走査中に到達した位置と状態IDの組
+		private long[] pending = new long[16];
+		private void reset(final StateStore store, final int to) {
+			this.store = store;
+			this.to = to;
+			deadEnds.clear();
 		}
-		boolean contains(final Long...other) {
-			for (final Long n : inner) {
-				for (final Long o : other) {
-					if (n == o) return true;
-				}
+		private int push(final int count, final long key) {
+			if (count == pending.length) {
+				pending = Arrays.copyOf(pending, count * 2);
 			}
-			return false;
+			pending[count] = key;
+			return count + 1;
 		}
 	}
+
 	/**
-	 * 状態遷移キャッシュ.
-	 * {@link DFA#transition(Long[], char)}の処理結果をキャッシュして
-	 * 同じパラメータで実行される2度目以降の処理の高速化を図ります。
+	 * パターンに適合するもっとも左側の部分文字列のうちもっとも長いものの位置を求めるオブジェクト.
+	 * NFAの各状態にその状態に到達したスレッドの開始位置を関連づけてNFAシミュレーションを行います。
+	 * 同じ状態に到達したスレッドのその後の振る舞いは同じなので、開始位置がもっとも小さいものだけを残せば十分です。
+	 * 開始位置を加える（初期状態のイプシロン展開を合流させる）のは{@code firstEnd}まで、
+	 * かつ適合する部分文字列がまだ見つかっていない間だけです。
+	 * <p>入力文字は1文字ずつ与えられるため、入力文字列を分割して与えるストリーム処理でも使用できます。
+	 * 入力文字列全体を参照できる{@link Regex.Matcher}では、NFAシミュレーションを行う場合を除き
+	 * 開始位置の順序を区別するDFA（{@link #leftmost}）とパターンを逆向きにしたDFAが代わりに使用されます。
+	 * パターンが直後の文字の種別によって成否が変わる表明を含む場合、各位置での受理状態の検証は次の入力文字が与えられるまで
+	 * （入力文字列の末尾では{@link #finish()}が呼び出されるまで）保留されます。</p>
 	 */
-	private static final class Cache {
-		private static final class Key {
-			final Long[] froms;
-			final char by;
-			private final int hash;
-			Key(final Long[] froms, final char by) {
-				this.froms = froms;
-				this.by = by;
-				// 実際上のイミュータブル・オブジェクトなのでこの時点でハッシュコードも確定する
-				// ＊formsはミュータブルだが実際上書き換えは行われない
-				this.hash = makeHashCode();
+	static final class Locator {
+		private final DFA dfa;
+		private final long firstEnd;
+		// NFAの状態IDをキーにしてスレッドの開始位置を管理（-1はその状態にスレッドがないことをあらわす）
+		private long[] starts;
+		private long[] nextStarts;
+		// スレッドが存在する状態の一覧
+		private int[] list;
+		private int[] nextList;
+		private int count = 0;
+		// 次に与えられる入力文字の位置
+		private long position;
+		private long bestStart = -1;
+		private long bestEnd = -1;
+		private boolean done = false;
+		// 直前の文字の種別
+		private int before;
+		// 現在の位置での受理状態の検証を保留していれば true
+		private boolean pending = false;
+		/**
+		 * オブジェクトを初期化する.
+		 * @param dfa 先頭に暗黙の{@code .*}をもたない（アンカー型の）DFA
+		 * @param from 探索を開始する位置
+		 * @param before 探索を開始する位置の直前の文字の種別（{@link Look#before(CharSequence, int, int)}）
+		 * @param firstEnd 適合する部分文字列がはじめて終了する位置
+		 */
+		Locator(final DFA dfa, final long from, final int before, final long firstEnd) {
+			this.dfa = dfa;
+			this.firstEnd = firstEnd;
+			this.starts = new long[dfa.nfa.size];
+			this.nextStarts = new long[dfa.nfa.size];
+			Arrays.fill(starts, -1);
+			Arrays.fill(nextStarts, -1);
+			this.list = new int[dfa.nfa.size];
+			this.nextList = new int[dfa.nfa.size];
+			this.position = from;
+			this.before = before;
+			advance();
+		}
+		/**
+		 * 部分文字列の位置が確定したかどうかを返す.
+		 * 確定した場合はそれ以上入力文字を与える必要はありません。
+		 * @return 検証結果
+		 */
+		boolean isDone() {
+			return done;
+		}
+		/**
+		 * 部分文字列の開始位置を返す.
+		 * 入力文字を与えている途中では暫定の値となります。
+		 * @return 開始位置（適合する部分文字列がない場合は{@code -1}）
+		 */
+		long start() {
+			return bestStart;
+		}
+		/**
+		 * 部分文字列の終了位置を返す.
+		 * 入力文字を与えている途中では暫定の値となります。
+		 * @return 終了位置（適合する部分文字列がない場合は{@code -1}）
+		 */
+		long end() {
+			return bestEnd;
+		}
+		/**
+		 * 入力文字を利用してすべてのスレッドの状態遷移を行う.
+		 * 部分文字列の位置が確定している場合は何もしません。
+		 * @param by 入力文字
+		 */
+		void feed(final char by) {
+			if (pending) {
+				settle(Look.of(by));
 			}
-			@Override
-			public int hashCode() {
-				return hash;
+			if (done) {
+				return;
 			}
-			private int makeHashCode() {
-				final int prime = 31;
-				int result = 1;
-				result = prime * result + by;
-				result = prime * result + Arrays.hashCode(froms);
-				return result;
+			final int klass = dfa.alphabet.classOf(by);
+			int nextCount = 0;
+			for (int k = 0; k < count; k ++) {
+				final int s = list[k];
+				final long start = starts[s];
+				starts[s] = -1;
+				for (final int accept : dfa.nfa.transition(s, klass)) {
+					if (nextStarts[accept] < 0) {
+						nextStarts[accept] = start;
+						nextList[nextCount ++] = accept;
+					} else if (start < nextStarts[accept]) {
+						nextStarts[accept] = start;
+					}
+				}
 			}
-			@Override
-			public boolean equals(Object obj) {
-				if (this == obj)
-					return true;
-				if (obj == null)
-					return false;
-				if (getClass() != obj.getClass())
-					return false;
-				Key other = (Key) obj;
-				if (by != other.by)
-					return false;
-				if (!Arrays.equals(froms, other.froms))
-					return false;
-				return true;
+			final long[] tmpStarts = starts;
+			starts = nextStarts;
+			nextStarts = tmpStarts;
+			final int[] tmpList = list;
+			list = nextList;
+			nextList = tmpList;
+			count = nextCount;
+			position ++;
+			before = Look.of(by);
+			advance();
+		}
+		/**
+		 * 入力文字列の末尾に達したことを通知する.
+		 * 保留していた受理状態の検証を末尾（{@link Look#EDGE}）として行います。
+		 */
+		void finish() {
+			if (pending) {
+				settle(Look.EDGE);
+			}
+		}
+		/**
+		 * 新しい位置に進んだ後で受理状態の検証を行うか保留する.
+		 */
+		private void advance() {
+			if (count == 0 && bestStart >= 0) {
+				// 適合が見つかっていて残ったスレッドもなければ直後の文字によらず確定する
+				done = true;
+			} else if (dfa.nfa.looksAhead) {
+				pending = true;
+			} else {
+				settle(Look.OTHER);
+			}
+		}
+		/**
+		 * 現在の位置でのスレッドの追加と受理状態の検証を行う.
+		 * @param after 直後の文字の種別
+		 */
+		private void settle(final int after) {
+			pending = false;
+			// まだ適合が見つかっていなければこの位置からはじまるスレッドを追加する
+			// ＊すでに同じ状態にあるスレッドは開始位置がより小さいのでそちらを優先する
+			if (bestStart < 0 && position <= firstEnd) {
+				for (final int s : dfa.nfa.initial) {
+					if (starts[s] < 0) {
+						starts[s] = position;
+						list[count ++] = s;
+					}
+				}
 			}
+			if (dfa.nfa.hasAssertions) {
+				expand(after);
+			}
+			// 受理状態にあるスレッドのうち開始位置がもっとも小さいものを記録する
+			long acceptStart = -1;
+			for (int k = 0; k < count; k ++) {
+				final int s = list[k];
+				if (dfa.nfaAccepts[s] && (acceptStart < 0 || starts[s] < acceptStart)) {
+					acceptStart = starts[s];
+				}
+			}
+			if (acceptStart >= 0 && (bestStart < 0 || acceptStart <= bestStart)) {
+				bestStart = acceptStart;
+				bestEnd = position;
+			}
+			// 適合が見つかっていればそれより右側からはじまるスレッドは不要
+			if (bestStart >= 0) {
+				int kept = 0;
+				for (int k = 0; k < count; k ++) {
+					final int s = list[k];
+					if (starts[s] > bestStart) {
+						starts[s] = -1;
+					} else {
+						list[kept ++] = s;
+					}
+				}
+				count = kept;
+			}
+			done = count == 0 && (bestStart >= 0 || position >= firstEnd);
 		}
-		private final Map<Key, Long[]> mem = new HashMap<DFA.Cache.Key, Long[]>();
-		Long[] get(final Long[] froms, final char by) {
-			return mem.get(new Key(froms, by));
+		/**
+		 * 直前と直後の文字の種別のもとで成り立つ表明による遷移をたどってスレッドを追加する.
+		 * 遷移先にすでにスレッドがある場合は開始位置の小さいほうを残し、
+		 * 開始位置が更新された状態からの遷移は更新がなくなるまでたどりなおします。
+		 * @param after 直後の文字の種別
+		 */
+		private void expand(final int after) {
+			boolean updated = true;
+			while (updated) {
+				updated = false;
+				for (int k = 0; k < count; k ++) {
+					final int s = list[k];
+					final char assertion = dfa.nfa.assertionOf(s);
+					if (assertion == 0 || !Look.holds(assertion, before, after)) {
+						continue;
+					}
+					for (final int t : dfa.nfa.assertionTargets(s)) {
+						if (starts[t] < 0) {
+							starts[t] = starts[s];
+							list[count ++] = t;
+						} else if (starts[s] < starts[t]) {
+							starts[t] = starts[s];
+							updated = true;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 入力文字列の範囲を並列に評価して状態の写像を求めるタスク.
+	 * 範囲が閾値より長ければ2つに分割して左側を別のスレッドに委ね、
+	 * 左側の写像と右側の写像を合成した結果を返します（写像の合成は結合的なので分割の仕方によらず同じ結果となる）。
+	 * @see DFA#doesAccept(CharSequence, ForkJoinPool)
+	 */
+	private static final class Chunk extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+		private final DFA dfa;
+		private final CharSequence input;
+		private final int from;
+		private final int to;
+		private final int threshold;
+		Chunk(final DFA dfa, final CharSequence input, final int from, final int to, final int threshold) {
+			this.dfa = dfa;
+			this.input = input;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
 		}
-		void put(final Long[] froms, final char by, final Long[] accepts) {
-			mem.put(new Key(froms, by), accepts);
+		@Override
+		protected int[] compute() {
+			if (to - from <= threshold) {
+				return dfa.mapping(input, from, to);
+			}
+			final int middle = from + (to - from) / 2;
+			final Chunk left = new Chunk(dfa, input, from, middle, threshold);
+			left.fork();
+			final int[] right = new Chunk(dfa, input, middle, to, threshold).compute();
+			final int[] result = left.join();
+			for (int s = 0; s < result.length; s ++) {
+				result[s] = right[result[s]];
+			}
+			return result;
 		}
 	}
 
+	/**
+	 * 並列に評価する際に1つのタスクが担当する範囲の長さの下限.
+	 */
+	private static final int MIN_CHUNK = 1 << 16;
+	/**
+	 * 空のラベルの一覧.
+	 */
+	private static final int[] NO_LABELS = new int[0];
+	/**
+	 * 空の状態セット.
+	 */
+	private static final int[] NO_STATES = new int[0];
+
 	private final NFA nfa;
-	private final Long[] froms;
-	private final NonDisjoinSets accepts;
-	
-	// 1次キャッシュ（DFAの初期状態と入力文字をキーにして受理状態セットを管理）
-	private final Cache transitionCache = new Cache();
-	// 2次キャッシュ（NFAの受理状態をキーにしてイプシロン展開後の受理状態セットを管理）
-	private final Map<Long,ArrayList<Long>> epsilonExpandCache = new HashMap<Long, ArrayList<Long>>();
-	
+	/**
+	 * NFAの状態IDをキーにしてその状態がNFAの受理状態であるかどうかを管理.
+	 */
+	private final boolean[] nfaAccepts;
+	private final Alphabet alphabet;
+	/**
+	 * 状態遷移表の1状態あたりの幅（入力文字クラスの数）.
+	 */
+	private final int width;
+	/**
+	 * 評価を開始する位置の直前の文字の種別（{@link Look#EDGE}など）をインデックスとして初期状態を格納した配列.
+	 * 遅延構築されるDFAでは初期状態は常に状態ID{@code 0}から順に登録されるため、キャッシュを破棄しても変わりません。
+	 * 表明を含まないパターンではすべて同じ状態です。
+	 */
+	private final int[] initialStates;
+	/**
+	 * 初期状態に対応するNFAの状態セット.
+	 * 非アンカー型のDFAでは空の状態セット、開始位置の順序を区別するDFAではグループをもたない状態です。
+	 */
+	private final int[] initialSet;
+	/**
+	 * 非アンカー型のDFAであるかどうか.
+	 * 非アンカー型のDFAの状態セットは、それまでの位置からはじまったスレッドの状態だけで構成され、
+	 * 状態遷移と受理状態の検証のたびにNFAの初期状態のイプシロン展開（{@link #seedSet}）が合流されます。
+	 * これは正規表現パターンの先頭に暗黙の{@code .*}を加えることと同じ意味をもちます。
+	 */
+	private final boolean unanchored;
+	/**
+	 * スレッドの開始位置の順序を区別する非アンカー型のDFAであるかどうか.
+	 * 状態は開始位置の古い順に並べたNFAの状態セットの列（グループ）と、適合が見つかったかどうかのフラグからなり、
+	 * 先頭にフラグ（{@code 0}または{@code 1}）、続けて各グループの状態を昇順に並べて{@code -1}で区切った配列として表現されます。
+	 * 同じNFAの状態は古いグループにだけ残され、あるグループが受理状態となった時点でそれより新しいグループは破棄されて
+	 * 以降は新しいスレッドも追加されません。
+	 * そのため最後に受理状態となった位置が、もっとも左側の適合のうちもっとも長いものの終了位置となります。
+	 * 開始位置はパターンを逆向きにしたDFAでその位置から逆向きに評価することで求めます（{@link Runtime#doesAcceptSuffix}）。
+	 */
+	private final boolean leftmost;
+	/**
+	 * 状態を導出せずに常にNFAシミュレーションを行うかどうか.
+	 * 1度しか使用しないパターンのように、状態を導出するコストに見合わない場合に使用します。
+	 */
+	private final boolean simulated;
+	/**
+	 * NFAの初期状態のイプシロン展開.
+	 */
+	private final int[] seedSet;
+	/**
+	 * NFAの初期状態のイプシロン展開に含まれる受理状態のラベルの一覧.
+	 */
+	private final int[] seedLabels;
+	/**
+	 * すべての状態遷移が計算済みのDFAの導出元となった遅延構築されるDFA（遅延構築されるDFAではnull）.
+	 */
+	private final DFA source;
+	/**
+	 * 遅延構築されるDFAの状態の数の上限（キャッシュ上限）.
+	 */
+	private final int cacheLimit;
+	/**
+	 * キャッシュを破棄した回数.
+	 */
+	private final AtomicLong clears;
+	/**
+	 * NFAシミュレーションに切り替えた回数.
+	 */
+	private final AtomicLong fallbacks;
+
+	// 遅延構築される状態と状態遷移表（すべての状態遷移が計算済みのDFAではnull）
+	private final AtomicReference<StateStore> store;
+	// すべての状態遷移が計算済みのDFAの状態遷移表
+	// （状態ID * width + 入力文字クラスIDをインデックスとして遷移先の状態IDを管理、遅延構築されるDFAではnull）
+	private final int[] table;
+	// すべての状態遷移が計算済みのDFAにおいて状態IDをキーにして直後の文字の種別ごとに受理状態であるかどうかをビットで管理
+	private final byte[] acceptance;
+	// すべての状態遷移が計算済みのDFAにおいて状態IDと直後の文字の種別をキーにしてラベルの一覧を管理
+	private final int[][][] labels;
+	// すべての状態遷移が計算済みのDFAにおいて状態IDをキーにしてデッド状態であるかどうかを管理
+	private final boolean[] dead;
+
 	/**
 	 * {@link NFA}オブジェクトをもとにDFAオブジェクトの初期化を行う.
 	 * @param nfa {@link NFA}オブジェクト
+	 * @param cacheLimit 遅延構築されるDFAの状態の数の上限
+	 * @param unanchored 非アンカー型のDFAとする場合は{@code true}
+	 * @param leftmost スレッドの開始位置の順序を区別する非アンカー型のDFAとする場合は{@code true}
+	 * @param simulated 状態を導出せずに常にNFAシミュレーションを行う場合は{@code true}
 	 */
-	DFA(final NFA nfa) {
+	DFA(final NFA nfa, final int cacheLimit, final boolean unanchored, final boolean leftmost, final boolean simulated) {
 		this.nfa = nfa;
-		this.froms = epsilonExpand();
-		this.accepts = new NonDisjoinSets(nfa.accepts);
+		this.nfaAccepts = new boolean[nfa.size];
+		for (int s = 0; s < nfa.size; s ++) {
+			nfaAccepts[s] = nfa.labels[s] >= 0;
+		}
+		this.alphabet = nfa.alphabet;
+		this.width = alphabet.size();
+		this.cacheLimit = cacheLimit;
+		this.clears = new AtomicLong();
+		this.fallbacks = new AtomicLong();
+		this.table = null;
+		this.acceptance = null;
+		this.labels = null;
+		this.dead = null;
+		this.source = null;
+		this.unanchored = unanchored;
+		this.leftmost = leftmost;
+		this.simulated = simulated;
+		this.seedSet = nfa.initial;
+		this.seedLabels = labels(seedSet, NO_LABELS);
+		this.initialSet = leftmost ? new int[]{0} : unanchored ? new int[0] : seedSet;
+		final StateStore first = newStore();
+		this.initialStates = new int[Look.COUNT];
+		for (int before = 0; before < Look.COUNT; before ++) {
+			initialStates[before] = intern(first, initialSet, nfa.look(before));
+		}
+		this.store = new AtomicReference<StateStore>(first);
+	}
+	/**
+	 * すべての状態遷移が計算済みのDFAオブジェクトを初期化する.
+	 * @param source 導出元のDFAオブジェクト
+	 * @param table 状態遷移表
+	 * @param labels 状態IDと直後の文字の種別をキーにしてラベルの一覧を格納した配列
+	 * @param initialStates 直前の文字の種別をキーにして初期状態を格納した配列
+	 */
+	private DFA(final DFA source, final int[] table, final int[][][] labels, final int[] initialStates) {
+		this.nfa = source.nfa;
+		this.nfaAccepts = source.nfaAccepts;
+		this.alphabet = source.alphabet;
+		this.width = source.width;
+		this.initialSet = source.initialSet;
+		this.unanchored = source.unanchored;
+		this.leftmost = source.leftmost;
+		this.simulated = false;
+		this.seedSet = source.seedSet;
+		this.seedLabels = source.seedLabels;
+		this.source = source;
+		this.cacheLimit = source.cacheLimit;
+		this.clears = source.clears;
+		this.fallbacks = source.fallbacks;
+		this.store = null;
+		this.table = table;
+		this.labels = labels;
+		this.acceptance = new byte[labels.length];
+		for (int s = 0; s < labels.length; s ++) {
+			for (int after = 0; after < Look.COUNT; after ++) {
+				if (labels[s][after].length > 0) {
+					acceptance[s] |= 1 << after;
+				}
+			}
+		}
+		this.initialStates = initialStates;
+		// 直後の文字の種別によらず受理状態でなく、すべての入力文字クラスについて自分自身に遷移する状態がデッド状態
+		// ＊最小化済みであればデッド状態はたかだか1つ
+		this.dead = new boolean[acceptance.length];
+		for (int s = 0; s < acceptance.length; s ++) {
+			boolean selfOnly = acceptance[s] == 0;
+			for (int klass = 0; selfOnly && klass < width; klass ++) {
+				selfOnly = table[s * width + klass] == s;
+			}
+			dead[s] = selfOnly;
+		}
+	}
+
+	/**
+	 * 状態遷移表に未登録の状態遷移を計算して登録する.
+	 * @param store 状態と状態遷移表
+	 * @param from 遷移元の状態ID
+	 * @param klass 入力文字クラスID
+	 * @return 遷移先の状態ID
+	 */
+	private int computeTransition(final StateStore store, final int from, final int klass) {
+		// NFAオブジェクトを通じて遷移先の状態セットを求めて状態IDを取得する
+		// ＊遷移後の状態の直前の文字の種別は遷移に使用した入力文字クラスの種別となる
+		final int to = intern(store, transition(store.set(from), store.before(from), klass), nfa.categoryOf(klass));
+		// 状態遷移表に登録
+		store.setNext(from, klass, to);
+		return to;
+	}
+	/**
+	 * 初期状態だけが登録された状態と状態遷移表を初期化する.
+	 * 初期状態は直前の文字の種別の順に登録されるため、常に同じ状態IDとなります。
+	 * @return 状態と状態遷移表
+	 */
+	private StateStore newStore() {
+		final StateStore result = new StateStore(width);
+		for (int before = 0; before < Look.COUNT; before ++) {
+			intern(result, initialSet, nfa.look(before));
+		}
+		return result;
+	}
+	/**
+	 * キャッシュを破棄する.
+	 * 複数のスレッドが同時に破棄を試みた場合、破棄が行われるのは1度だけです。
+	 * @param expired 破棄の対象となる状態と状態遷移表
+	 * @return 新しい状態と状態遷移表
+	 */
+	private StateStore clearCache(final StateStore expired) {
+		final StateStore fresh = newStore();
+		if (store.compareAndSet(expired, fresh)) {
+			clears.incrementAndGet();
+			return fresh;
+		}
+		return store.get();
+	}
+	/**
+	 * キャッシュを破棄した回数を返す.
+	 * @return 回数
+	 */
+	long clearCount() {
+		return clears.get();
+	}
+	/**
+	 * NFAシミュレーションに切り替えた回数を返す.
+	 * @return 回数
+	 */
+	long fallbackCount() {
+		return fallbacks.get();
+	}
+	/**
+	 * すべての状態を導出したうえで状態数が最小のDFAオブジェクトを構築する.
+	 * 初期状態から到達可能なすべての状態についてすべての入力文字クラスによる状態遷移を計算し（部分集合構成法）、
+	 * その結果を{@link Hopcroft}のアルゴリズムにより最小化します。
+	 * @param limit 導出を許容する状態の数の上限
+	 * @return すべての状態遷移が計算済みのDFAオブジェクト
+	 * @throws IllegalArgumentException 状態の数が上限を超えた場合
+	 */
+	DFA determinize(final int limit) {
+		if (store == null) {
+			return this;
+		}
+		// キャッシュ上限の影響を受けないよう専用の状態と状態遷移表を使用する
+		final StateStore store = newStore();
+		for (int from = 0; from < store.idLimit(); from ++) {
+			if (!store.isInterned(from)) {
+				continue;
+			}
+			for (int klass = 0; klass < width; klass ++) {
+				if (store.next(from, klass) == StateStore.UNKNOWN) {
+					computeTransition(store, from, klass);
+				}
+				if (store.size() > limit) {
+					throw new IllegalArgumentException(String.format(
+							"Too many DFA states (limit: %d).", limit));
+				}
+			}
+		}
+		// 状態IDを詰めなおして状態遷移表を平坦な配列にする
+		final int[] dense = new int[store.idLimit()];
+		int size = 0;
+		for (int id = 0; id < dense.length; id ++) {
+			dense[id] = store.isInterned(id) ? size ++ : -1;
+		}
+		final int[] table = new int[size * width];
+		final int[][][] labels = new int[size][][];
+		// 直後の文字の種別ごとのラベルの一覧が同じ状態に同じ番号を割り当てて最小化の初期分割とする
+		// ＊表明を含まない単一のパターンから構築されたDFAでは受理状態と非受理状態の2つに分割される
+		final int[] classes = new int[size];
+		final Map<List<List<Integer>>, Integer> classIds = new HashMap<List<List<Integer>>, Integer>();
+		for (int id = 0; id < dense.length; id ++) {
+			if (dense[id] < 0) {
+				continue;
+			}
+			labels[dense[id]] = store.labels(id);
+			final List<List<Integer>> key = new ArrayList<List<Integer>>(Look.COUNT);
+			for (final int[] each : labels[dense[id]]) {
+				key.add(Functions.arrayList(each));
+			}
+			final Integer known = classIds.get(key);
+			if (known != null) {
+				classes[dense[id]] = known;
+			} else {
+				classes[dense[id]] = classIds.size();
+				classIds.put(key, classes[dense[id]]);
+			}
+			for (int klass = 0; klass < width; klass ++) {
+				table[dense[id] * width + klass] = dense[store.next(id, klass)];
+			}
+		}
+		final int[] blockOf = Hopcroft.partition(table, width, classes, size);
+		int blocks = 0;
+		for (int s = 0; s < size; s ++) {
+			blocks = Math.max(blocks, blockOf[s] + 1);
+		}
+		final int[] minTable = new int[blocks * width];
+		final int[][][] minLabels = new int[blocks][][];
+		for (int s = 0; s < size; s ++) {
+			final int b = blockOf[s];
+			minLabels[b] = labels[s];
+			for (int klass = 0; klass < width; klass ++) {
+				minTable[b * width + klass] = blockOf[table[s * width + klass]];
+			}
+		}
+		final int[] minInitialStates = new int[Look.COUNT];
+		for (int before = 0; before < Look.COUNT; before ++) {
+			minInitialStates[before] = blockOf[dense[initialStates[before]]];
+		}
+		return new DFA(this, minTable, minLabels, minInitialStates);
+	}
+	/**
+	 * 入力文字列を分割して並列に評価し、最終的に受理状態となるかどうかを返す.
+	 * 入力文字列は{@link ForkJoinPool}のタスクにより分割され、各範囲はすべての状態から評価を開始して
+	 * 評価を開始した状態から評価を終了した状態への写像に変換されます（{@link #mapping(CharSequence, int, int)}）。
+	 * 写像を順に合成して初期状態に適用すれば、入力文字列全体を評価した後の状態が得られます。
+	 * 範囲の直前の文字の種別は各状態に含まれているため、表明を含むパターンでも結果は逐次評価と同じです。
+	 * <p>すべての状態遷移が計算済みのDFA（{@link #determinize(int)}）でのみ並列に評価され、
+	 * 遅延構築されるDFAや入力文字列が短い場合は{@link Runtime#doesAccept(CharSequence, int, int)}による逐次評価となります。</p>
+	 * @param input 入力文字列
+	 * @param pool タスクを実行するスレッド・プール
+	 * @return 検証結果
+	 */
+	boolean doesAccept(final CharSequence input, final ForkJoinPool pool) {
+		final int length = input.length();
+		if (table == null || length < MIN_CHUNK * 2) {
+			return initializeRuntime().doesAccept(input, 0, length);
+		}
+		// スレッドの数より多めに分割して処理時間のばらつきをならす
+		final int threshold = Math.max(MIN_CHUNK, length / (pool.getParallelism() * 4));
+		final int[] mapping = pool.invoke(new Chunk(this, input, 0, length, threshold));
+		return (acceptance[mapping[initialStates[Look.EDGE]]] & (1 << Look.EDGE)) != 0;
+	}
+	/**
+	 * 入力文字列の範囲をすべての状態から同時に評価して、評価を開始した状態から評価を終了した状態への写像を返す.
+	 * 状態ごとの評価の経路（レーン）は同じ状態に到達した時点で1つに合流させるため、
+	 * 処理時間は状態の数ではなく合流せずに残ったレーンの数に比例します。
+	 * 最小化されたDFAでは多くの場合、数文字を評価するうちにレーンは1つか2つに絞られます。
+	 * @param input 入力文字列
+	 * @param from 評価を開始する位置
+	 * @param to 評価を終了する位置（この位置の文字は評価しない）
+	 * @return 評価を開始した状態IDをインデックスとして評価を終了した状態IDを格納した配列
+	 */
+	private int[] mapping(final CharSequence input, final int from, final int to) {
+		final int size = acceptance.length;
+		// 各レーンの現在の状態と、評価を開始した状態をキーにしたレーンの番号
+		final int[] lanes = new int[size];
+		final int[] laneOf = new int[size];
+		// 合流の際に使用する作業領域
+		final int[] seen = new int[size];
+		final int[] moved = new int[size];
+		for (int s = 0; s < size; s ++) {
+			lanes[s] = s;
+			laneOf[s] = s;
+		}
+		Arrays.fill(seen, -1);
+		int count = size;
+		for (int i = from; i < to; i ++) {
+			final int klass = alphabet.classOf(input.charAt(i));
+			for (int k = 0; k < count; k ++) {
+				lanes[k] = table[lanes[k] * width + klass];
+			}
+			if (count == 1) {
+				// すべてのレーンがデッド状態に合流していればそれ以降の評価は不要
+				if (dead[lanes[0]]) {
+					break;
+				}
+				continue;
+			}
+			// 同じ状態にあるレーンを合流させる
+			int merged = 0;
+			for (int k = 0; k < count; k ++) {
+				final int s = lanes[k];
+				if (seen[s] < 0) {
+					seen[s] = merged;
+					lanes[merged ++] = s;
+				}
+				moved[k] = seen[s];
+			}
+			for (int k = 0; k < merged; k ++) {
+				seen[lanes[k]] = -1;
+			}
+			if (merged < count) {
+				for (int s = 0; s < size; s ++) {
+					laneOf[s] = moved[laneOf[s]];
+				}
+				count = merged;
+			}
+		}
+		final int[] result = new int[size];
+		for (int s = 0; s < size; s ++) {
+			result[s] = lanes[laneOf[s]];
+		}
+		return result;
+	}
+	/**
+	 * 正規表現パターンが位置に関する表明を含むかどうかを返す.
+	 * @return 検証結果
+	 */
+	boolean hasAssertions() {
+		return nfa.hasAssertions;
+	}
+	/**
+	 * 同じNFAから導出された遅延構築されるDFAを返す.
+	 * このオブジェクトが遅延構築されるDFAであればこのオブジェクト自身を返します。
+	 * @return 遅延構築されるDFA
+	 */
+	DFA lazy() {
+		return source != null ? source : this;
+	}
+	/**
+	 * 導出済みの状態の数を返す.
+	 * @return 状態の数
+	 */
+	int size() {
+		return store != null ? store.get().size() : acceptance.length;
+	}
+	/**
+	 * 確保済みのメモリの量を概算して返す.
+	 * もととなった{@link NFA}オブジェクトの分も含みます。
+	 * @return メモリの量（バイト）
+	 */
+	long footprint() {
+		final long automaton = store != null
+				? store.get().footprint()
+				: table.length * 4L + acceptance.length * 9L;
+		return nfa.footprint() + automaton;
 	}
-	
 	/**
-	 * 初期状態と入力文字をもとに状態遷移を行い受理状態を返す.
+	 * DFAの状態に含まれるNFAの状態を返す.
+	 * 開始位置の順序を区別するDFAではすべてのグループの和をとります（グループどうしは互いに素）。
+	 * @param states DFAの状態をあらわす配列
+	 * @return NFAの状態セット（昇順に整列済み）
+	 */
+	private int[] members(final int[] states) {
+		if (!leftmost) {
+			return states;
+		}
+		final int[] result = new int[states.length - 1];
+		int count = 0;
+		for (int i = 1; i < states.length; i ++) {
+			if (states[i] >= 0) {
+				result[count ++] = states[i];
+			}
+		}
+		Arrays.sort(result, 0, count);
+		return Arrays.copyOf(result, count);
+	}
+	/**
+	 * DFAの状態の状態遷移と受理状態の検証に合流させるNFAの状態セットを返す.
+	 * 非アンカー型のDFA（開始位置の順序を区別するDFAでは適合が見つかるまで）ではNFAの初期状態のイプシロン展開です。
+	 * @param states DFAの状態をあらわす配列
+	 * @return NFAの状態セット
+	 */
+	private int[] seeds(final int[] states) {
+		return unanchored || (leftmost && states[0] == 0) ? seedSet : NO_STATES;
+	}
+	private int[] labels(final int[] states, final int[] extra) {
+		final int[] buff = Arrays.copyOf(extra, extra.length + states.length);
+		int count = extra.length;
+		for (final int s : states) {
+			if (nfa.labels[s] >= 0) {
+				buff[count ++] = nfa.labels[s];
+			}
+		}
+		if (count == 0) {
+			return NO_LABELS;
+		}
+		Arrays.sort(buff, 0, count);
+		// 重複を取り除く
+		int unique = 1;
+		for (int i = 1; i < count; i ++) {
+			if (buff[i] != buff[unique - 1]) {
+				buff[unique ++] = buff[i];
+			}
+		}
+		return Arrays.copyOf(buff, unique);
+	}
+	/**
+	 * 初期状態と入力文字クラスIDをもとに状態遷移を行い受理状態を返す.
 	 * {@link NFA}とことなりDFAにおいては入力状態自体が集合となります。
 	 * @param froms 初期状態
-	 * @param by 入力文字
-	 * @return 受理状態
-	 */
-	Long[] transition(final Long[] froms, final char by) {
-		// 与えられた初期状態と入力文字をキーにしてキャッシュを検索
-		final Long[] cached = transitionCache.get(froms, by);
-		if (cached != null) {
-			// キャッシュに登録済み受理状態があればそれを返す
-			return cached;
-		} else {
-			// キャッシュになければNFAオブジェクトを通じて状態遷移後の受理状態を取得する
-			// 受理状態セットを一時的に格納するセットを初期化
-			final Set<Long> acceptList = new HashSet<Long>();
-			// DFAの初期状態（NFAの初期状態の集合）を使ってループ処理
-			for (final Long from : froms) {
-				// 初期状態と入力文字をキーにしてNFAオブジェクトに問い合わせ
-				for (final Long accept : nfa.transition(from, by)) {
-					// 取得できた受理状態をリストに登録
-					if (acceptList.add(accept)) {
-						// 受理状態をキーにしてイプシロン展開結果のキャッシュを検索
-						final ArrayList<Long> expanded = epsilonExpandCache.get(accept);
-						if (expanded != null) {
-							//　キャッシュに登録済み展開結果があればそれを使用
-							acceptList.addAll(expanded);
-						} else {
-							// 存在しない場合は展開処理を実施
-							final ArrayList<Long> expandedNow = epsilonExpand(accept);
-							// 結果をキャッシュに登録
-							epsilonExpandCache.put(accept, expandedNow);
-							// 展開結果を受理状態セットに追加
-							acceptList.addAll(expandedNow);
-						}
+	 * @param before 直前の文字の種別
+	 * @param klass 入力文字クラスID
+	 * @return 受理状態（昇順に整列済み）
+	 */
+	private int[] transition(final int[] froms, final int before, final int klass) {
+		if (leftmost) {
+			return leftmostTransition(froms, before, klass);
+		}
+		// 非アンカー型のDFAではNFAの初期状態のイプシロン閉包も合流させる
+		int[] seeds = seeds(froms);
+		int[] states = froms;
+		if (nfa.hasAssertions) {
+			// 遷移に使用する入力文字クラスの種別を直後の文字の種別として表明による遷移をたどる
+			states = nfa.resolve(froms, seeds, before, nfa.categoryOf(klass));
+			seeds = NO_STATES;
+		}
+		// 受理状態セットをビットセットとして集計する
+		// ＊遷移先の状態セットはNFAの構築時にイプシロン閉包に置き換えられているので和をとるだけでよい
+		final long[] words = new long[(nfa.size + 63) >>> 6];
+		int count = 0;
+		for (int pass = 0; pass < 2; pass ++) {
+			for (final int from : pass == 0 ? seeds : states) {
+				// 初期状態と入力文字クラスIDをキーにしてNFAオブジェクトに問い合わせ
+				for (final int accept : nfa.transition(from, klass)) {
+					final long bit = 1L << accept;
+					if ((words[accept >>> 6] & bit) == 0) {
+						words[accept >>> 6] |= bit;
+						count ++;
 					}
 				}
 			}
-			// セットから配列に変換
-			final Long[] accepts = acceptList.toArray(new Long[acceptList.size()]);
-			// 最終的にできあがった受理状態セットをキャッシュに登録
-			transitionCache.put(froms, by, accepts);
-			// 呼び出し元に返す
-			return accepts;
-		}
-	}
-	private ArrayList<Long> epsilonExpand(final Long seed) {
-		// 処理済み初期状態を記録するためのセットを初期化
-		final ArrayList<Long> done = new ArrayList<Long>();
-		final ArrayList<Long> todo = new ArrayList<Long>();
-		
-		// 再帰的手続きのための起点となる要素を追加
-		todo.add(seed);
-		
-		// 引数として渡された受理状態セットの未処理要素がなくなるまでループ
-		while (!todo.isEmpty()) {
-			// 要素（受理状態）を1つ取り出す
-			final Long s = todo.remove(0);
-			// 処理済みセットに登録
-			done.add(s);
-			// この受理状態を初期状態として空文字（イプシロン）により遷移可能な受理状態セットを取得
-			final Long[] nexts = nfa.transition(s);
-			// 結果がnullでなければ遷移可能な受理状態があるということ
-			if (nexts != null) {
-				// それらの状態セットについてループ処理
-				for (final Long next : nexts) {
-					// もし処理済みセットに存在しないものであれば処理待ちセットに登録
-					if (!done.contains(next)) {
-						todo.add(next);
+		}
+		// ビットセットを走査すれば正規形（昇順）の配列が得られる
+		final int[] accepts = new int[count];
+		int n = 0;
+		for (int w = 0; n < count; w ++) {
+			long word = words[w];
+			while (word != 0) {
+				accepts[n ++] = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return accepts;
+	}
+	/**
+	 * 開始位置の順序を区別するDFAにおいて状態遷移を行う.
+	 * グループを古い順に、適合が見つかっていなければ最後にNFAの初期状態のイプシロン展開を新しいグループとして加えて遷移させます。
+	 * 遷移先の状態がより古いグループにすでに含まれていれば取り除き、空になったグループは詰めます。
+	 * 遷移前のグループが受理状態であれば（直後の文字は遷移に使用する入力文字）、適合が見つかったものとして
+	 * それより新しいグループは遷移させずに破棄します。
+	 * @param froms 遷移元の状態をあらわす配列
+	 * @param before 直前の文字の種別
+	 * @param klass 入力文字クラスID
+	 * @return 遷移先の状態をあらわす配列
+	 * @see #leftmost
+	 */
+	private int[] leftmostTransition(final int[] froms, final int before, final int klass) {
+		final int after = nfa.categoryOf(klass);
+		final boolean[] marks = new boolean[nfa.size];
+		int[] buff = new int[froms.length + seedSet.length + 1];
+		int count = 1;
+		boolean matched = froms[0] != 0;
+		boolean seeded = matched;
+		int i = 1;
+		while (i < froms.length || !seeded) {
+			int[] group;
+			if (i < froms.length) {
+				int end = i;
+				while (froms[end] >= 0) {
+					end ++;
+				}
+				group = Arrays.copyOfRange(froms, i, end);
+				i = end + 1;
+			} else {
+				group = seedSet;
+				seeded = true;
+			}
+			if (nfa.hasAssertions) {
+				group = nfa.resolve(group, NO_STATES, before, after);
+			}
+			boolean accepts = false;
+			final int groupStart = count;
+			for (final int from : group) {
+				accepts |= nfaAccepts[from];
+				for (final int accept : nfa.transition(from, klass)) {
+					if (!marks[accept]) {
+						marks[accept] = true;
+						if (count + 1 >= buff.length) {
+							buff = Arrays.copyOf(buff, buff.length * 2);
+						}
+						buff[count ++] = accept;
 					}
 				}
 			}
+			if (count > groupStart) {
+				Arrays.sort(buff, groupStart, count);
+				buff[count ++] = -1;
+			}
+			if (accepts) {
+				// 適合が見つかったのでより新しいグループと初期状態は不要
+				matched = true;
+				break;
+			}
 		}
-		
-		// 展開結果を呼び出し元に返す
-		return done;
+		buff[0] = matched ? 1 : 0;
+		return Arrays.copyOf(buff, count);
 	}
 	/**
-	 * 空文字状態遷移を行う.
-	 * {@link #epsilonExpand(Long[])}とのちがいは
-	 * 入力となる処理待ち受理状態がレシーバに内包されたNFAオブジェクトから供給されることだけです。
-	 * @return 受理状態およびそこから空文字（イプシロン）により遷移可能な受理状態のセット
+	 * 入力文字列のなかでパターンに適合するもっとも左側の部分文字列のうちもっとも長いものの位置を返す.
+	 * 探索を終了する位置は入力文字列の末尾（{@link Look#EDGE}）とみなされます。
+	 * @param input 入力文字列
+	 * @param from 探索を開始する位置
+	 * @param before 探索を開始する位置の直前の文字の種別（{@link Look#before(CharSequence, int, int)}）
+	 * @param to 探索を終了する位置（この位置の文字は評価しない）
+	 * @param firstEnd 適合する部分文字列がはじめて終了する位置（{@link Runtime#findAccept(CharSequence, int, int)}の結果）
+	 * @return 開始位置と終了位置からなる配列、適合する部分文字列がない場合は{@code null}
+	 * @see Locator
 	 */
-	private Long[] epsilonExpand() {
-		return epsilonExpand(nfa.from).toArray(new Long[0]);
+	int[] locate(final CharSequence input, final int from, final int before, final int to, final int firstEnd) {
+		final Locator locator = new Locator(this, from, before, firstEnd);
+		for (int i = from; i < to && !locator.isDone(); i ++) {
+			locator.feed(input.charAt(i));
+		}
+		locator.finish();
+		return locator.start() < 0 ? null : new int[]{(int) locator.start(), (int) locator.end()};
+	}
+	/**
+	 * NFAの状態セットと直前の文字の種別に対応する状態IDを返す.
+	 * 未知の組み合わせであれば新たに状態IDを割り当てます。
+	 * ラベルの一覧は直後の文字の種別ごとに表明による遷移をたどったうえで求め、
+	 * 内容が同じ一覧どうしは同じ配列オブジェクトを共有します。
+	 * @param store 状態と状態遷移表
+	 * @param states NFAの状態セット（昇順に整列済み）、開始位置の順序を区別するDFAではグループの列
+	 * @param before 直前の文字の種別（正規化済み）
+	 * @return 状態ID
+	 */
+	private int intern(final StateStore store, final int[] states, final int before) {
+		final int[][] byAfter = new int[Look.COUNT][];
+		final int[] members = members(states);
+		final int[] seeds = seeds(states);
+		for (int after = 0; after < Look.COUNT; after ++) {
+			byAfter[after] = nfa.hasAssertions
+					? labels(nfa.resolve(members, seeds, before, nfa.look(after)), NO_LABELS)
+					: after == 0 ? labels(members, seeds == seedSet ? seedLabels : NO_LABELS) : byAfter[0];
+			for (int known = 0; known < after; known ++) {
+				if (Arrays.equals(byAfter[known], byAfter[after])) {
+					byAfter[after] = byAfter[known];
+					break;
+				}
+			}
+		}
+		return store.intern(states, before, byAfter);
 	}
 	/**
 	 * このDFAオブジェクトをもとに{@link Runtime}オブジェクトを導出・初期化します.
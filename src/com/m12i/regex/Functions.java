@@ -101,21 +101,21 @@ final class Functions {
 		}
 		return -1;
 	}
-	static Long[] concat(final Long[] a, final Long... b) {
+	static int[] concat(final int[] a, final int... b) {
 		final int aLen = a.length;
 		final int bLen = b.length;
-		final Long[] r = Arrays.copyOf(a, aLen + bLen);
+		final int[] r = Arrays.copyOf(a, aLen + bLen);
 		for (int i = 0; i < bLen; i ++) {
 			r[i + aLen] = b[i];
 		}
 		return r;
 	}
-	static Long[] array(final Long n) {
-		return new Long[]{n};
+	static int[] array(final int n) {
+		return new int[]{n};
 	}
-	static ArrayList<Long> arrayList(final Long...array) {
-		final ArrayList<Long> r = new ArrayList<Long>();
-		for (final Long e : array) {
+	static ArrayList<Integer> arrayList(final int...array) {
+		final ArrayList<Integer> r = new ArrayList<Integer>();
+		for (final int e : array) {
 			r.add(e);
 		}
 		return r;
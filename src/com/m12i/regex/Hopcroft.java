@@ -0,0 +1,146 @@
+package com.m12i.regex;
+
+/**
+ * Hopcroftのアルゴリズムによる{@link DFA}の状態の分割.
+ * すべての状態遷移が計算済みの状態遷移表を受け取り、
+ * 将来にわたって受理・非受理の振る舞いが区別できない状態どうしを同じブロックにまとめます。
+ * 受理状態がラベル（{@link NFA#labels}）によって区別される場合は、初期分割としてラベルの一覧ごとの分類を与えます。
+ * 各ブロックを1つの状態とみなせば、もとのDFAと等価で状態数が最小のDFAが得られます。
+ */
+final class Hopcroft {
+	private Hopcroft() {}
+
+	/**
+	 * 状態を等価なブロックに分割する.
+	 * 戻り値の配列は状態IDをインデックスとしてその状態が属するブロックのIDを格納します。
+	 * ブロックIDは{@code 0}からはじまる連番で、その最大値に1を加えた値が最小化後の状態数となります。
+	 * @param table 状態遷移表（状態ID * width + 入力文字クラスIDをインデックスとする）
+	 * @param width 状態遷移表の1状態あたりの幅（入力文字クラスの数）
+	 * @param classes 状態IDをキーにして初期分割における分類（{@code 0}からはじまる連番）を格納した配列
+	 * @param size 状態の数
+	 * @return 状態IDをインデックスとしてブロックIDを格納した配列
+	 */
+	static int[] partition(final int[] table, final int width, final int[] classes, final int size) {
+		// 入力文字クラスごとの逆向きの状態遷移（遷移先 → 遷移元）を
+		// 入力文字クラス * (size + 1) + 遷移先をインデックスとするオフセット配列と遷移元の配列で表現する
+		final int[] preStart = new int[width * (size + 1) + 1];
+		final int[] pre = new int[width * size];
+		for (int s = 0; s < size; s ++) {
+			for (int k = 0; k < width; k ++) {
+				preStart[k * (size + 1) + table[s * width + k] + 1] ++;
+			}
+		}
+		for (int i = 1; i < preStart.length; i ++) {
+			preStart[i] += preStart[i - 1];
+		}
+		final int[] fill = preStart.clone();
+		for (int s = 0; s < size; s ++) {
+			for (int k = 0; k < width; k ++) {
+				pre[fill[k * (size + 1) + table[s * width + k]] ++] = s;
+			}
+		}
+
+		// ブロックは elems[first[b]] から elems[last[b] - 1] までの状態で構成される
+		// ＊同じブロックに属する状態は elems のなかで連続して格納される
+		final int[] elems = new int[size];
+		final int[] pos = new int[size];
+		final int[] blockOf = new int[size];
+		final int[] first = new int[size];
+		final int[] last = new int[size];
+		// ブロックごとの印付けされた状態の数（印付けされた状態はブロックの先頭側に集められる）
+		final int[] marked = new int[size];
+		// 分割の候補となるブロックの待ち行列とそのブロックが待ち行列に含まれるかどうか
+		final int[] pending = new int[size];
+		final boolean[] inPending = new boolean[size];
+		int pendingCount = 0;
+		// 印付けされた状態をもつブロックの一覧
+		final int[] touched = new int[size];
+		// 分割に使用するブロックの状態のスナップショット
+		final int[] splitter = new int[size];
+
+		// 分類ごとのブロックに分割した状態から開始する（分類をキーにした計数ソート）
+		int blocks = 0;
+		for (int s = 0; s < size; s ++) {
+			blocks = Math.max(blocks, classes[s] + 1);
+		}
+		for (int s = 0; s < size; s ++) {
+			last[classes[s]] ++;
+		}
+		for (int b = 0; b < blocks; b ++) {
+			first[b] = b == 0 ? 0 : last[b - 1];
+			last[b] += first[b];
+			pending[pendingCount ++] = b;
+			inPending[b] = true;
+		}
+		final int[] fillPos = first.clone();
+		for (int s = 0; s < size; s ++) {
+			final int b = classes[s];
+			elems[fillPos[b]] = s;
+			pos[s] = fillPos[b] ++;
+			blockOf[s] = b;
+		}
+
+		while (pendingCount > 0) {
+			final int a = pending[-- pendingCount];
+			inPending[a] = false;
+			// 処理中にブロック自体が分割されうるため状態をあらかじめ退避しておく
+			final int aSize = last[a] - first[a];
+			System.arraycopy(elems, first[a], splitter, 0, aSize);
+			for (int k = 0; k < width; k ++) {
+				// 入力文字クラスkによってブロックaに遷移する状態に印付けする
+				int touchedCount = 0;
+				for (int i = 0; i < aSize; i ++) {
+					final int to = splitter[i];
+					final int from = k * (size + 1) + to;
+					for (int j = preStart[from]; j < preStart[from + 1]; j ++) {
+						final int s = pre[j];
+						final int b = blockOf[s];
+						final int m = first[b] + marked[b];
+						if (pos[s] < m) {
+							// 印付け済み
+							continue;
+						}
+						if (marked[b] == 0) {
+							touched[touchedCount ++] = b;
+						}
+						// 印付けされていない状態のうち先頭のものと入れ替える
+						final int other = elems[m];
+						elems[m] = s;
+						elems[pos[s]] = other;
+						pos[other] = pos[s];
+						pos[s] = m;
+						marked[b] ++;
+					}
+				}
+				// 印付けされた状態とされていない状態の両方をもつブロックを分割する
+				for (int i = 0; i < touchedCount; i ++) {
+					final int b = touched[i];
+					final int m = first[b] + marked[b];
+					marked[b] = 0;
+					if (m == last[b]) {
+						// すべての状態が印付けされていれば分割は不要
+						continue;
+					}
+					// 印付けされた状態を新しいブロックとして切り出す
+					final int c = blocks ++;
+					first[c] = first[b];
+					last[c] = m;
+					first[b] = m;
+					for (int j = first[c]; j < last[c]; j ++) {
+						blockOf[elems[j]] = c;
+					}
+					if (inPending[b]) {
+						pending[pendingCount ++] = c;
+						inPending[c] = true;
+					} else {
+						// 小さいほうのブロックだけを待ち行列に追加すれば十分
+						final int smaller = (last[c] - first[c]) <= (last[b] - first[b]) ? c : b;
+						pending[pendingCount ++] = smaller;
+						inPending[smaller] = true;
+					}
+				}
+			}
+		}
+		return blockOf;
+	}
+}
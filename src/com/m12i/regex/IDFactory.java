@@ -3,6 +3,10 @@ package com.m12i.regex;
 /**
  * IDファクトリ.
  * {@link NFA}や{@link DFA}で使用される状態のIDを発番するために利用されます。
+ * <p>このファクトリで発番した状態を使用する{@link NFA.Fragment}オブジェクトは、
+ * ファクトリが管理する1つの状態遷移パスセットを共有します。
+ * これによりフラグメントどうしの取り込み（{@link NFA.Fragment#include(NFA.Fragment...)}）で
+ * 状態遷移パスがコピーされることがなくなり、NFAの構築にかかる時間は構文木の大きさに比例します。</p>
  */
 final class IDFactory {
 	/**
@@ -13,14 +17,22 @@ final class IDFactory {
 		return new IDFactory();
 	}
 	
-	private Long i = 0L;
+	private int i = 0;
+	private final Paths paths = new Paths();
 	private IDFactory(){}
 	
 	/**
 	 * 新しいIDを発番する.
 	 * @return ID
 	 */
-	long product() {
+	int product() {
 		return ++i;
 	}
+	/**
+	 * このファクトリで発番した状態の状態遷移パスセットを返す.
+	 * @return 状態遷移パスセット
+	 */
+	Paths paths() {
+		return paths;
+	}
 }
@@ -4,6 +4,11 @@ package com.m12i.regex;
  * 正規表現パターンの字句解析器.
  */
 final class Lexer {
+	/**
+	 * 回数を指定した繰り返しで指定できる回数の上限.
+	 * 構築されるNFAの大きさは{@link Options#sizeLimit}によっても制限されます。
+	 */
+	static final int MAX_REPEAT = 100000;
 	private final int len;
 	private final char[] chars;
 	private int pos = 0;
@@ -21,6 +26,7 @@ final class Lexer {
 	/**
 	 * 次の文字を読み取って返す.
 	 * {@code '\\'}（バックスラッシュ）をエスケープ文字とみなして解析を行います。
+	 * ただし{@code \b}と{@code \B}は単語境界の表明とみなします（文字クラスの内側を除く）。
 	 * パターン文字列の末端まで読み取り終えたあとは{@link Token#EOF}を返します。
 	 * @return 次の文字
 	 */
@@ -37,7 +43,14 @@ final class Lexer {
 		}
 		switch (ch) {
 		case '\\':
-			return Token.charToken(chars[pos ++]);
+			final char escaped = chars[pos ++];
+			if (escaped == 'b' || escaped == 'B') {
+				return Token.assertionToken(escaped);
+			}
+			return Token.charToken(escaped);
+		case '^':
+		case '$':
+			return Token.assertionToken(ch);
 		case '.':
 			return Token.DOT;
 		case '|':
@@ -53,10 +66,55 @@ final class Lexer {
 		case '[':
 			bracket = true;
 			return Token.LBRACKET;
+		case '{':
+			return scanRepeat();
 		default:
 			return Token.charToken(ch);
 		}
 	}
+	/**
+	 * 開き波括弧に続く回数の指定を読み取る.
+	 * {@code {n}}、{@code {n,}}、{@code {n,m}}のいずれの形式にも該当しない場合、
+	 * 開き波括弧はその文字そのものとみなされます。
+	 * @return 回数を指定した繰り返しのトークン、または開き波括弧の文字のトークン
+	 */
+	private Token scanRepeat() {
+		final int start = pos;
+		final int min = scanCount();
+		if (min >= 0 && pos < len) {
+			if (chars[pos] == '}') {
+				pos ++;
+				return Token.repeatToken(min, min);
+			} else if (chars[pos] == ',') {
+				pos ++;
+				final int max = pos < len && chars[pos] == '}' ? -1 : scanCount();
+				if (max != -2 && pos < len && chars[pos] == '}') {
+					pos ++;
+					if (max != -1 && max < min) {
+						throw new IllegalArgumentException("Invalid repetition range.");
+					}
+					return Token.repeatToken(min, max);
+				}
+			}
+		}
+		pos = start;
+		return Token.charToken('{');
+	}
+	/**
+	 * 10進数の回数を読み取る.
+	 * @return 回数（数字が現れない場合は{@code -2}）
+	 */
+	private int scanCount() {
+		final int start = pos;
+		int count = 0;
+		while (pos < len && '0' <= chars[pos] && chars[pos] <= '9') {
+			count = count * 10 + (chars[pos ++] - '0');
+			if (count > MAX_REPEAT) {
+				throw new IllegalArgumentException("Repetition count too large.");
+			}
+		}
+		return pos == start ? -2 : count;
+	}
 	private Token scanInBracket(final char ch) {
 		switch (ch) {
 		case '\\':
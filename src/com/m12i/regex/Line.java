@@ -0,0 +1,89 @@
+package com.m12i.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * ファイルの走査（{@link Regex#scan(java.nio.file.Path, LineHandler)}）で見つかった行.
+ * 行の内容はメモリ・マップされたファイルを参照しており、
+ * {@link #text()}が呼び出されるまでコピーや復号は行われません。
+ * 位置はいずれもファイルの先頭を起点とするバイト単位のインデックスです。
+ * 行の内容に行末の改行文字（{@code '\n'}）は含まれません。
+ */
+public final class Line {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer window;
+	private final long base;
+	private final long number;
+	private final int start;
+	private final int end;
+	private final int matchStart;
+	private final int matchEnd;
+
+	Line(final ByteBuffer window, final long base, final long number,
+			final int start, final int end, final int matchStart, final int matchEnd) {
+		this.window = window;
+		this.base = base;
+		this.number = number;
+		this.start = start;
+		this.end = end;
+		this.matchStart = matchStart;
+		this.matchEnd = matchEnd;
+	}
+
+	/**
+	 * 行番号を返す.
+	 * @return 行番号（{@code 1}からはじまる）
+	 */
+	public long number() {
+		return number;
+	}
+	/**
+	 * 行の開始位置を返す.
+	 * @return 開始位置
+	 */
+	public long offset() {
+		return base + start;
+	}
+	/**
+	 * 行の長さを返す.
+	 * @return 長さ（バイト）
+	 */
+	public int length() {
+		return end - start;
+	}
+	/**
+	 * 行のなかでパターンに適合したもっとも左側の部分文字列の開始位置を返す.
+	 * @return 開始位置
+	 */
+	public long matchStart() {
+		return base + matchStart;
+	}
+	/**
+	 * 行のなかでパターンに適合したもっとも左側の部分文字列の終了位置を返す.
+	 * @return 終了位置
+	 */
+	public long matchEnd() {
+		return base + matchEnd;
+	}
+	/**
+	 * 行の内容を読み取り専用のバッファとして返す.
+	 * バッファはメモリ・マップされたファイルを参照するビューであり、内容のコピーは行われません。
+	 * {@link LineHandler#handle(Line)}の呼び出しの間だけ使用できます。
+	 * @return バッファ
+	 */
+	public ByteBuffer bytes() {
+		final ByteBuffer view = window.duplicate();
+		view.limit(end);
+		view.position(start);
+		return view.slice().asReadOnlyBuffer();
+	}
+	/**
+	 * 行の内容をUTF-8として復号した文字列を返す.
+	 * @return 文字列
+	 */
+	public String text() {
+		return UTF_8.decode(bytes()).toString();
+	}
+}
@@ -0,0 +1,15 @@
+package com.m12i.regex;
+
+/**
+ * ファイルの走査（{@link Regex#scan(java.nio.file.Path, LineHandler)}）で
+ * パターンに適合する部分文字列を含む行を受け取るコールバック.
+ */
+public interface LineHandler {
+	/**
+	 * パターンに適合する部分文字列を含む行を受け取る.
+	 * 引数の{@link Line}オブジェクトはこのメソッドの呼び出しの間だけ有効です。
+	 * @param line 行
+	 * @return 走査を継続する場合は{@code true}、中断する場合は{@code false}
+	 */
+	boolean handle(Line line);
+}
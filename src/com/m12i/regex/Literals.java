@@ -0,0 +1,263 @@
+package com.m12i.regex;
+
+import java.nio.charset.Charset;
+
+/**
+ * 正規表現パターンに適合するすべての文字列が必ず含む文字列（必須リテラル）.
+ * 構文木（{@link Node}）を解析して、適合する文字列の先頭・末尾に必ず現れる文字列と、
+ * 途中のいずれかの位置に必ず現れる文字列を求めます。
+ * <p>パターンマッチに先立って入力文字列のなかから必須リテラルを高速に探索することで（{@link Finder}）、
+ * 適合する可能性のない入力文字列をDFAで評価することなく棄却し、
+ * 部分一致型のパターンマッチではDFAによる評価を開始する位置を先送りします。</p>
+ */
+final class Literals {
+	/**
+	 * 必須リテラルをもたないことをあらわすオブジェクト.
+	 */
+	static final Literals NONE = new Literals(null, "", "", "", false);
+
+	/**
+	 * Boyer-Moore-Horspool法による文字列の探索を行うオブジェクト.
+	 * ずらし量の表は文字の下位8ビットをキーにして管理され、
+	 * キーが衝突する文字については小さいほうのずらし量が採用されます。
+	 */
+	static final class Finder {
+		private final String literal;
+		private final int[] shifts = new int[256];
+		Finder(final String literal) {
+			this.literal = literal;
+			final int m = literal.length();
+			for (int i = 0; i < shifts.length; i ++) {
+				shifts[i] = m;
+			}
+			for (int i = 0; i < m - 1; i ++) {
+				shifts[literal.charAt(i) & 0xFF] = m - 1 - i;
+			}
+		}
+		/**
+		 * 入力文字シーケンスの指定された範囲のなかでリテラルがはじめて現れる位置を返す.
+		 * @param input 入力文字シーケンス
+		 * @param from 探索を開始する位置
+		 * @param to 探索を終了する位置（この位置の文字は評価しない）
+		 * @return リテラルの開始位置（範囲内に現れない場合は{@code -1}）
+		 */
+		int indexOf(final CharSequence input, final int from, final int to) {
+			final int m = literal.length();
+			if (input instanceof String && to == input.length()) {
+				// 文字列の末尾まで探索する場合は組み込みの探索を使用する
+				final int found = ((String) input).indexOf(literal, from);
+				return found >= 0 && found + m <= to ? found : -1;
+			}
+			final char last = literal.charAt(m - 1);
+			int i = from + m - 1;
+			while (i < to) {
+				final char ch = input.charAt(i);
+				if (ch == last && regionMatches(input, i - m + 1, literal)) {
+					return i - m + 1;
+				}
+				i += shifts[ch & 0xFF];
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * 構文木を解析して必須リテラルを求める.
+	 * @param node 構文木
+	 * @return 必須リテラル
+	 */
+	static Literals of(final Node node) {
+		final Literals result = analyze(node);
+		return result == NONE ? NONE : new Literals(result.exact, result.prefix, result.suffix, result.inner, true);
+	}
+	/**
+	 * 構文木を解析して必須リテラルを求める.
+	 * {@link #of(Node)}と異なり、探索に使用する{@link Finder}オブジェクトを初期化しません。
+	 * @param node 構文木
+	 * @return 必須リテラル
+	 */
+	static Literals analyze(final Node node) {
+		if (node.kind == Node.Kind.GROUP) {
+			return analyze(node.left);
+		} else if (node.kind == Node.Kind.ASSERTION) {
+			// 表明は空文字列にだけ適合する
+			return new Literals("", "", "", "", false);
+		} else if (node.kind == Node.Kind.CHAR) {
+			final String literal = String.valueOf(node.value);
+			return new Literals(literal, literal, literal, literal, false);
+		} else if (node.kind == Node.Kind.UNION) {
+			final Literals left = analyze(node.left);
+			final Literals right = analyze(node.right);
+			final String exact = left.exact != null && left.exact.equals(right.exact) ? left.exact : null;
+			final String prefix = commonPrefix(left.prefix, right.prefix);
+			final String suffix = commonSuffix(left.suffix, right.suffix);
+			return new Literals(exact, prefix, suffix, longer(prefix, suffix), false);
+		} else if (node.kind == Node.Kind.REPEAT && node.min > 0) {
+			// 下限の回数分の繰り返しは連結と同じく扱う
+			final Literals left = analyze(node.left);
+			if (left.exact == null) {
+				return new Literals(null, left.prefix, left.suffix, left.inner, false);
+			}
+			final StringBuilder buff = new StringBuilder(left.exact.length() * node.min);
+			for (int i = 0; i < node.min; i ++) {
+				buff.append(left.exact);
+			}
+			final String repeated = buff.toString();
+			return new Literals(node.min == node.max ? repeated : null, repeated, repeated, repeated, false);
+		} else if (node.kind == Node.Kind.CONCAT) {
+			final Literals left = analyze(node.left);
+			final Literals right = analyze(node.right);
+			final String exact = left.exact != null && right.exact != null ? left.exact + right.exact : null;
+			final String prefix = left.exact != null ? left.exact + right.prefix : left.prefix;
+			final String suffix = right.exact != null ? left.suffix + right.exact : right.suffix;
+			// 左側の末尾と右側の先頭は連続して現れる
+			final String inner = longer(longer(left.inner, right.inner), left.suffix + right.prefix);
+			return new Literals(exact, prefix, suffix, longer(longer(prefix, suffix), inner), false);
+		}
+		// 文字クラスやドット、スター演算や0回以上の繰り返しの対象は特定の文字列に限定できない
+		return NONE;
+	}
+
+	/**
+	 * パターンに適合する文字列がただ1つであればその文字列（そうでなければ{@code null}）.
+	 */
+	final String exact;
+	/**
+	 * パターンに適合する文字列が必ず先頭にもつ文字列（ない場合は空文字列）.
+	 */
+	final String prefix;
+	/**
+	 * パターンに適合する文字列が必ず末尾にもつ文字列（ない場合は空文字列）.
+	 */
+	final String suffix;
+	/**
+	 * パターンに適合する文字列が必ず含む文字列のうちもっとも長いもの（ない場合は空文字列）.
+	 */
+	final String inner;
+	private final Finder prefixFinder;
+	private final Finder innerFinder;
+
+	private Literals(final String exact, final String prefix, final String suffix, final String inner, final boolean finders) {
+		this.exact = exact;
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.inner = inner;
+		this.prefixFinder = !finders || prefix.isEmpty() ? null : new Finder(prefix);
+		this.innerFinder = !finders || inner.isEmpty() ? null : new Finder(inner);
+	}
+
+	/**
+	 * 必須リテラルをUTF-8で符号化したバイト列（各バイトを{@code 0}から{@code 255}までの値の文字とみなした文字列）に変換する.
+	 * バイト単位のDFAとともに使用します（{@link Utf8}）。
+	 * サロゲートを含む必須リテラルは、それを含むパターンがバイト単位のDFAでは適合しないため使用しません。
+	 * @return 変換結果
+	 */
+	Literals utf8() {
+		if (this == NONE) {
+			return this;
+		}
+		final String encoded = exact == null ? null : encode(exact);
+		return new Literals(encoded, nonNull(encode(prefix)), nonNull(encode(suffix)), nonNull(encode(inner)), true);
+	}
+	/**
+	 * 入力文字シーケンスの範囲全体がパターンに適合する可能性があるかどうかを返す.
+	 * {@code false}を返した場合、範囲全体がパターンに適合することはありません。
+	 * @param input 入力文字シーケンス
+	 * @param from 開始位置
+	 * @param to 終了位置（この位置の文字は含まない）
+	 * @return 検証結果
+	 */
+	boolean admits(final CharSequence input, final int from, final int to) {
+		if (exact != null && exact.length() != to - from) {
+			return false;
+		}
+		if (to - from < prefix.length() || to - from < suffix.length()) {
+			return false;
+		}
+		if (!regionMatches(input, from, prefix) || !regionMatches(input, to - suffix.length(), suffix)) {
+			return false;
+		}
+		if (innerFinder != null && !inner.equals(prefix) && !inner.equals(suffix)) {
+			return innerFinder.indexOf(input, from, to) >= 0;
+		}
+		return true;
+	}
+	/**
+	 * 入力文字シーケンスの指定された位置からはじまる部分文字列がパターンに適合する可能性があるかどうかを返す.
+	 * @param input 入力文字シーケンス
+	 * @param from 開始位置
+	 * @param to 終了位置（この位置の文字は含まない）
+	 * @return 検証結果
+	 */
+	boolean admitsPrefix(final CharSequence input, final int from, final int to) {
+		return to - from >= prefix.length() && regionMatches(input, from, prefix);
+	}
+	/**
+	 * 入力文字シーケンスの範囲のなかでパターンに適合する部分文字列が開始しうるもっとも左側の位置を返す.
+	 * 先頭の必須リテラルがあればそれがはじめて現れる位置を、なければ途中の必須リテラルの有無を検証して{@code from}を返します。
+	 * @param input 入力文字シーケンス
+	 * @param from 探索を開始する位置
+	 * @param to 探索を終了する位置（この位置の文字は評価しない）
+	 * @return 部分文字列が開始しうる位置（適合する部分文字列がありえない場合は{@code -1}）
+	 */
+	int candidate(final CharSequence input, final int from, final int to) {
+		if (prefixFinder != null) {
+			return prefixFinder.indexOf(input, from, to);
+		}
+		if (innerFinder != null && innerFinder.indexOf(input, from, to) < 0) {
+			return -1;
+		}
+		return from;
+	}
+
+	/**
+	 * 入力文字シーケンスの指定された位置にリテラルが現れるかどうかを返す.
+	 * @param input 入力文字シーケンス
+	 * @param at 位置
+	 * @param literal リテラル
+	 * @return 検証結果
+	 */
+	private static boolean regionMatches(final CharSequence input, final int at, final String literal) {
+		final int m = literal.length();
+		for (int j = 0; j < m; j ++) {
+			if (input.charAt(at + j) != literal.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static String encode(final String literal) {
+		for (int i = 0; i < literal.length(); i ++) {
+			if (Character.isSurrogate(literal.charAt(i))) {
+				return null;
+			}
+		}
+		final byte[] bytes = literal.getBytes(UTF_8);
+		final StringBuilder buff = new StringBuilder(bytes.length);
+		for (final byte b : bytes) {
+			buff.append((char) (b & 0xFF));
+		}
+		return buff.toString();
+	}
+	private static String nonNull(final String literal) {
+		return literal == null ? "" : literal;
+	}
+	private static String longer(final String a, final String b) {
+		return b.length() > a.length() ? b : a;
+	}
+	private static String commonPrefix(final String a, final String b) {
+		int n = 0;
+		while (n < a.length() && n < b.length() && a.charAt(n) == b.charAt(n)) {
+			n ++;
+		}
+		return a.substring(0, n);
+	}
+	private static String commonSuffix(final String a, final String b) {
+		int n = 0;
+		while (n < a.length() && n < b.length() && a.charAt(a.length() - 1 - n) == b.charAt(b.length() - 1 - n)) {
+			n ++;
+		}
+		return a.substring(a.length() - n);
+	}
+}
@@ -0,0 +1,153 @@
+package com.m12i.regex;
+
+/**
+ * 位置に関する表明（アサーション）の評価に使用する文字の種別.
+ * {@code ^}や{@code $}、{@code \b}は文字に適合するのではなく、
+ * 直前の文字と直後の文字の種別の組み合わせによって成否が決まる空文字（ゼロ幅）の表明です。
+ * 入力文字列の端（{@link #EDGE}）も1つの種別として扱います。
+ * <p>DFAの状態は直前の文字の種別を含み、表明の成否は状態遷移の際に直後の文字の種別が判明した時点で評価されます。
+ * そのため表明を含むパターンでもDFAによる評価が行われ、NFAシミュレーションなどに切り替えられることはありません。</p>
+ */
+final class Look {
+	/**
+	 * 入力文字列（リージョン）の端.
+	 */
+	static final int EDGE = 0;
+	/**
+	 * 改行文字（{@code '\n'}）.
+	 */
+	static final int NEWLINE = 1;
+	/**
+	 * 単語を構成する文字（{@code [0-9A-Za-z_]}）.
+	 */
+	static final int WORD = 2;
+	/**
+	 * それ以外の文字.
+	 */
+	static final int OTHER = 3;
+	/**
+	 * 種別の数.
+	 */
+	static final int COUNT = 4;
+
+	/**
+	 * 入力文字列の先頭をあらわす表明（複数行モードでない{@code ^}）.
+	 */
+	static final char TEXT_START = 'A';
+	/**
+	 * 行の先頭をあらわす表明（複数行モードの{@code ^}）.
+	 */
+	static final char LINE_START = '^';
+	/**
+	 * 入力文字列の末尾をあらわす表明（複数行モードでない{@code $}）.
+	 */
+	static final char TEXT_END = 'z';
+	/**
+	 * 行の末尾をあらわす表明（複数行モードの{@code $}）.
+	 */
+	static final char LINE_END = '$';
+	/**
+	 * 単語境界をあらわす表明（{@code \b}）.
+	 */
+	static final char WORD_BOUNDARY = 'b';
+	/**
+	 * 単語境界以外をあらわす表明（{@code \B}）.
+	 */
+	static final char NOT_WORD_BOUNDARY = 'B';
+
+	private Look() {}
+
+	/**
+	 * 文字の種別を返す.
+	 * @param ch 文字
+	 * @return 種別
+	 */
+	static int of(final char ch) {
+		if (ch == '\n') {
+			return NEWLINE;
+		}
+		return isWord(ch) ? WORD : OTHER;
+	}
+	/**
+	 * 単語を構成する文字であるかどうかを返す.
+	 * @param ch 文字
+	 * @return 検証結果
+	 */
+	static boolean isWord(final char ch) {
+		return ('0' <= ch && ch <= '9') || ('A' <= ch && ch <= 'Z') || ('a' <= ch && ch <= 'z') || ch == '_';
+	}
+	/**
+	 * 入力文字シーケンスの位置の直前の文字の種別を返す.
+	 * @param input 入力文字シーケンス
+	 * @param at 位置
+	 * @param start 入力文字列の端とみなす位置（リージョンの開始位置）
+	 * @return 種別
+	 */
+	static int before(final CharSequence input, final int at, final int start) {
+		return at > start ? of(input.charAt(at - 1)) : EDGE;
+	}
+	/**
+	 * 入力文字シーケンスの位置の直後の文字の種別を返す.
+	 * @param input 入力文字シーケンス
+	 * @param at 位置
+	 * @param end 入力文字列の端とみなす位置（リージョンの終了位置）
+	 * @return 種別
+	 */
+	static int after(final CharSequence input, final int at, final int end) {
+		return at < end ? of(input.charAt(at)) : EDGE;
+	}
+	/**
+	 * 直前の文字と直後の文字の種別をもとに表明が成り立つかどうかを返す.
+	 * @param assertion 表明
+	 * @param before 直前の文字の種別
+	 * @param after 直後の文字の種別
+	 * @return 検証結果
+	 */
+	static boolean holds(final char assertion, final int before, final int after) {
+		switch (assertion) {
+		case TEXT_START:
+			return before == EDGE;
+		case LINE_START:
+			return before == EDGE || before == NEWLINE;
+		case TEXT_END:
+			return after == EDGE;
+		case LINE_END:
+			return after == EDGE || after == NEWLINE;
+		case WORD_BOUNDARY:
+			return (before == WORD) != (after == WORD);
+		case NOT_WORD_BOUNDARY:
+			return (before == WORD) == (after == WORD);
+		default:
+			throw new IllegalArgumentException("Unknown assertion.");
+		}
+	}
+	/**
+	 * 直後の文字の種別によって成否が変わる表明であるかどうかを返す.
+	 * @param assertion 表明
+	 * @return 検証結果
+	 */
+	static boolean looksAhead(final char assertion) {
+		return assertion != TEXT_START && assertion != LINE_START;
+	}
+	/**
+	 * 直前の文字と直後の文字を入れ替えた表明を返す.
+	 * パターンを逆向きにしたNFAを構成する際に使用します。
+	 * 単語境界とそれ以外をあらわす表明は入れ替えても同じです。
+	 * @param assertion 表明
+	 * @return 表明
+	 */
+	static char mirror(final char assertion) {
+		switch (assertion) {
+		case TEXT_START:
+			return TEXT_END;
+		case LINE_START:
+			return LINE_END;
+		case TEXT_END:
+			return TEXT_START;
+		case LINE_END:
+			return LINE_START;
+		default:
+			return assertion;
+		}
+	}
+}
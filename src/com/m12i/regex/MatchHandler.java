@@ -0,0 +1,15 @@
+package com.m12i.regex;
+
+/**
+ * ストリーム処理（{@link StreamMatcher}）でパターンに適合した部分文字列を受け取るコールバック.
+ */
+public interface MatchHandler {
+	/**
+	 * パターンに適合した部分文字列を受け取る.
+	 * 部分文字列の位置と内容は引数のマッチャーの{@link StreamMatcher#start()}、{@link StreamMatcher#end()}、
+	 * {@link StreamMatcher#group()}などで参照できます。これらはこのメソッドの呼び出しの間だけ有効です。
+	 * @param matcher マッチャー
+	 * @return 処理を継続する場合は{@code true}、中断する場合は{@code false}
+	 */
+	boolean handle(StreamMatcher matcher);
+}
@@ -1,5 +1,15 @@
 package com.m12i.regex;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
 /**
  * 非決定性有限オートマトン(Nondeterministic Finite Automaton).
  * 初期状態と受理状態、そして状態遷移パスを管理します。
@@ -15,19 +25,22 @@ final class NFA {
 		/**
 		 * 初期状態.
 		 */
-		final Long from;
+		final int from;
 		/**
 		 * 受理状態セット.
 		 */
-		final Long[] accepts;
-		private final Paths paths = new Paths();
+		final int[] accepts;
+		private final Paths paths;
 		
 		/**
 		 * 初期状態と受理状態セットをもとにオブジェクトを初期化する.
+		 * 状態遷移パスセットはファクトリが管理するものを共有します。
+		 * @param factory 状態のIDを発番したファクトリ
 		 * @param from 初期状態
 		 * @param accepts 受理状態セット
 		 */
-		Fragment(final Long from, final Long... accepts) {
+		Fragment(final IDFactory factory, final int from, final int... accepts) {
+			this.paths = factory.paths();
 			this.from = from;
 			this.accepts = accepts;
 		}
@@ -36,7 +49,7 @@ final class NFA {
 		 * 空文字（イプシロン）による状態遷移パスを追加する.
 		 * @param to 受理状態セット
 		 */
-		void connectWithEpsilon(final Long[] to) {
+		void connectWithEpsilon(final int[] to) {
 			connectWithEpsilon(this.from, to);
 		}
 		/**
@@ -44,8 +57,8 @@ final class NFA {
 		 * @param from 初期状態
 		 * @param to 受理状態セット
 		 */
-		void connectWithEpsilon(final Long from, final Long[] to) {
-			final Long[] mem = paths.get(from);
+		void connectWithEpsilon(final int from, final int[] to) {
+			final int[] mem = paths.get(from);
 			if (mem != null) {
 				paths.put(from, Functions.concat(mem, to));
 			} else {
@@ -58,7 +71,7 @@ final class NFA {
 		 * @param by 入力文字
 		 * @param to 受理状態セット
 		 */
-		void connect(final Char by, final Long[] to) {
+		void connect(final Char by, final int[] to) {
 			connect(this.from, by, to);
 		}
 		/**
@@ -67,8 +80,8 @@ final class NFA {
 		 * @param by 入力文字
 		 * @param to 受理状態セット
 		 */
-		void connect(final Long from, final Char by, final Long[] to) {
-			final Long[] mem = paths.get(from, by);
+		void connect(final int from, final Char by, final int[] to) {
+			final int[] mem = paths.get(from, by);
 			if (mem != null) {
 				paths.put(from, by, Functions.concat(mem, to));
 			} else {
@@ -77,11 +90,14 @@ final class NFA {
 		}
 		/**
 		 * 状態遷移パス情報をコピーして取り込む.
+		 * 取り込み元と状態遷移パスセットを共有している場合は何もしません。
 		 * @param sources 取り込み元
 		 */
 		void include(final Fragment... sources) {
 			for (final Fragment frag : sources) {
-				this.paths.include(frag.paths);
+				if (frag.paths != this.paths) {
+					this.paths.include(frag.paths);
+				}
 			}
 		}
 		/**
@@ -89,44 +105,511 @@ final class NFA {
 		 * @return {@link NFA}オブジェクト
 		 */
 		NFA build() {
-			return new NFA(this);
+			final int[][] labeled = new int[1][];
+			labeled[0] = accepts;
+			return new NFA(this, labeled);
+		}
+	}
+	
+	/**
+	 * 複数の{@link Fragment}オブジェクトを選択（和）により1つに束ねた{@link NFA}オブジェクトを構築する.
+	 * 各フラグメントの受理状態にはそのフラグメントのインデックスがラベルとして付与されます。
+	 * フラグメントの状態IDはすべて同じファクトリにより発番されている必要があります。
+	 * @param fragments フラグメントのリスト
+	 * @param factory 各状態にIDを発番するためのファクトリ
+	 * @return {@link NFA}オブジェクト
+	 */
+	static NFA union(final List<Fragment> fragments, final IDFactory factory) {
+		final int[][] labeled = new int[fragments.size()][];
+		int count = 0;
+		for (int i = 0; i < labeled.length; i ++) {
+			labeled[i] = fragments.get(i).accepts;
+			count += labeled[i].length;
+		}
+		final int[] accepts = new int[count];
+		count = 0;
+		for (final int[] each : labeled) {
+			System.arraycopy(each, 0, accepts, count, each.length);
+			count += each.length;
 		}
+		final Fragment fragN = new Fragment(factory, factory.product(), accepts);
+		final int[] froms = new int[labeled.length];
+		for (int i = 0; i < froms.length; i ++) {
+			fragN.include(fragments.get(i));
+			froms[i] = fragments.get(i).from;
+		}
+		fragN.connectWithEpsilon(froms);
+		return new NFA(fragN, labeled);
 	}
 	
-	private final Paths paths;
-	final Long from;
-	final Long[] accepts;
+	private static final int[] EMPTY = new int[0];
+	
+	final int from;
+	final int[] accepts;
+	/**
+	 * 状態の数.
+	 * 状態IDは{@code 0}以上この値未満であることが保証されます。
+	 */
+	final int size;
+	/**
+	 * 状態IDをキーにして受理状態に付与されたラベルを管理（受理状態でない場合は{@code -1}）.
+	 * ラベルはその受理状態に対応する正規表現パターンのインデックスで、単一のパターンから構築されたNFAでは常に{@code 0}です。
+	 * @see #union(List, IDFactory)
+	 */
+	final int[] labels;
+	/**
+	 * ラベルの数.
+	 */
+	final int labelCount;
+	/**
+	 * 状態遷移パスで使用されている入力文字から導出された入力文字クラスの一覧.
+	 */
+	final Alphabet alphabet;
+	/**
+	 * 初期状態のイプシロン閉包（昇順に整列済み）.
+	 * @see #transition(int, int)
+	 */
+	final int[] initial;
+	// 状態IDをキーにして遷移のある入力文字クラスIDの一覧（昇順）を管理
+	private final int[][] classes;
+	// 状態IDをキーにして classes に対応する遷移先の状態セットのイプシロン閉包を管理
+	// （すべての入力文字クラスの遷移先が同じ場合は長さ1の配列）
+	private final int[][][] targets;
+	// 状態IDをキーにして classes に含まれない入力文字クラスの遷移先の状態セット（ドットによる遷移）のイプシロン閉包を管理
+	private final int[][] others;
+	// 状態IDをキーにして表明による遷移の表明を管理（表明による遷移がない場合は 0）
+	private final char[] assertions;
+	// 状態IDをキーにして表明による遷移の遷移先の状態セットのイプシロン閉包を管理
+	private final int[][] assertionTargets;
+	/**
+	 * 表明による遷移をもつかどうか.
+	 * {@code false}の場合、DFAの状態は直前の文字の種別を区別せず、受理状態の検証も直後の文字の種別に依存しません。
+	 */
+	final boolean hasAssertions;
+	/**
+	 * 直後の文字の種別によって成否が変わる表明（{@link Look#looksAhead(char)}）による遷移をもつかどうか.
+	 * {@code false}の場合、受理状態の検証に直後の文字を参照する必要はありません。
+	 */
+	final boolean looksAhead;
+	// 文字の種別（Look.EDGE など）をキーにして表明の評価に影響する種別に正規化した種別を管理
+	// （区別する必要のない種別は Look.OTHER にまとめる）
+	private final int[] looks = new int[Look.COUNT];
+	// 入力文字クラスIDをキーにしてその入力文字クラスに属する文字の種別（正規化済み）を管理
+	private final int[] categories;
 	
-	private NFA(Fragment fragment) {
-		this.paths = fragment.paths;
+	/**
+	 * フラグメントをもとにオブジェクトを初期化する.
+	 * フラグメントの状態遷移パスセットは状態ごとの状態遷移の表に変換されて保持され、
+	 * 状態遷移の際に状態遷移パスセットを参照したり配列を生成したりすることはありません。
+	 * 遷移先の状態セットはあらかじめイプシロン閉包に置き換えられ、
+	 * 同じ遷移先の状態セットをもつ状態遷移どうしや同じ入力文字による状態遷移どうしでは配列が共有されます。
+	 * @param fragment フラグメント
+	 * @param labeled ラベルをインデックスとして受理状態セットを格納した配列
+	 */
+	private NFA(final Fragment fragment, final int[][] labeled) {
 		this.from = fragment.from;
 		this.accepts = fragment.accepts;
+		// 状態遷移パスを配列にコピーする
+		final int count = fragment.paths.size();
+		final int[] froms = new int[count];
+		final Char[] bys = new Char[count];
+		final int[][] tos = new int[count][];
+		fragment.paths.copyTo(froms, bys, tos);
+		int max = from;
+		for (final int s : accepts) {
+			max = Math.max(max, s);
+		}
+		final Set<Char> chars = new HashSet<Char>();
+		boolean edge = false;
+		boolean newline = false;
+		boolean word = false;
+		boolean looksAhead = false;
+		for (int i = 0; i < count; i ++) {
+			max = Math.max(max, froms[i]);
+			for (final int to : tos[i]) {
+				max = Math.max(max, to);
+			}
+			if (bys[i].kind == Char.Kind.ASSERTION) {
+				final char assertion = bys[i].value();
+				edge |= assertion != Look.WORD_BOUNDARY && assertion != Look.NOT_WORD_BOUNDARY;
+				newline |= assertion == Look.LINE_START || assertion == Look.LINE_END;
+				word |= assertion == Look.WORD_BOUNDARY || assertion == Look.NOT_WORD_BOUNDARY;
+				looksAhead |= Look.looksAhead(assertion);
+			} else if (bys[i].kind != Char.Kind.EPSILON) {
+				chars.add(bys[i]);
+			}
+		}
+		// 表明の評価に必要な文字の種別が入力文字クラスをまたがないよう、種別の境界を入力文字クラスの境界に加える
+		if (newline) {
+			chars.add(Char.khar('\n'));
+		}
+		if (word) {
+			chars.add(Char.klass(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'}));
+		}
+		this.hasAssertions = edge || word;
+		this.looksAhead = looksAhead;
+		looks[Look.EDGE] = edge ? Look.EDGE : Look.OTHER;
+		looks[Look.NEWLINE] = newline ? Look.NEWLINE : Look.OTHER;
+		looks[Look.WORD] = word ? Look.WORD : Look.OTHER;
+		looks[Look.OTHER] = Look.OTHER;
+		this.size = max + 1;
+		this.labels = new int[size];
+		Arrays.fill(labels, -1);
+		for (int label = 0; label < labeled.length; label ++) {
+			for (final int s : labeled[label]) {
+				labels[s] = label;
+			}
+		}
+		this.labelCount = labeled.length;
+		this.alphabet = Alphabet.of(chars);
+		this.categories = new int[alphabet.size()];
+		for (int klass = 0; klass < categories.length; klass ++) {
+			categories[klass] = looks[Look.of(alphabet.representative(klass))];
+		}
+		
+		// 状態遷移パスを初期状態ごとにまとめる（計数ソート）
+		final int[] starts = new int[size + 1];
+		for (int i = 0; i < count; i ++) {
+			starts[froms[i] + 1] ++;
+		}
+		for (int s = 0; s < size; s ++) {
+			starts[s + 1] += starts[s];
+		}
+		final int[] order = new int[count];
+		final int[] fill = Arrays.copyOf(starts, size);
+		for (int i = 0; i < count; i ++) {
+			order[fill[froms[i]] ++] = i;
+		}
+		// 入力文字ごとに適合する入力文字クラスIDの一覧を求める（同じ入力文字については共有する）
+		final Map<Char, int[]> covers = new HashMap<Char, int[]>();
+		final int[][] epsilons = new int[size][];
+		this.classes = new int[size][];
+		this.targets = new int[size][][];
+		this.others = new int[size][];
+		this.assertions = new char[size];
+		this.assertionTargets = new int[size][];
+		for (int s = 0; s < size; s ++) {
+			int[] dot = null;
+			int edges = 0;
+			int single = -1;
+			for (int k = starts[s]; k < starts[s + 1]; k ++) {
+				final int i = order[k];
+				if (bys[i].kind == Char.Kind.EPSILON) {
+					epsilons[s] = tos[i];
+				} else if (bys[i].kind == Char.Kind.ASSERTION) {
+					assertions[s] = bys[i].value();
+					assertionTargets[s] = tos[i];
+				} else if (bys[i].kind == Char.Kind.DOT) {
+					dot = tos[i];
+				} else {
+					edges ++;
+					single = i;
+				}
+			}
+			others[s] = dot == null ? EMPTY : dot;
+			if (edges == 0) {
+				classes[s] = EMPTY;
+			} else if (edges == 1 && dot == null) {
+				// もっともよくある場合：遷移先の状態セットも入力文字クラスIDの一覧も共有する
+				classes[s] = cover(covers, bys[single]);
+				targets[s] = new int[][]{tos[single]};
+			} else {
+				// 同じ入力文字クラスに適合する遷移が複数ある場合は遷移先の状態セットを結合する
+				final SortedMap<Integer, int[]> merged = new TreeMap<Integer, int[]>();
+				for (int k = starts[s]; k < starts[s + 1]; k ++) {
+					final int i = order[k];
+					if (bys[i].kind == Char.Kind.EPSILON || bys[i].kind == Char.Kind.DOT
+							|| bys[i].kind == Char.Kind.ASSERTION) {
+						continue;
+					}
+					for (final int klass : cover(covers, bys[i])) {
+						final int[] mem = merged.get(klass);
+						merged.put(klass, Functions.concat(mem == null ? others[s] : mem, tos[i]));
+					}
+				}
+				classes[s] = new int[merged.size()];
+				targets[s] = new int[merged.size()][];
+				int n = 0;
+				for (final Map.Entry<Integer, int[]> e : merged.entrySet()) {
+					classes[s][n] = e.getKey();
+					targets[s][n] = e.getValue();
+					n ++;
+				}
+			}
+		}
+		// 遷移先の状態セットをイプシロン閉包に置き換える
+		final Closures closures = new Closures(this, epsilons);
+		this.initial = closures.of(new int[]{from});
+		for (int s = 0; s < size; s ++) {
+			others[s] = closures.of(others[s]);
+			if (assertionTargets[s] != null) {
+				assertionTargets[s] = closures.of(assertionTargets[s]);
+			}
+			if (targets[s] != null) {
+				for (int k = 0; k < targets[s].length; k ++) {
+					targets[s][k] = closures.of(targets[s][k]);
+				}
+			}
+		}
+	}
+	/**
+	 * イプシロン閉包を計算するオブジェクト.
+	 * イプシロン閉包には入力文字や表明による遷移をもつ状態と受理状態だけが含まれます。
+	 * それ以外の状態は空文字（イプシロン）による遷移を中継するだけで、
+	 * 状態遷移にも受理状態の検証にも影響しないためです。
+	 * 訪問済みの状態は世代番号により記録されるため、閉包を計算するたびに状態の数に比例する配列を初期化することはありません。
+	 */
+	private static final class Closures {
+		private final int[][] epsilons;
+		private final boolean[] important;
+		private final int[] visited;
+		private final int[] todo;
+		private final Map<int[], int[]> memo = new IdentityHashMap<int[], int[]>();
+		private int generation = 0;
+		Closures(final NFA nfa, final int[][] epsilons) {
+			this.epsilons = epsilons;
+			this.important = new boolean[nfa.size];
+			for (int s = 0; s < nfa.size; s ++) {
+				important[s] = nfa.labels[s] >= 0 || nfa.classes[s].length > 0 || nfa.others[s].length > 0
+						|| nfa.assertions[s] != 0;
+			}
+			this.visited = new int[nfa.size];
+			this.todo = new int[nfa.size];
+		}
+		/**
+		 * 状態セットのイプシロン閉包を返す.
+		 * 同じ配列オブジェクトについては同じ結果の配列オブジェクトを返します。
+		 * @param seeds 状態セット
+		 * @return イプシロン閉包（昇順に整列済み）
+		 */
+		int[] of(final int[] seeds) {
+			if (seeds.length == 0) {
+				return seeds;
+			}
+			final int[] cached = memo.get(seeds);
+			if (cached != null) {
+				return cached;
+			}
+			generation ++;
+			int head = 0;
+			int tail = 0;
+			for (final int seed : seeds) {
+				if (visited[seed] != generation) {
+					visited[seed] = generation;
+					todo[tail ++] = seed;
+				}
+			}
+			int count = 0;
+			while (head < tail) {
+				final int s = todo[head ++];
+				if (important[s]) {
+					// 取り出し済みの位置を結果の格納に再利用する
+					todo[count ++] = s;
+				}
+				final int[] nexts = epsilons[s];
+				if (nexts != null) {
+					for (final int next : nexts) {
+						if (visited[next] != generation) {
+							visited[next] = generation;
+							todo[tail ++] = next;
+						}
+					}
+				}
+			}
+			final int[] result = Arrays.copyOf(todo, count);
+			Arrays.sort(result);
+			memo.put(seeds, result);
+			return result;
+		}
+	}
+	/**
+	 * 入力文字に適合する入力文字クラスIDの一覧を返す.
+	 * @param covers 計算済みの一覧
+	 * @param by 入力文字（ドットと空文字（イプシロン）を除く）
+	 * @return 入力文字クラスIDの一覧（昇順）
+	 */
+	private int[] cover(final Map<Char, int[]> covers, final Char by) {
+		int[] result = covers.get(by);
+		if (result == null) {
+			if (by.kind == Char.Kind.CHAR) {
+				result = new int[]{alphabet.classOf(by.value())};
+			} else {
+				final int width = alphabet.size();
+				final int[] buff = new int[width];
+				int n = 0;
+				for (int klass = 0; klass < width; klass ++) {
+					if (by.matches(alphabet.representative(klass))) {
+						buff[n ++] = klass;
+					}
+				}
+				result = Arrays.copyOf(buff, n);
+			}
+			covers.put(by, result);
+		}
+		return result;
 	}
 	
+	/**
+	 * 初期状態と入力文字クラスIDをキーにして状態遷移後の受理状態を返す.
+	 * 戻り値は遷移先の状態セットのイプシロン閉包で、入力文字による遷移をもつ状態と受理状態だけで構成されます。
+	 * @param from 初期状態
+	 * @param klass 入力文字クラスID（{@link #alphabet}）
+	 * @return 受理状態セット（昇順に整列済み、遷移がない場合は空の配列）
+	 */
+	int[] transition(final int from, final int klass) {
+		final int[] keys = classes[from];
+		int lo = 0;
+		int hi = keys.length - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (keys[mid] < klass) {
+				lo = mid + 1;
+			} else if (keys[mid] > klass) {
+				hi = mid - 1;
+			} else {
+				final int[][] tos = targets[from];
+				return tos[tos.length == 1 ? 0 : mid];
+			}
+		}
+		return others[from];
+	}
 	/**
 	 * 初期状態と入力文字をキーにして状態遷移後の受理状態を返す.
 	 * @param from 初期状態
 	 * @param by 入力文字
-	 * @return 受理状態セット
+	 * @return 受理状態セット（昇順に整列済み、遷移がない場合は空の配列）
+	 * @see #transition(int, int)
 	 */
-	Long[] transition(final Long from, final char by) {
-		return paths.get(from, by);
+	int[] transition(final int from, final char by) {
+		return transition(from, alphabet.classOf(by));
 	}
 	/**
-	 * 初期状態をキーにして状態遷移後の受理状態を返す.
-	 * 入力文字は空文字（イプシロン）とみなす。
-	 * @param from 初期状態
-	 * @return 受理状態セット
+	 * 文字の種別を表明の評価に影響する種別に正規化して返す.
+	 * NFAに含まれる表明の成否を区別しない種別は{@link Look#OTHER}にまとめられます。
+	 * 表明による遷移をもたないNFAではいずれの種別も{@link Look#OTHER}となります。
+	 * @param category 文字の種別（{@link Look#EDGE}など）
+	 * @return 正規化された種別
+	 */
+	int look(final int category) {
+		return looks[category];
+	}
+	/**
+	 * 入力文字クラスに属する文字の種別（正規化済み）を返す.
+	 * @param klass 入力文字クラスID
+	 * @return 正規化された種別
+	 * @see #look(int)
+	 */
+	int categoryOf(final int klass) {
+		return categories[klass];
+	}
+	/**
+	 * 状態のもつ表明による遷移の表明を返す.
+	 * @param s 状態ID
+	 * @return 表明（表明による遷移がない場合は{@code 0}）
+	 */
+	char assertionOf(final int s) {
+		return assertions[s];
+	}
+	/**
+	 * 状態のもつ表明による遷移の遷移先の状態セットのイプシロン閉包を返す.
+	 * @param s 状態ID（表明による遷移をもつもの）
+	 * @return 遷移先の状態セット（昇順に整列済み）
+	 */
+	int[] assertionTargets(final int s) {
+		return assertionTargets[s];
+	}
+	/**
+	 * 状態セットに直前と直後の文字の種別のもとで成り立つ表明による遷移の遷移先を加えた状態セットを返す.
+	 * 遷移先がさらに表明による遷移をもつ場合もたどります。
+	 * @param states 状態セット
+	 * @param extra 状態セットに合流させる状態セット
+	 * @param before 直前の文字の種別
+	 * @param after 直後の文字の種別
+	 * @return 状態セット（昇順に整列済み）
+	 */
+	int[] resolve(final int[] states, final int[] extra, final int before, final int after) {
+		final boolean[] marks = new boolean[size];
+		int[] buff = new int[states.length + extra.length];
+		int count = 0;
+		for (int pass = 0; pass < 2; pass ++) {
+			for (final int s : pass == 0 ? extra : states) {
+				if (!marks[s]) {
+					marks[s] = true;
+					buff[count ++] = s;
+				}
+			}
+		}
+		for (int k = 0; k < count; k ++) {
+			final char assertion = assertions[buff[k]];
+			if (assertion == 0 || !Look.holds(assertion, before, after)) {
+				continue;
+			}
+			for (final int t : assertionTargets[buff[k]]) {
+				if (!marks[t]) {
+					marks[t] = true;
+					if (count == buff.length) {
+						buff = Arrays.copyOf(buff, count * 2 + 1);
+					}
+					buff[count ++] = t;
+				}
+			}
+		}
+		final int[] result = Arrays.copyOf(buff, count);
+		Arrays.sort(result);
+		return result;
+	}
+	/**
+	 * 確保済みのメモリの量を概算して返す.
+	 * @return メモリの量（バイト）
 	 */
-	Long[] transition(final Long from) {
-		return paths.get(from);
+	long footprint() {
+		// 共有されている配列も重複して数える
+		long result = size * (16L + 4 * 8 + 2 + 8) + alphabet.footprint();
+		for (int s = 0; s < size; s ++) {
+			result += classes[s].length * 4L + others[s].length * 4L;
+			if (targets[s] != null) {
+				for (final int[] tos : targets[s]) {
+					result += 8 + tos.length * 4L;
+				}
+			}
+		}
+		return result;
 	}
 	/**
 	 * NFAオブジェクトをもとにして{@link DFA}オブジェクトを導出する.
+	 * @param cacheLimit 遅延構築されるDFAの状態の数の上限
 	 * @return DFAオブジェクト
 	 */
-	DFA transform() {
-		return new DFA(this);
+	DFA transform(final int cacheLimit) {
+		return new DFA(this, cacheLimit, false, false, false);
+	}
+	/**
+	 * NFAオブジェクトをもとにして非アンカー型の{@link DFA}オブジェクトを導出する.
+	 * 非アンカー型のDFAは入力文字列のあらゆる位置からはじまる部分文字列を同時に評価します。
+	 * @param cacheLimit 遅延構築されるDFAの状態の数の上限
+	 * @return DFAオブジェクト
+	 */
+	DFA transformUnanchored(final int cacheLimit) {
+		return new DFA(this, cacheLimit, true, false, false);
+	}
+	/**
+	 * NFAオブジェクトをもとにしてスレッドの開始位置の順序を区別する非アンカー型の{@link DFA}オブジェクトを導出する.
+	 * このDFAで最長一致の評価（{@link DFA.Runtime#doesAcceptPrefix(CharSequence, int, int, boolean)}）を行うと、
+	 * 入力文字列のなかでパターンに適合するもっとも左側の部分文字列のうちもっとも長いものの終了位置が求まります。
+	 * @param cacheLimit 遅延構築されるDFAの状態の数の上限
+	 * @return DFAオブジェクト
+	 */
+	DFA transformLeftmost(final int cacheLimit) {
+		return new DFA(this, cacheLimit, false, true, false);
+	}
+	/**
+	 * NFAオブジェクトをもとにして状態を導出せずにNFAシミュレーションを行う{@link DFA}オブジェクトを導出する.
+	 * @param unanchored 非アンカー型とする場合は{@code true}
+	 * @return DFAオブジェクト
+	 * @see Simulator
+	 */
+	DFA simulate(final boolean unanchored) {
+		return new DFA(this, 1, unanchored, false, true);
 	}
 	/**
 	 * オブジェクトの内容を文字列表現として整形する.
@@ -137,8 +620,23 @@ final class NFA {
 		final StringBuilder buff = new StringBuilder();
 		buff.append("from: ").append(this.from).append(lineSep);
 		buff.append("accepts: ").append(Functions.arrayList(this.accepts)).append(lineSep);
-		buff.append("transitions: ").append(lineSep);
-		buff.append(this.paths.inspect());
+		buff.append("initial: ").append(Functions.arrayList(this.initial)).append(lineSep);
+		buff.append("transitions: ");
+		for (int s = 0; s < size; s ++) {
+			for (int k = 0; k < classes[s].length; k ++) {
+				buff.append(lineSep).append(String.format("(from: %s, by: %s, accepts: %s)",
+						s, Functions.charLiteral(alphabet.representative(classes[s][k])),
+						Functions.arrayList(targets[s][targets[s].length == 1 ? 0 : k])));
+			}
+			if (others[s].length > 0) {
+				buff.append(lineSep).append(String.format("(from: %s, by: (others), accepts: %s)",
+						s, Functions.arrayList(others[s])));
+			}
+			if (assertions[s] != 0) {
+				buff.append(lineSep).append(String.format("(from: %s, by: %s, accepts: %s)",
+						s, Char.assertion(assertions[s]).inspect(), Functions.arrayList(assertionTargets[s])));
+			}
+		}
 		return buff.toString();
 	}
 }
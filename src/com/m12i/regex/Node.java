@@ -1,5 +1,8 @@
 package com.m12i.regex;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.m12i.regex.NFA.Fragment;
 
 /**
@@ -10,7 +13,7 @@ final class Node {
 	 * 構文木を構成するノードの種別.
 	 */
 	static enum Kind {
-		CHAR, UNION, STAR, CONCAT, DOT, KLASS, NEGATIVE_KLASS;
+		CHAR, UNION, STAR, CONCAT, DOT, KLASS, NEGATIVE_KLASS, GROUP, REPEAT, ASSERTION;
 	}
 	
 	private static final char nullChar = '\u0000';
@@ -27,19 +30,19 @@ final class Node {
 	}
 	/**
 	 * 構文木のノードを生成して返す.
-	 * @param values 文字クラスに属する文字集合
+	 * @param ranges 文字クラスに属する文字の区間の列（下限と上限を交互に格納）
 	 * @return ノード
 	 */
-	static Node klassNode(final String klass) {
-		return new Node(Kind.KLASS, nullChar, klass, null, null);
+	static Node klassNode(final int[] ranges) {
+		return new Node(Kind.KLASS, nullChar, ranges, null, null);
 	}
 	/**
 	 * 構文木のノードを生成して返す.
-	 * @param values 文字クラスに属さない文字集合
+	 * @param ranges 文字クラスに属さない文字の区間の列（下限と上限を交互に格納）
 	 * @return ノード
 	 */
-	static Node negativeKlassNode(final String klass) {
-		return new Node(Kind.NEGATIVE_KLASS, nullChar, klass, null, null);
+	static Node negativeKlassNode(final int[] ranges) {
+		return new Node(Kind.NEGATIVE_KLASS, nullChar, ranges, null, null);
 	}
 	/**
 	 * 構文木のノードを生成して返す.
@@ -50,6 +53,19 @@ final class Node {
 	static Node unionNode(final Node left, final Node right) {
 		return new Node(Kind.UNION, nullChar, null, left, right);
 	}
+	/**
+	 * 構文木のノードを生成して返す.
+	 * 選択肢は平衡した二分木として組み立てられるため、構文木の深さは選択肢の数の対数に比例します。
+	 * @param nodes 和集合演算の対象ノード（1つ以上）
+	 * @return ノード
+	 */
+	static Node unionNode(final List<Node> nodes) {
+		if (nodes.size() == 1) {
+			return nodes.get(0);
+		}
+		final int half = nodes.size() / 2;
+		return unionNode(unionNode(nodes.subList(0, half)), unionNode(nodes.subList(half, nodes.size())));
+	}
 	/**
 	 * 構文木のノードを生成して返す.
 	 * @param factor スター演算対象ノード
@@ -60,12 +76,26 @@ final class Node {
 	}
 	/**
 	 * 構文木のノードを生成して返す.
-	 * プラス演算は内部的にはスター演算に変換されます。
+	 * プラス演算は内部的には回数の上限をもたない1回以上の繰り返しとして扱われ、対象ノードは複製されません。
 	 * @param factor プラス演算対象ノード
 	 * @return ノード
 	 */
 	static Node plusNode(final Node factor) {
-		return concatNode(factor, starNode(factor));
+		return repeatNode(factor, 1, -1);
+	}
+	/**
+	 * 構文木のノードを生成して返す.
+	 * 対象ノードは複製されず、{@link NFA.Fragment}を構成する時点で回数分の状態遷移に展開されます。
+	 * @param factor 繰り返しの対象ノード
+	 * @param min 繰り返しの回数の下限
+	 * @param max 繰り返しの回数の上限（上限がない場合は{@code -1}）
+	 * @return ノード
+	 */
+	static Node repeatNode(final Node factor, final int min, final int max) {
+		if (min == 0 && max == -1) {
+			return starNode(factor);
+		}
+		return new Node(Kind.REPEAT, nullChar, null, factor, null, 0, min, max);
 	}
 	/**
 	 * 構文木のノードを生成して返す.
@@ -76,6 +106,19 @@ final class Node {
 	static Node concatNode(final Node left, final Node right) {
 		return new Node(Kind.CONCAT, nullChar, null, left, right);
 	}
+	/**
+	 * 構文木のノードを生成して返す.
+	 * ノードは平衡した二分木として組み立てられるため、構文木の深さはノードの数の対数に比例します。
+	 * @param nodes 結合されるノード（1つ以上）
+	 * @return ノード
+	 */
+	static Node concatNode(final List<Node> nodes) {
+		if (nodes.size() == 1) {
+			return nodes.get(0);
+		}
+		final int half = nodes.size() / 2;
+		return concatNode(concatNode(nodes.subList(0, half)), concatNode(nodes.subList(half, nodes.size())));
+	}
 	/**
 	 * 構文木のノードを生成して返す.
 	 * @return ノード
@@ -83,19 +126,107 @@ final class Node {
 	static Node dotNode() {
 		return new Node(Kind.DOT, nullChar, null, null, null);
 	}
+	/**
+	 * 構文木のノードを生成して返す.
+	 * @param assertion 位置に関する表明（{@link Look#TEXT_START}など）
+	 * @return ノード
+	 */
+	static Node assertionNode(final char assertion) {
+		return new Node(Kind.ASSERTION, assertion, null, null, null);
+	}
+	/**
+	 * 構文木のノードを生成して返す.
+	 * グループは状態遷移には影響せず、{@link PikeVM}がその開始位置と終了位置を記録するためにだけ使用されます。
+	 * @param group グループ番号（1以上）
+	 * @param factor グループの対象ノード
+	 * @return ノード
+	 */
+	static Node groupNode(final int group, final Node factor) {
+		return new Node(Kind.GROUP, nullChar, null, factor, null, group);
+	}
 
 	final Kind kind;
 	final char value;
-	final String klass;
+	final int[] ranges;
 	final Node left;
 	final Node right;
+	final int group;
+	final int min;
+	final int max;
 	
-	private Node(final Node.Kind kind, final char value, final String klass, final Node left, final Node right) {
+	private Node(final Node.Kind kind, final char value, final int[] ranges, final Node left, final Node right) {
+		this(kind, value, ranges, left, right, 0);
+	}
+	private Node(final Node.Kind kind, final char value, final int[] ranges, final Node left, final Node right, final int group) {
+		this(kind, value, ranges, left, right, group, 0, 0);
+	}
+	private Node(final Node.Kind kind, final char value, final int[] ranges, final Node left, final Node right,
+			final int group, final int min, final int max) {
 		this.kind = kind;
 		this.value = value;
-		this.klass = klass;
+		this.ranges = ranges;
 		this.left = left;
 		this.right = right;
+		this.group = group;
+		this.min = min;
+		this.max = max;
+	}
+	
+	/**
+	 * レシーバとなるノードとその配下のノードの文字と文字クラスに大文字・小文字の変種を加えた構文木を返す.
+	 * 変種をもつ文字は文字クラスに置き換えられます。
+	 * 否定文字クラスは変種を加えた文字の集合の補集合となるため、たとえば{@code [^a]}は{@code A}にも適合しません。
+	 * @param unicode Unicodeの大文字・小文字を対象とする場合は{@code true}、ASCIIの範囲だけを対象とする場合は{@code false}
+	 * @return 構文木（変更がない場合はレシーバ自身）
+	 * @see Char#caseFold(int[], boolean)
+	 */
+	Node caseFold(final boolean unicode) {
+		if (kind == Node.Kind.CHAR) {
+			final int[] folded = Char.caseFold(new int[]{value, value}, unicode);
+			return folded.length == 2 ? this : klassNode(folded);
+		} else if (kind == Node.Kind.KLASS) {
+			return klassNode(Char.caseFold(ranges, unicode));
+		} else if (kind == Node.Kind.NEGATIVE_KLASS) {
+			return negativeKlassNode(Char.caseFold(ranges, unicode));
+		} else if (left == null) {
+			return this;
+		}
+		return new Node(kind, value, ranges, left.caseFold(unicode),
+				right == null ? null : right.caseFold(unicode), group, min, max);
+	}
+	/**
+	 * レシーバとなるノードとその配下のノードが位置に関する表明を含むかどうかを返す.
+	 * @return 検証結果
+	 */
+	boolean hasAssertion() {
+		if (kind == Node.Kind.ASSERTION) {
+			return true;
+		}
+		return (left != null && left.hasAssertion()) || (right != null && right.hasAssertion());
+	}
+	/**
+	 * レシーバとなるノードとその配下のノードから構成されるNFAの状態の数を見積もる.
+	 * 繰り返しは回数分だけ展開されるため、入れ子になった繰り返しの見積もりは回数の積に比例します。
+	 * 見積もりは{@code limit}を超えた時点で打ち切られます。
+	 * @param limit 見積もりの上限
+	 * @return 状態の数の見積もり（{@code limit}を超える場合は{@code limit + 1}）
+	 */
+	long size(final long limit) {
+		final long result;
+		if (kind == Node.Kind.UNION) {
+			result = left.size(limit) + right.size(limit) + 1;
+		} else if (kind == Node.Kind.CONCAT) {
+			result = left.size(limit) + right.size(limit);
+		} else if (kind == Node.Kind.STAR) {
+			result = left.size(limit) + 1;
+		} else if (kind == Node.Kind.GROUP) {
+			result = left.size(limit);
+		} else if (kind == Node.Kind.REPEAT) {
+			result = left.size(limit) * Math.max(min, Math.max(max, 1));
+		} else {
+			result = 2;
+		}
+		return Math.min(result, limit + 1);
 	}
 	
 	/**
@@ -104,54 +235,99 @@ final class Node {
 	 * @return {@link Fragment}オブジェクト
 	 */
 	Fragment assemble(IDFactory factory) {
-		if (kind == Node.Kind.CHAR) {
-			final Long s0 = factory.product();
-			final Long s1 = factory.product();
-			final Fragment fragN = new Fragment(s0, s1);
+		return assemble(factory, false);
+	}
+	/**
+	 * レシーバとなるノードとその配下のノードの情報をもとに{@link Fragment}オブジェクトを構成する.
+	 * {@code utf8}が{@code true}の場合、文字や文字クラス、ドットは
+	 * それらをUTF-8で符号化したバイト列に適合する状態遷移に変換されます（{@link Utf8}）。
+	 * @param factory 各状態にIDを初番するためのファクトリ
+	 * @param utf8 バイト単位のパターンマッチのための{@link Fragment}オブジェクトを構成する場合は{@code true}
+	 * @return {@link Fragment}オブジェクト
+	 */
+	Fragment assemble(IDFactory factory, boolean utf8) {
+		return assemble(factory, utf8, false);
+	}
+	/**
+	 * レシーバとなるノードとその配下のノードの情報をもとに{@link Fragment}オブジェクトを構成する.
+	 * {@code reverse}が{@code true}の場合、パターンを逆向きにした（適合する文字列を逆順にした文字列に適合する）
+	 * {@link Fragment}オブジェクトを構成します。
+	 * 結合は右側のノードから順に連結され、UTF-8のバイト列も末尾のバイトから順に連結されます。
+	 * 表明は直前と直後の文字を入れ替えたもの（{@code ^}と{@code $}など）に置き換えられます。
+	 * @param factory 各状態にIDを初番するためのファクトリ
+	 * @param utf8 バイト単位のパターンマッチのための{@link Fragment}オブジェクトを構成する場合は{@code true}
+	 * @param reverse パターンを逆向きにする場合は{@code true}
+	 * @return {@link Fragment}オブジェクト
+	 */
+	Fragment assemble(IDFactory factory, boolean utf8, boolean reverse) {
+		if (utf8 && kind == Node.Kind.CHAR) {
+			return Utf8.fragment(Char.khar(value), factory, reverse);
+		} else if (utf8 && kind == Node.Kind.KLASS) {
+			return Utf8.fragment(Char.klass(ranges), factory, reverse);
+		} else if (utf8 && kind == Node.Kind.NEGATIVE_KLASS) {
+			return Utf8.fragment(Char.negativeKlass(ranges), factory, reverse);
+		} else if (utf8 && kind == Node.Kind.DOT) {
+			return Utf8.fragment(Char.DOT, factory, reverse);
+		} else if (kind == Node.Kind.CHAR) {
+			final int s0 = factory.product();
+			final int s1 = factory.product();
+			final Fragment fragN = new Fragment(factory, s0, s1);
 			fragN.connect(Char.khar(value), Functions.array(s1));
 			return fragN;
 		} else if (kind == Node.Kind.KLASS) {
-			final Long s0 = factory.product();
-			final Long s1 = factory.product();
-			final Fragment fragN = new Fragment(s0, s1);
-			fragN.connect(Char.klass(klass), Functions.array(s1));
+			final int s0 = factory.product();
+			final int s1 = factory.product();
+			final Fragment fragN = new Fragment(factory, s0, s1);
+			fragN.connect(Char.klass(ranges), Functions.array(s1));
 			return fragN;
 		} else if (kind == Node.Kind.NEGATIVE_KLASS) {
-			final Long s0 = factory.product();
-			final Long s1 = factory.product();
-			final Fragment fragN = new Fragment(s0, s1);
-			fragN.connect(Char.negativeKlass(klass), Functions.array(s1));
+			final int s0 = factory.product();
+			final int s1 = factory.product();
+			final Fragment fragN = new Fragment(factory, s0, s1);
+			fragN.connect(Char.negativeKlass(ranges), Functions.array(s1));
 			return fragN;
 		} else if (kind == Node.Kind.DOT) {
-			final Long s0 = factory.product();
-			final Long s1 = factory.product();
-			final Fragment fragN = new Fragment(s0, s1);
+			final int s0 = factory.product();
+			final int s1 = factory.product();
+			final Fragment fragN = new Fragment(factory, s0, s1);
 			fragN.connect(Char.DOT, Functions.array(s1));
 			return fragN;
+		} else if (kind == Node.Kind.ASSERTION) {
+			// 表明はバイト単位のパターンマッチでも同じ状態遷移となる
+			final int s0 = factory.product();
+			final int s1 = factory.product();
+			final Fragment fragN = new Fragment(factory, s0, s1);
+			fragN.connect(Char.assertion(reverse ? Look.mirror(value) : value), Functions.array(s1));
+			return fragN;
+		} else if (kind == Node.Kind.GROUP) {
+			return left.assemble(factory, utf8, reverse);
+		} else if (kind == Node.Kind.REPEAT) {
+			return assembleRepeat(factory, utf8, reverse);
 		} else if (kind == Node.Kind.UNION) {
-			final Fragment frag0 = left.assemble(factory);
-			final Fragment frag1 = right.assemble(factory);
-			final Long sN = factory.product();
-			final Fragment fragN = new Fragment(sN, Functions.concat(frag0.accepts, frag1.accepts));
+			final Fragment frag0 = left.assemble(factory, utf8, reverse);
+			final Fragment frag1 = right.assemble(factory, utf8, reverse);
+			final int sN = factory.product();
+			final Fragment fragN = new Fragment(factory, sN, Functions.concat(frag0.accepts, frag1.accepts));
 			fragN.include(frag0, frag1);
 			fragN.connectWithEpsilon(Functions.array(frag0.from));
 			fragN.connectWithEpsilon(Functions.array(frag1.from));
 			return fragN;
 		} else if (kind == Node.Kind.CONCAT) {
-			final Fragment frag0 = left.assemble(factory);
-			final Fragment frag1 = right.assemble(factory);
-			final Fragment fragN = new Fragment(frag0.from, frag1.accepts);
+			// 逆向きの場合は右側のノードを先に連結する
+			final Fragment frag0 = (reverse ? right : left).assemble(factory, utf8, reverse);
+			final Fragment frag1 = (reverse ? left : right).assemble(factory, utf8, reverse);
+			final Fragment fragN = new Fragment(factory, frag0.from, frag1.accepts);
 			fragN.include(frag0, frag1);
-			for (final Long s : frag0.accepts) {
+			for (final int s : frag0.accepts) {
 				fragN.connectWithEpsilon(s, Functions.array(frag1.from));
 			}
 			return fragN;
 		} else if (kind == Node.Kind.STAR) {
-			final Fragment frag0 = left.assemble(factory);
-			final Long sN = factory.product();
-			final Fragment fragN = new Fragment(sN, Functions.concat(frag0.accepts, sN));
+			final Fragment frag0 = left.assemble(factory, utf8, reverse);
+			final int sN = factory.product();
+			final Fragment fragN = new Fragment(factory, sN, Functions.concat(frag0.accepts, sN));
 			fragN.include(frag0);
-			for (final Long s : frag0.accepts) {
+			for (final int s : frag0.accepts) {
 				fragN.connectWithEpsilon(s, Functions.array(frag0.from));
 			}
 			fragN.connectWithEpsilon(Functions.array(frag0.from));
@@ -159,6 +335,62 @@ final class Node {
 		}
 		throw new RuntimeException("Invalid node found.");
 	}
+	/**
+	 * 回数を指定した繰り返しの{@link Fragment}オブジェクトを構成する.
+	 * 下限の回数分のフラグメントを連結したうえで、上限がない場合は最後のフラグメントの受理状態からその初期状態に戻るパスを追加し、
+	 * 上限がある場合は残りの回数分のフラグメントを{@code x(x(x)?)?}の形に入れ子にして連結します。
+	 * 省略可能なフラグメントの受理状態はすべて全体の受理状態となるため、繰り返しを打ち切るためのイプシロン遷移は追加されません。
+	 * @param factory 各状態にIDを初番するためのファクトリ
+	 * @param utf8 バイト単位のパターンマッチのための{@link Fragment}オブジェクトを構成する場合は{@code true}
+	 * @param reverse パターンを逆向きにする場合は{@code true}（各フラグメントは同じなので連結の順序は変わらない）
+	 * @return {@link Fragment}オブジェクト
+	 */
+	private Fragment assembleRepeat(final IDFactory factory, final boolean utf8, final boolean reverse) {
+		final int from;
+		int[] last;
+		if (min == 0) {
+			// 0回の繰り返しは空文字列に適合する
+			from = factory.product();
+			last = Functions.array(from);
+		} else {
+			Fragment frag = left.assemble(factory, utf8, reverse);
+			from = frag.from;
+			for (int i = 1; i < min; i ++) {
+				final Fragment next = left.assemble(factory, utf8, reverse);
+				for (final int s : frag.accepts) {
+					frag.connectWithEpsilon(s, Functions.array(next.from));
+				}
+				frag = next;
+			}
+			if (max == -1) {
+				for (final int s : frag.accepts) {
+					frag.connectWithEpsilon(s, Functions.array(frag.from));
+				}
+				return new Fragment(factory, from, frag.accepts);
+			}
+			last = frag.accepts;
+		}
+		// 省略可能なフラグメントを入れ子にして連結し、それぞれの受理状態を集める
+		final List<int[]> accepts = new ArrayList<int[]>();
+		accepts.add(last);
+		int count = last.length;
+		for (int i = min; i < max; i ++) {
+			final Fragment next = left.assemble(factory, utf8, reverse);
+			for (final int s : last) {
+				next.connectWithEpsilon(s, Functions.array(next.from));
+			}
+			last = next.accepts;
+			accepts.add(last);
+			count += last.length;
+		}
+		final int[] result = new int[count];
+		count = 0;
+		for (final int[] each : accepts) {
+			System.arraycopy(each, 0, result, count, each.length);
+			count += each.length;
+		}
+		return new Fragment(factory, from, result);
+	}
 	/**
 	 * ノードの内容を文字列表現として整形する.
 	 * @return 整形結果
@@ -175,20 +407,20 @@ final class Node {
 		indent(buff, depth);
 		if (node.kind == Node.Kind.DOT) {
 			buff.append("Dot");
+		} else if (node.kind == Node.Kind.ASSERTION) {
+			buff.append("Assertion(").append(node.value);
 		} else if (node.kind == Node.Kind.CHAR) {
 			buff
 			.append("Char(")
 			.append(Functions.charLiteral(node.value));
 		} else if (node.kind == Node.Kind.KLASS) {
 			buff
-			.append("Klass([")
-			.append(String.valueOf(node.klass))
-			.append("])");
+			.append("Klass(")
+			.append(Char.klass(node.ranges).inspect());
 		} else if (node.kind == Node.Kind.NEGATIVE_KLASS) {
 			buff
-			.append("NegativeKlass([^")
-			.append(String.valueOf(node.klass))
-			.append("])");
+			.append("NegativeKlass(")
+			.append(Char.negativeKlass(node.ranges).inspect());
 		} else if (node.kind == Node.Kind.CONCAT) {
 			buff.append("Concat(");
 			formatHelper(buff, depth + 1, node.left);
@@ -202,6 +434,12 @@ final class Node {
 			formatHelper(buff, depth + 1, node.left);
 			buff.append(',');
 			formatHelper(buff, depth + 1, node.right);
+		} else if (node.kind == Node.Kind.GROUP) {
+			buff.append("Group(").append(node.group).append(',');
+			formatHelper(buff, depth + 1, node.left);
+		} else if (node.kind == Node.Kind.REPEAT) {
+			buff.append("Repeat(").append(node.min).append(',').append(node.max).append(',');
+			formatHelper(buff, depth + 1, node.left);
 		}
 		buff.append(')');
 	}
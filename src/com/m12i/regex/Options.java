@@ -0,0 +1,252 @@
+package com.m12i.regex;
+
+/**
+ * 正規表現パターンのコンパイル・オプション.
+ * このオブジェクトはイミュータブルです。
+ * 設定値を変更するメソッドはレシーバを変更せず、変更を反映した新しいオブジェクトを返します。
+ * {@link Regex#compile(String, Options)}で使用されます。
+ */
+public final class Options {
+	/**
+	 * {@link #stateLimit}のデフォルト値.
+	 */
+	public static final int DEFAULT_STATE_LIMIT = 10000;
+	/**
+	 * {@link #cacheLimit}のデフォルト値.
+	 */
+	public static final int DEFAULT_CACHE_LIMIT = 4096;
+	/**
+	 * {@link #sizeLimit}のデフォルト値.
+	 */
+	public static final int DEFAULT_SIZE_LIMIT = 1000000;
+	/**
+	 * デフォルトのオプション.
+	 * DFAの状態はパターンマッチの過程で必要になった時点で導出されます。
+	 */
+	public static final Options DEFAULT = new Options(false, DEFAULT_STATE_LIMIT, DEFAULT_CACHE_LIMIT, true, false, false, DEFAULT_SIZE_LIMIT, false, false, false);
+	/**
+	 * コンパイル時にDFAのすべての状態を導出して最小化するオプション.
+	 * コンパイルに時間がかかるかわりにパターンマッチの過程で状態を導出することがなくなります。
+	 */
+	public static final Options EAGER_DFA = new Options(true, DEFAULT_STATE_LIMIT, DEFAULT_CACHE_LIMIT, true, false, false, DEFAULT_SIZE_LIMIT, false, false, false);
+	/**
+	 * 大文字・小文字を区別せずにパターンマッチを行うオプション.
+	 * 対象はASCIIの範囲の文字だけです。Unicodeの文字を対象とする場合は{@link #unicodeCase(boolean)}を併用します。
+	 */
+	public static final Options CASE_INSENSITIVE = new Options(false, DEFAULT_STATE_LIMIT, DEFAULT_CACHE_LIMIT, true, false, false, DEFAULT_SIZE_LIMIT, false, true, false);
+
+	/**
+	 * コンパイル時にDFAのすべての状態を導出して最小化するかどうか.
+	 */
+	public final boolean eagerDfa;
+	/**
+	 * コンパイル時に導出を許容するDFAの状態の数の上限.
+	 * {@link #eagerDfa}が{@code true}の場合に使用されます。
+	 */
+	public final int stateLimit;
+	/**
+	 * パターンマッチの過程で遅延構築されるDFAの状態の数の上限（キャッシュ上限）.
+	 * 状態の数がこの値に達すると導出済みの状態はすべて破棄されます。
+	 * 破棄が頻発する場合、パターンマッチはNFAシミュレーションに切り替えられます。
+	 * {@link #eagerDfa}が{@code false}の場合に使用されます。
+	 */
+	public final int cacheLimit;
+	/**
+	 * コンパイル済みの正規表現オブジェクトを{@link Regex#cache()}に保管・再利用するかどうか.
+	 * {@code false}の場合、{@link Regex#compile(String, Options)}は呼び出しの都度コンパイルを行います。
+	 */
+	public final boolean useCache;
+	/**
+	 * 前方一致型のパターンマッチ（{@link Regex.Matcher#lookingAt()}）で最長一致を行うかどうか.
+	 * {@code false}の場合は最短一致となります。
+	 * 部分一致型のパターンマッチ（{@link Regex.Matcher#find()}）はこの値にかかわらず最長一致です。
+	 */
+	public final boolean longestMatch;
+	/**
+	 * DFAの状態を導出せずにNFAシミュレーションだけでパターンマッチを行うかどうか.
+	 * 1度しか使用しないパターンのように状態を導出するコストに見合わない場合や、
+	 * 1文字あたりの処理時間の変動を抑えたい場合に使用します。
+	 * {@link #eagerDfa}が{@code true}の場合は無視されます。
+	 */
+	public final boolean nfaSimulation;
+	/**
+	 * コンパイル時に見積もられるNFAの状態の数の上限.
+	 * 回数を指定した繰り返し（{@code {n,m}}）は回数分の状態に展開されるため、
+	 * {@code ((a|b){1000}){1000}}のように入れ子になった繰り返しではNFAが巨大になります。
+	 * 見積もりがこの値を超えるパターンはNFAを構築する前に棄却されます。
+	 * 辞書照合オートマトン（{@link AhoCorasick}）で評価されるパターンはNFAを構築しないため、
+	 * ストリーム処理などではじめてNFAを構築する時点まで検証されません。
+	 * DFAの状態の数は{@link #stateLimit}と{@link #cacheLimit}により制限されます。
+	 */
+	public final int sizeLimit;
+	/**
+	 * {@code ^}と{@code $}を行の先頭と末尾にも適合させるかどうか（複数行モード）.
+	 * {@code false}の場合、{@code ^}と{@code $}は入力文字列（リージョン）の先頭と末尾にだけ適合します。
+	 * 行の区切りは改行文字（{@code '\n'}）だけです。
+	 */
+	public final boolean multiline;
+	/**
+	 * 大文字・小文字を区別せずにパターンマッチを行うかどうか.
+	 * 正規表現パターンの文字と文字クラスはコンパイル時に大文字・小文字の変種を含む文字クラスに変換されるため、
+	 * 入力文字列を変換（コピー）する必要はなく、1文字あたりの処理時間も大文字・小文字を区別する場合と変わりません。
+	 * ただし大文字・小文字の変種をもつ文字は、DFAに先立つ必須リテラルの探索や辞書照合の対象とはなりません。
+	 */
+	public final boolean caseInsensitive;
+	/**
+	 * {@link #caseInsensitive}が{@code true}の場合にUnicodeの大文字・小文字も区別しないかどうか.
+	 * {@code false}の場合はASCIIの範囲の文字（{@code A-Z}と{@code a-z}）だけが対象となります。
+	 */
+	public final boolean unicodeCase;
+
+	private Options(final boolean eagerDfa, final int stateLimit, final int cacheLimit,
+			final boolean useCache, final boolean longestMatch, final boolean nfaSimulation, final int sizeLimit,
+			final boolean multiline, final boolean caseInsensitive, final boolean unicodeCase) {
+		this.eagerDfa = eagerDfa;
+		this.stateLimit = stateLimit;
+		this.cacheLimit = cacheLimit;
+		this.useCache = useCache;
+		this.longestMatch = longestMatch;
+		this.nfaSimulation = nfaSimulation;
+		this.sizeLimit = sizeLimit;
+		this.multiline = multiline;
+		this.caseInsensitive = caseInsensitive;
+		this.unicodeCase = unicodeCase;
+	}
+
+	/**
+	 * コンパイル時にDFAのすべての状態を導出して最小化するかどうかを変更する.
+	 * @param eagerDfa {@code true}の場合すべての状態を導出する
+	 * @return 新しいオプション
+	 */
+	public Options eagerDfa(final boolean eagerDfa) {
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * コンパイル時に導出を許容するDFAの状態の数の上限を変更する.
+	 * @param stateLimit 状態の数の上限
+	 * @return 新しいオプション
+	 */
+	public Options stateLimit(final int stateLimit) {
+		if (stateLimit < 1) {
+			throw new IllegalArgumentException("State limit must be positive.");
+		}
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * パターンマッチの過程で遅延構築されるDFAの状態の数の上限を変更する.
+	 * @param cacheLimit 状態の数の上限
+	 * @return 新しいオプション
+	 */
+	public Options cacheLimit(final int cacheLimit) {
+		if (cacheLimit < 1) {
+			throw new IllegalArgumentException("Cache limit must be positive.");
+		}
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * コンパイル済みの正規表現オブジェクトをキャッシュに保管・再利用するかどうかを変更する.
+	 * @param useCache {@code true}の場合キャッシュを使用する
+	 * @return 新しいオプション
+	 */
+	public Options useCache(final boolean useCache) {
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * 前方一致型のパターンマッチで最長一致を行うかどうかを変更する.
+	 * @param longestMatch {@code true}の場合は最長一致、{@code false}の場合は最短一致
+	 * @return 新しいオプション
+	 */
+	public Options longestMatch(final boolean longestMatch) {
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * DFAの状態を導出せずにNFAシミュレーションだけでパターンマッチを行うかどうかを変更する.
+	 * @param nfaSimulation {@code true}の場合はNFAシミュレーションだけを行う
+	 * @return 新しいオプション
+	 */
+	public Options nfaSimulation(final boolean nfaSimulation) {
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * コンパイル時に見積もられるNFAの状態の数の上限を変更する.
+	 * @param sizeLimit 状態の数の上限
+	 * @return 新しいオプション
+	 */
+	public Options sizeLimit(final int sizeLimit) {
+		if (sizeLimit < 1) {
+			throw new IllegalArgumentException("Size limit must be positive.");
+		}
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * {@code ^}と{@code $}を行の先頭と末尾にも適合させるかどうかを変更する.
+	 * @param multiline {@code true}の場合は複数行モードとする
+	 * @return 新しいオプション
+	 */
+	public Options multiline(final boolean multiline) {
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * 大文字・小文字を区別せずにパターンマッチを行うかどうかを変更する.
+	 * @param caseInsensitive {@code true}の場合は大文字・小文字を区別しない
+	 * @return 新しいオプション
+	 */
+	public Options caseInsensitive(final boolean caseInsensitive) {
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	/**
+	 * 大文字・小文字を区別しない場合にUnicodeの大文字・小文字も対象とするかどうかを変更する.
+	 * @param unicodeCase {@code true}の場合はUnicodeの大文字・小文字も対象とする
+	 * @return 新しいオプション
+	 */
+	public Options unicodeCase(final boolean unicodeCase) {
+		return new Options(eagerDfa, stateLimit, cacheLimit, useCache, longestMatch, nfaSimulation, sizeLimit, multiline, caseInsensitive, unicodeCase);
+	}
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (eagerDfa ? 1231 : 1237);
+		result = prime * result + stateLimit;
+		result = prime * result + cacheLimit;
+		result = prime * result + (useCache ? 1231 : 1237);
+		result = prime * result + (longestMatch ? 1231 : 1237);
+		result = prime * result + (nfaSimulation ? 1231 : 1237);
+		result = prime * result + sizeLimit;
+		result = prime * result + (multiline ? 1231 : 1237);
+		result = prime * result + (caseInsensitive ? 1231 : 1237);
+		result = prime * result + (unicodeCase ? 1231 : 1237);
+		return result;
+	}
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Options other = (Options) obj;
+		if (eagerDfa != other.eagerDfa)
+			return false;
+		if (stateLimit != other.stateLimit)
+			return false;
+		if (cacheLimit != other.cacheLimit)
+			return false;
+		if (useCache != other.useCache)
+			return false;
+		if (longestMatch != other.longestMatch)
+			return false;
+		if (nfaSimulation != other.nfaSimulation)
+			return false;
+		if (sizeLimit != other.sizeLimit)
+			return false;
+		if (multiline != other.multiline)
+			return false;
+		if (caseInsensitive != other.caseInsensitive)
+			return false;
+		if (unicodeCase != other.unicodeCase)
+			return false;
+		return true;
+	}
+}
@@ -1,5 +1,9 @@
 package com.m12i.regex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import com.m12i.regex.Token.Kind;
 
 /**
@@ -8,13 +12,26 @@ import com.m12i.regex.Token.Kind;
 final class Parser {
 	private Token curr = null;
 	private final Lexer lexer;
+	// 複数行モードであれば true（^ と $ が行の先頭と末尾に適合する）
+	private final boolean multiline;
+	// 開き括弧が現れた順に発番したグループ番号の最大値
+	private int groupCount = 0;
 	
 	/**
 	 * {@link Lexer}オブジェクトをパラメータにとりパーサを初期化する.
 	 * @param lexer {@link Lexer}オブジェクト
 	 */
 	Parser(final Lexer lexer) {
+		this(lexer, false);
+	}
+	/**
+	 * {@link Lexer}オブジェクトと複数行モードの指定をパラメータにとりパーサを初期化する.
+	 * @param lexer {@link Lexer}オブジェクト
+	 * @param multiline {@code ^}と{@code $}を行の先頭と末尾に適合させる場合は{@code true}
+	 */
+	Parser(final Lexer lexer, final boolean multiline) {
 		this.lexer = lexer;
+		this.multiline = multiline;
 		next();
 	}
 	
@@ -32,13 +49,19 @@ final class Parser {
 	private Node factor() {
 		if (curr.kind == Kind.LPAREN) {
 			next();
+			// グループ番号は開き括弧が現れた順に発番する
+			final int group = ++ groupCount;
 			final Node node = subexpr();
 			checkAndNext(Kind.RPAREN);
-			return node;
+			return Node.groupNode(group, node);
 		} else if (curr.kind == Kind.DOT) {
 			final Node node = Node.dotNode();
 			next();
 			return node;
+		} else if (curr.kind == Kind.ASSERTION) {
+			final Node node = Node.assertionNode(assertion(curr.value));
+			next();
+			return node;
 		} else if (curr.kind == Kind.LBRACKET) {
 			next();
 			final Node node = charKlass();
@@ -57,30 +80,59 @@ final class Parser {
 		} else {
 			nega = false;
 		}
-		final StringBuilder buff = new StringBuilder();
-		char last = '\u0000';
+		// 文字クラスに属する文字の区間の下限と上限を交互に格納する
+		int[] ranges = new int[16];
+		int n = 0;
+		// 直前の要素が単独の文字であれば true（ハイフンにより区間の下限となりうる）
+		boolean single = false;
 		while (curr.kind != Kind.RBRACKET) {
-			if (curr.kind == Kind.HYPHEN) {
+			final char ch = klassChar(curr);
+			if (curr.kind == Kind.HYPHEN && single) {
 				next();
-				range(buff, last, curr.value);
+				if (curr.kind == Kind.RBRACKET) {
+					// 末尾のハイフンはハイフンそのものとみなす
+					ranges = Arrays.copyOf(ranges, Math.max(ranges.length, n + 2));
+					ranges[n ++] = ch;
+					ranges[n ++] = ch;
+					break;
+				}
+				final char end = klassChar(curr);
+				if (end < ranges[n - 2]) {
+					throw new IllegalArgumentException("Invalid character range.");
+				}
+				ranges[n - 1] = end;
+				single = false;
 			} else {
-				buff.append(curr.value);
-				last = curr.value;
+				// 先頭のハイフンや区間の直後のハイフンはハイフンそのものとみなす
+				if (n == ranges.length) {
+					ranges = Arrays.copyOf(ranges, n * 2);
+				}
+				ranges[n ++] = ch;
+				ranges[n ++] = ch;
+				single = true;
 			}
 			next();
 		}
 		next();
-		return nega ? Node.negativeKlassNode(buff.toString()) : Node.klassNode(buff.toString());
+		ranges = Arrays.copyOf(ranges, n);
+		return nega ? Node.negativeKlassNode(ranges) : Node.klassNode(ranges);
 	}
-	private void range(final StringBuilder buff, final char start, final char end) {
-		final int startNext = start + 1;
-		if (startNext > end || startNext > 127) {
-			return;
+	private char assertion(final char value) {
+		if (value == '^') {
+			return multiline ? Look.LINE_START : Look.TEXT_START;
+		} else if (value == '$') {
+			return multiline ? Look.LINE_END : Look.TEXT_END;
 		}
-		final int len = (end > 127 ? 127 : end) - startNext;
-		for (char i = 0; i <= len; i++) {
-			buff.append((char) (startNext + i));
+		return value == 'b' ? Look.WORD_BOUNDARY : Look.NOT_WORD_BOUNDARY;
+	}
+	private static char klassChar(final Token token) {
+		// 文字クラスの先頭以外のキャレットはキャレットそのものとみなす
+		if (token.kind == Kind.CARET) {
+			return '^';
+		} else if (token.kind == Kind.HYPHEN) {
+			return '-';
 		}
+		return token.value;
 	}
 	private Node star() {
 		final Node node = factor();
@@ -90,33 +142,42 @@ final class Parser {
 		} else if (curr.kind == Kind.PLUS) {
 			next();
 			return Node.plusNode(node);
+		} else if (curr.kind == Kind.REPEAT) {
+			final Node repeat = Node.repeatNode(node, curr.min, curr.max);
+			next();
+			return repeat;
 		}
 		return node;
 	}
+	private boolean startsFactor() {
+		return curr.kind == Kind.LPAREN || curr.kind == Kind.CHAR || curr.kind == Kind.DOT
+				|| curr.kind == Kind.LBRACKET || curr.kind == Kind.ASSERTION;
+	}
 	private Node seq() {
-		if (curr.kind == Kind.LPAREN || curr.kind == Kind.CHAR || curr.kind == Kind.DOT || curr.kind == Kind.LBRACKET) {
+		if (startsFactor()) {
 			return subseq();
 		} else {
 			return Node.EMPTY_CHAR_NODE;
 		}
 	}
 	private Node subseq() {
-		final Node node0 = star();
-		if (curr.kind == Kind.LPAREN || curr.kind == Kind.CHAR || curr.kind == Kind.DOT || curr.kind == Kind.LBRACKET) {
-			final Node node1 = subseq();
-			return Node.concatNode(node0, node1);
-		} else {
-			return node0;
+		// 再帰呼び出しの深さが要素の数に比例しないよう反復により要素を集める
+		final List<Node> nodes = new ArrayList<Node>();
+		nodes.add(star());
+		while (startsFactor()) {
+			nodes.add(star());
 		}
+		return Node.concatNode(nodes);
 	}
 	private Node subexpr() {
-		final Node node0 = seq();
-		if (curr.kind == Kind.UNION) {
+		// 再帰呼び出しの深さが選択肢の数に比例しないよう反復により選択肢を集める
+		final List<Node> nodes = new ArrayList<Node>();
+		nodes.add(seq());
+		while (curr.kind == Kind.UNION) {
 			next();
-			final Node node1 = subexpr();
-			return Node.unionNode(node0, node1);
+			nodes.add(seq());
 		}
-		return node0;
+		return Node.unionNode(nodes);
 	}
 	/**
 	 * 構文木を組み立てて返す.
@@ -127,4 +188,12 @@ final class Parser {
 		checkAndNext(Kind.EOF);
 		return node;
 	}
+	/**
+	 * 構文木に含まれるグループの数を返す.
+	 * {@link #parse()}の後に呼び出します。
+	 * @return グループの数
+	 */
+	int groupCount() {
+		return groupCount;
+	}
 }
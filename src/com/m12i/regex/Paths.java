@@ -1,6 +1,5 @@
 package com.m12i.regex;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -9,23 +8,24 @@ import com.m12i.regex.NFA.Fragment;
 /**
  * 状態遷移パスセット.
  * 初期状態と入力文字をキーにして受理状態を管理します。
- * このオブジェクトは{@link NFA}と{@link Fragment}で使用されます。
+ * このオブジェクトは{@link Fragment}によるNFAの組み立ての間だけ使用され、
+ * {@link NFA}はこれを状態ごとの状態遷移の表に変換したうえで保持します。
  */
 final class Paths {
 	/**
 	 * 状態遷移パスのマップのためのキー.
 	 */
 	private final class Key {
-		final Long from;
+		final int from;
 		final Char by;
 		private final int hash;
 		
-		private Key(final Long from, final Char by) {
+		private Key(final int from, final Char by) {
 			this.from = from;
 			this.by = by;
 			this.hash = makeHashCode();
 		}
-		private Key(final Long from) {
+		private Key(final int from) {
 			this.from = from;
 			this.by = Char.EPSILON;
 			this.hash = makeHashCode();
@@ -35,7 +35,7 @@ final class Paths {
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + by.hashCode();
-			result = prime * result + from.hashCode();
+			result = prime * result + from;
 			return result;
 		}
 		@Override
@@ -53,15 +53,13 @@ final class Paths {
 			Key other = (Key) obj;
 			if (!by.equals(other.by))
 				return false;
-			if (!from.equals(other.from))
+			if (from != other.from)
 				return false;
 			return true;
 		}
 	}
 	
-	private final Map<Key, Long[]> acceptsMap = new HashMap<Key, Long[]>();
-	private final Map<Long, Key> dotKeyMap = new HashMap<Long, Key>();
-	private final Map<Long, Key[]> klassKeysMap = new HashMap<Long, Key[]>();
+	private final Map<Key, int[]> acceptsMap = new HashMap<Key, int[]>();
 	
 	/**
 	 * 初期状態と入力文字をキーにして受理状態セットを取得する.
@@ -71,41 +69,15 @@ final class Paths {
 	 * @param by 入力文字
 	 * @return 受理状態セット
 	 */
-	Long[] get(final Long from, final Char by) {
+	int[] get(final int from, final Char by) {
 		return acceptsMap.get(new Key(from, by));
 	}
-	/**
-	 * 初期状態と入力文字をキーにして受理状態セットを取得する.
-	 * 入力文字は内部的に保持されている文字クラスやドットの情報とも照合されます。
-	 * @param from 初期状態
-	 * @param by 入力文字
-	 * @return 受理状態
-	 */
-	Long[] get(final Long from, final char by) {
-		Long[] result = acceptsMap.get(new Key(from, Char.khar(by)));
-		if (result == null) {
-			result = new Long[0];
-		}
-		final Key dotKey = dotKeyMap.get(from);
-		if (dotKey != null) {
-			result = Functions.concat(result, acceptsMap.get(dotKey));
-		}
-		final Key[] klassKeys = klassKeysMap.get(from);
-		if (klassKeys != null) {
-			for (final Key k : klassKeys) {
-				if (k.by.matches(by)) {
-					result = Functions.concat(result, acceptsMap.get(k));
-				}
-			}
-		}
-		return result;
-	}
 	/**
 	 * 初期状態と空文字（イプシロン）により状態遷移パスをたどり受理状態セットを返す.
 	 * @param from 初期状態
 	 * @return 受理状態セット
 	 */
-	Long[] get(final Long from) {
+	int[] get(final int from) {
 		return acceptsMap.get(new Key(from));
 	}
 	/**
@@ -114,23 +86,11 @@ final class Paths {
 	 * @param by 入力文字
 	 * @param accepts 受理状態セット
 	 */
-	void put(final Long from, final Char by, final Long[] accepts) {
+	void put(final int from, final Char by, final int[] accepts) {
 		if (by.kind == Char.Kind.EPSILON) {
 			put(from, accepts);
 		} else {
-			final Key k = new Key(from, by);
-			if (by.kind == Char.Kind.DOT) {
-				dotKeyMap.put(from, k);
-			}
-			if (by.kind == Char.Kind.KLASS || by.kind == Char.Kind.NEGATIVE_KLASS) {
-				final Key[] keys = klassKeysMap.get(from);
-				if (keys != null) {
-					klassKeysMap.put(from, concat(keys, k));
-				} else {
-					klassKeysMap.put(from, new Key[]{k});
-				}
-			}
-			acceptsMap.put(k, accepts);
+			acceptsMap.put(new Key(from, by), accepts);
 		}
 	}
 	/**
@@ -138,7 +98,7 @@ final class Paths {
 	 * @param from 初期状態
 	 * @param accepts 受理状態セット
 	 */
-	void put(final Long from, final Long[] accepts) {
+	void put(final int from, final int[] accepts) {
 		acceptsMap.put(new Key(from), accepts);
 	}
 	/**
@@ -147,40 +107,29 @@ final class Paths {
 	 */
 	void include(final Paths source) {
 		this.acceptsMap.putAll(source.acceptsMap);
-		this.klassKeysMap.putAll(source.klassKeysMap);
-		this.dotKeyMap.putAll(source.dotKeyMap);
 	}
-	private Key[] concat(final Key[] a, final Key... b) {
-		final int aLen = a.length;
-		final int bLen = b.length;
-		final Key[] r = Arrays.copyOf(a, aLen + bLen);
-		for (int i = 0; i < bLen; i ++) {
-			r[i + aLen] = b[i];
-		}
-		return r;
+	/**
+	 * 登録済みの状態遷移パスの数を返す.
+	 * @return 状態遷移パスの数
+	 */
+	int size() {
+		return acceptsMap.size();
 	}
 	/**
-	 * オブジェクトの内容を文字列表現として整形する.
-	 * @return 整形結果
+	 * 登録済みの状態遷移パスを配列にコピーする.
+	 * 3つの配列の同じインデックスの要素が1つの状態遷移パスをあらわします。
+	 * 配列の長さは{@link #size()}以上である必要があります。
+	 * @param froms 初期状態を格納する配列
+	 * @param bys 入力文字を格納する配列
+	 * @param accepts 受理状態セットを格納する配列
 	 */
-	String inspect() {
-		final String lineSep = System.lineSeparator();
-		final StringBuilder buff = new StringBuilder();
-		for (final Key k : acceptsMap.keySet()) {
-			if (buff.length() > 0) {
-				buff.append(lineSep);
-			}
-			if (Char.EPSILON == k.by) {
-				buff.append(String.format("(from: %s, by: (epsilon), accepts: %s)", 
-						k.from, 
-						Functions.arrayList(acceptsMap.get(k))));
-			} else {
-				buff.append(String.format("(from: %s, by: %s, accepts: %s)", 
-						k.from, 
-						k.by.inspect(),
-						Functions.arrayList(acceptsMap.get(k))));
-			}
+	void copyTo(final int[] froms, final Char[] bys, final int[][] accepts) {
+		int i = 0;
+		for (final Map.Entry<Key, int[]> e : acceptsMap.entrySet()) {
+			froms[i] = e.getKey().from;
+			bys[i] = e.getKey().by;
+			accepts[i] = e.getValue();
+			i ++;
 		}
-		return buff.toString();
 	}
 }
@@ -0,0 +1,316 @@
+package com.m12i.regex;
+
+import java.util.Arrays;
+
+/**
+ * キャプチャ・グループの位置を求めるための仮想機械（Pike VM）.
+ * 構文木（{@link Node}）を命令列に変換し、各スレッドにキャプチャ・グループの開始・終了位置（スロット）をもたせて
+ * NFAシミュレーションを行います。
+ * スレッドは優先順位の順に管理され、同じ命令に到達したスレッドのうち優先順位のもっとも高いものだけが残されるため、
+ * バックトラックを行わずに1回の走査で位置が定まります。
+ * <p>この仮想機械はDFAが適合する部分文字列の位置を求めた後にだけ、その範囲について実行されます。
+ * 範囲の先頭から末尾までに適合する経路のうち、選択では左側を、繰り返しでは繰り返すほうを優先した経路が採用され、
+ * 繰り返しの内側のグループには最後の繰り返しで適合した位置が記録されます。
+ * これは{@link java.util.regex.Matcher#matches()}と同じ規則です。</p>
+ * <p>命令列はイミュータブルであり、複数のスレッドで共有することができます。
+ * 実行には{@link Runtime}オブジェクトを使用します。</p>
+ */
+final class PikeVM {
+	// 命令の種別
+	private static final int CHAR = 0;
+	private static final int MATCH = 1;
+	private static final int JMP = 2;
+	private static final int SPLIT = 3;
+	private static final int SAVE = 4;
+	private static final int ASSERT = 5;
+
+	/**
+	 * {@link PikeVM}を実行するオブジェクト.
+	 * スレッドの一覧とスロットを格納する領域は初期化の時点で確保され、実行のたびに再利用されます。
+	 * このオブジェクトはスレッドセーフではありません。
+	 */
+	static final class Runtime {
+		private final PikeVM vm;
+		private SparseSet current;
+		private SparseSet next;
+		// 命令のインデックスをキーにしてその命令で待機しているスレッドのスロットを管理
+		private int[][] currentSlots;
+		private int[][] nextSlots;
+		// スレッドを追加する際の作業用のスロット
+		private final int[] work;
+		// スレッドを追加する際の作業用のスタック（命令のインデックス、または復元するスロットと値）
+		private final int[] stack;
+		// 表明の評価に使用する入力文字シーケンスとリージョン（実行中だけ保持する）
+		private CharSequence input;
+		private int regionStart;
+		private int regionEnd;
+		private Runtime(final PikeVM vm) {
+			this.vm = vm;
+			final int size = vm.ops.length;
+			this.current = new SparseSet(size);
+			this.next = new SparseSet(size);
+			this.currentSlots = new int[size][vm.slotCount];
+			this.nextSlots = new int[size][vm.slotCount];
+			this.work = new int[vm.slotCount];
+			this.stack = new int[size * 3 + 3];
+		}
+		/**
+		 * 入力文字シーケンスの範囲全体に適合する経路を求めて、各グループの開始位置と終了位置を返す.
+		 * 表明はリージョンの境界を入力文字列の端とみなして、範囲の外側の文字も参照して評価されます。
+		 * @param input 入力文字シーケンス
+		 * @param regionStart リージョンの開始位置
+		 * @param regionEnd リージョンの終了位置
+		 * @param start 範囲の開始位置
+		 * @param end 範囲の終了位置（この位置の文字は含まない）
+		 * @return グループ番号 {@code g} の開始位置を {@code 2 * g} に、終了位置を {@code 2 * g + 1} に格納した配列
+		 * 	（グループ{@code 0}は範囲全体、適合しなかったグループは{@code -1}）、範囲全体に適合しない場合は{@code null}
+		 */
+		int[] run(final CharSequence input, final int regionStart, final int regionEnd, final int start, final int end) {
+			this.input = input;
+			this.regionStart = regionStart;
+			this.regionEnd = regionEnd;
+			current.clear();
+			Arrays.fill(work, -1);
+			add(current, currentSlots, 0, start);
+			for (int i = start; i < end && current.size() > 0; i ++) {
+				final char ch = input.charAt(i);
+				next.clear();
+				// 優先順位の順にスレッドを進める
+				for (int k = 0; k < current.size(); k ++) {
+					final int pc = current.get(k);
+					if (vm.ops[pc] == CHAR && vm.chars[pc].matches(ch)) {
+						System.arraycopy(currentSlots[pc], 0, work, 0, work.length);
+						add(next, nextSlots, pc + 1, i + 1);
+					}
+				}
+				final SparseSet tmp = current;
+				current = next;
+				next = tmp;
+				final int[][] tmpSlots = currentSlots;
+				currentSlots = nextSlots;
+				nextSlots = tmpSlots;
+			}
+			// 範囲の末尾に到達したスレッドのうち優先順位のもっとも高いものを採用する
+			int[] result = null;
+			for (int k = 0; k < current.size() && result == null; k ++) {
+				final int pc = current.get(k);
+				if (vm.ops[pc] == MATCH) {
+					result = currentSlots[pc].clone();
+					result[0] = start;
+					result[1] = end;
+				}
+			}
+			this.input = null;
+			return result;
+		}
+		/**
+		 * 作業用のスロットをもつスレッドを追加する.
+		 * 分岐や保存の命令は再帰呼び出しを使用せずにスタックによりたどり、
+		 * 文字の照合と適合の命令に到達した時点でスロットを記録します。
+		 * すでに一覧に含まれる命令には優先順位のより高いスレッドが到達しているため追加しません。
+		 * @param list スレッドの一覧
+		 * @param slots スロットを格納する領域
+		 * @param pc0 命令のインデックス
+		 * @param pos 現在の位置
+		 */
+		private void add(final SparseSet list, final int[][] slots, final int pc0, final int pos) {
+			int top = 0;
+			stack[top ++] = pc0;
+			while (top > 0) {
+				final int frame = stack[-- top];
+				if (frame < 0) {
+					// 保存の命令の後続をたどり終えたらスロットを復元する
+					work[-frame - 1] = stack[-- top];
+					continue;
+				}
+				final int pc = frame;
+				if (!list.add(pc)) {
+					continue;
+				}
+				switch (vm.ops[pc]) {
+				case JMP:
+					stack[top ++] = vm.targets[pc];
+					break;
+				case SPLIT:
+					// 優先順位の高いほうが先にたどられるよう後から積む
+					stack[top ++] = vm.alternates[pc];
+					stack[top ++] = vm.targets[pc];
+					break;
+				case ASSERT:
+					if (Look.holds(vm.chars[pc].value(),
+							Look.before(input, pos, regionStart), Look.after(input, pos, regionEnd))) {
+						stack[top ++] = pc + 1;
+					}
+					break;
+				case SAVE:
+					final int slot = vm.targets[pc];
+					stack[top ++] = work[slot];
+					stack[top ++] = -slot - 1;
+					work[slot] = pos;
+					stack[top ++] = pc + 1;
+					break;
+				default:
+					System.arraycopy(work, 0, slots[pc], 0, work.length);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 構文木を命令列に変換する.
+	 * @param node 構文木
+	 * @param groupCount グループの数
+	 * @param utf8 バイト単位のパターンマッチのための命令列とする場合は{@code true}
+	 * @return 命令列
+	 */
+	static PikeVM of(final Node node, final int groupCount, final boolean utf8) {
+		final PikeVM vm = new PikeVM(groupCount);
+		vm.emit(node, utf8);
+		vm.add(MATCH, -1, -1, null);
+		vm.trim();
+		return vm;
+	}
+
+	private int[] ops = new int[16];
+	// 分岐先（分岐・ジャンプの命令）、またはスロットの番号（保存の命令）
+	private int[] targets = new int[16];
+	// 優先順位の低いほうの分岐先（分岐の命令）
+	private int[] alternates = new int[16];
+	// 照合する文字（文字の照合の命令）、または表明（表明の命令）
+	private Char[] chars = new Char[16];
+	private int size = 0;
+	/**
+	 * スロットの数（グループ{@code 0}を含むグループの数の2倍）.
+	 */
+	private final int slotCount;
+
+	private PikeVM(final int groupCount) {
+		this.slotCount = (groupCount + 1) * 2;
+	}
+
+	/**
+	 * 実行に使用する{@link Runtime}オブジェクトを初期化する.
+	 * @return {@link Runtime}オブジェクト
+	 */
+	Runtime initializeRuntime() {
+		return new Runtime(this);
+	}
+	private int add(final int op, final int target, final int alternate, final Char ch) {
+		if (size == ops.length) {
+			ops = Arrays.copyOf(ops, size * 2);
+			targets = Arrays.copyOf(targets, size * 2);
+			alternates = Arrays.copyOf(alternates, size * 2);
+			chars = Arrays.copyOf(chars, size * 2);
+		}
+		ops[size] = op;
+		targets[size] = target;
+		alternates[size] = alternate;
+		chars[size] = ch;
+		return size ++;
+	}
+	private void trim() {
+		ops = Arrays.copyOf(ops, size);
+		targets = Arrays.copyOf(targets, size);
+		alternates = Arrays.copyOf(alternates, size);
+		chars = Arrays.copyOf(chars, size);
+	}
+	private void emit(final Node node, final boolean utf8) {
+		if (node.kind == Node.Kind.CHAR) {
+			emit(Char.khar(node.value), utf8);
+		} else if (node.kind == Node.Kind.KLASS) {
+			emit(Char.klass(node.ranges), utf8);
+		} else if (node.kind == Node.Kind.NEGATIVE_KLASS) {
+			emit(Char.negativeKlass(node.ranges), utf8);
+		} else if (node.kind == Node.Kind.DOT) {
+			emit(Char.DOT, utf8);
+		} else if (node.kind == Node.Kind.ASSERTION) {
+			add(ASSERT, -1, -1, Char.assertion(node.value));
+		} else if (node.kind == Node.Kind.CONCAT) {
+			emit(node.left, utf8);
+			emit(node.right, utf8);
+		} else if (node.kind == Node.Kind.UNION) {
+			// SPLIT L1, L2; L1: left; JMP L3; L2: right; L3:
+			final int split = add(SPLIT, -1, -1, null);
+			targets[split] = size;
+			emit(node.left, utf8);
+			final int jmp = add(JMP, -1, -1, null);
+			alternates[split] = size;
+			emit(node.right, utf8);
+			targets[jmp] = size;
+		} else if (node.kind == Node.Kind.STAR) {
+			// L1: SPLIT L2, L3; L2: left; JMP L1; L3:
+			final int split = add(SPLIT, -1, -1, null);
+			targets[split] = size;
+			emit(node.left, utf8);
+			add(JMP, split, -1, null);
+			alternates[split] = size;
+		} else if (node.kind == Node.Kind.REPEAT) {
+			emitRepeat(node, utf8);
+		} else if (node.kind == Node.Kind.GROUP) {
+			add(SAVE, node.group * 2, -1, null);
+			emit(node.left, utf8);
+			add(SAVE, node.group * 2 + 1, -1, null);
+		} else {
+			throw new RuntimeException("Invalid node found.");
+		}
+	}
+	private void emitRepeat(final Node node, final boolean utf8) {
+		for (int i = 1; i < node.min; i ++) {
+			emit(node.left, utf8);
+		}
+		if (node.max == -1) {
+			// L1: left; SPLIT L1, L2; L2:
+			final int loop = size;
+			emit(node.left, utf8);
+			add(SPLIT, loop, size + 1, null);
+			return;
+		}
+		if (node.min > 0) {
+			emit(node.left, utf8);
+		}
+		// 省略可能な繰り返しは x(x(x)?)? の形に展開し、いずれの分岐も繰り返しの直後に抜ける
+		final int[] splits = new int[node.max - node.min];
+		for (int i = 0; i < splits.length; i ++) {
+			splits[i] = add(SPLIT, size + 1, -1, null);
+			emit(node.left, utf8);
+		}
+		for (final int split : splits) {
+			alternates[split] = size;
+		}
+	}
+	private void emit(final Char by, final boolean utf8) {
+		if (!utf8) {
+			add(CHAR, -1, -1, by);
+			return;
+		}
+		// 文字の集合をUTF-8で符号化したバイト列の区間の列の選択に変換する
+		final int[] ranges = by.ranges();
+		int[] jmps = new int[ranges.length * 4];
+		int count = 0;
+		int lastSplit = -1;
+		for (int i = 0; i < ranges.length; i += 2) {
+			for (final int[] sequence : Utf8.sequences(ranges[i], ranges[i + 1])) {
+				if (lastSplit >= 0) {
+					alternates[lastSplit] = size;
+				}
+				lastSplit = add(SPLIT, size + 1, -1, null);
+				for (int j = 0; j < sequence.length; j += 2) {
+					add(CHAR, -1, -1, Utf8.byteRange(sequence[j], sequence[j + 1]));
+				}
+				if (count == jmps.length) {
+					jmps = Arrays.copyOf(jmps, count * 2);
+				}
+				jmps[count ++] = add(JMP, -1, -1, null);
+			}
+		}
+		// 最後の選択肢の後には適合しない命令を置く
+		if (lastSplit >= 0) {
+			alternates[lastSplit] = size;
+		}
+		add(CHAR, -1, -1, Char.klass(new int[0]));
+		for (int i = 0; i < count; i ++) {
+			targets[jmps[i]] = size;
+		}
+	}
+}
@@ -1,86 +1,484 @@
 package com.m12i.regex;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.MatchResult;
 
 /**
  * 正規表現オブジェクト.
+ * このオブジェクトはスレッドセーフであり、複数のスレッドで共有することができます。
+ * ただし{@link Matcher}はスレッドセーフではないため、スレッドごとに生成して使用してください。
  */
 public final class Regex {
+	/**
+	 * パターンマッチの結果.
+	 * {@link Matcher#toMatchResult()}や{@link Regex#findAll(CharSequence)}により返されます。
+	 * このオブジェクトはイミュータブルですが、入力文字シーケンスはコピーせずに参照します。
+	 */
+	private static final class Match implements MatchResult {
+		private final CharSequence input;
+		// グループ番号 g の開始位置を 2 * g に、終了位置を 2 * g + 1 に格納（グループ0は適合した部分文字列全体）
+		private final int[] slots;
+		private Match(final CharSequence input, final int[] slots) {
+			this.input = input;
+			this.slots = slots;
+		}
+		@Override
+		public int start(int group) {
+			return slots[slot(group)];
+		}
+		@Override
+		public int start() {
+			return slots[0];
+		}
+		@Override
+		public int groupCount() {
+			return slots.length / 2 - 1;
+		}
+		@Override
+		public String group(int group) {
+			final int s = slot(group);
+			if (slots[0] < 0) throw new IllegalStateException();
+			return slots[s] < 0 ? null : new Slice(input, slots[s], slots[s + 1]).toString();
+		}
+		@Override
+		public String group() {
+			return group(0);
+		}
+		@Override
+		public int end(int group) {
+			return slots[slot(group) + 1];
+		}
+		@Override
+		public int end() {
+			return slots[1];
+		}
+		private int slot(final int group) {
+			if (group < 0 || group > groupCount()) {
+				throw new IndexOutOfBoundsException("No group " + group + ".");
+			}
+			return group * 2;
+		}
+	}
+	
 	/**
 	 * パターンマッチの実行と結果の取得に利用されるオブジェクト.
-	 * グルーピングには非対応です。
-	 * {@link Regex#matcher(String)}により初期化されます。
+	 * {@link Regex#matcher(CharSequence)}などにより初期化されます。
+	 * <p>括弧で囲まれたグループには開き括弧が現れた順に1からはじまる番号が付与されます。
+	 * 各グループの位置は{@link #start(int)}などがはじめて呼び出された時点で、
+	 * DFAが求めた適合範囲についてだけ{@link PikeVM}を1回走らせることで求められます。
+	 * 適合する経路が複数ある場合、選択では左側が、繰り返しではより多く繰り返すほうが優先され、
+	 * 繰り返しの内側のグループには最後の繰り返しで適合した位置が記録されます。</p>
+	 * <p>入力文字シーケンスはコピーされずに参照されます。
+	 * パターンマッチの対象は{@link #region(int, int)}で設定された範囲（リージョン）に限られ、
+	 * 各メソッドが返す位置はいずれも入力文字シーケンスの先頭を起点とするインデックスです。</p>
 	 */
 	public static final class Matcher implements MatchResult {
+		private int lastStart = -1;
 		private int lastIndex = -1;
+		// 次回の find() で探索を開始する位置
+		private int nextFrom = 0;
+		private int regionStart;
+		private int regionEnd;
 		private final Regex re;
-		private final String input;
-		private Matcher(final Regex re, final String input) {
+		private final CharSequence input;
+		// 辞書照合オートマトンを使用する場合はnull
+		private final DFA dfa;
+		private final DFA searchDfa;
+		// 適合の終了位置と開始位置を求めるDFA（NFAシミュレーションを行う場合はnull）
+		private final DFA leftmostDfa;
+		private final DFA reverseDfa;
+		private final Literals literals;
+		// DFAに代わって使用する辞書照合オートマトン（使用しない場合はnull）
+		private final AhoCorasick dictionary;
+		// パターンマッチのたびに初期状態に戻して使いまわす評価オブジェクト（はじめて使用する時点で初期化）
+		private DFA.Runtime runtime;
+		private DFA.Runtime searchRuntime;
+		private DFA.Runtime leftmostRuntime;
+		private DFA.Runtime reverseRuntime;
+		// 適合の終了位置を求める走査の記録（はじめて使用する時点で初期化、リセットのたびに破棄）
+		private DFA.Trail trail;
+		// バイト単位のパターンマッチを行う場合はtrue
+		private final boolean bytes;
+		// グループの位置を求める評価オブジェクト（はじめて使用する時点で初期化）
+		private PikeVM.Runtime pikeRuntime;
+		// 直近のパターンマッチで適合したグループの位置（未計算の場合はnull）
+		private int[] slots;
+		private Matcher(final Regex re, final CharSequence input, final DFA[] dfas,
+				final Literals literals, final AhoCorasick dictionary, final boolean bytes) {
 			this.input = input;
+			this.bytes = bytes;
 			this.re = re;
+			this.dfa = dfas[0];
+			this.searchDfa = dfas[1];
+			this.leftmostDfa = dfas[2];
+			this.reverseDfa = dfas[3];
+			this.literals = literals;
+			this.dictionary = dictionary;
+			this.regionStart = 0;
+			this.regionEnd = input.length();
 		}
 		@Override
 		public int start(int group) {
-			return group == 0 ? start() : -1;
+			return group == 0 ? start() : slots(group)[group * 2];
 		}
 		@Override
 		public int start() {
-			return 0;
+			return lastStart;
 		}
 		@Override
 		public int groupCount() {
-			return 0;
+			return re.groupCount;
 		}
 		@Override
 		public String group(int group) {
-			return group == 0 ? group() : null;
+			if (group == 0) {
+				return group();
+			}
+			final int[] slots = slots(group);
+			if (lastIndex < 0) throw new IllegalStateException();
+			final int s = slots[group * 2];
+			return s < 0 ? null : new Slice(input, s, slots[group * 2 + 1]).toString();
 		}
 		@Override
 		public String group() {
+			return groupSequence().toString();
+		}
+		/**
+		 * 適合した部分文字列を入力文字シーケンスのビューとして返す.
+		 * {@link #group()}と異なり部分文字列のコピーは行われません。
+		 * @return 部分文字列のビュー
+		 */
+		public CharSequence groupSequence() {
 			if (lastIndex < 0) throw new IllegalStateException();
-			return input.substring(0, lastIndex);
+			return new Slice(input, lastStart, lastIndex);
 		}
 		@Override
 		public int end(int group) {
-			return lastIndex;
+			return group == 0 ? end() : slots(group)[group * 2 + 1];
 		}
 		@Override
 		public int end() {
 			return lastIndex;
 		}
+		/**
+		 * パターンマッチの対象とする範囲（リージョン）を設定する.
+		 * マッチャーの状態はリセットされます。
+		 * @param start 開始位置
+		 * @param end 終了位置（この位置の文字は含まない）
+		 * @return このマッチャー
+		 * @throws IndexOutOfBoundsException 範囲が入力文字シーケンスの範囲外の場合
+		 */
+		public Matcher region(final int start, final int end) {
+			if (start < 0 || end > input.length() || start > end) {
+				throw new IndexOutOfBoundsException("Illegal region.");
+			}
+			reset();
+			regionStart = start;
+			regionEnd = end;
+			nextFrom = start;
+			return this;
+		}
+		/**
+		 * パターンマッチの対象とする範囲（リージョン）の開始位置を返す.
+		 * @return 開始位置
+		 */
+		public int regionStart() {
+			return regionStart;
+		}
+		/**
+		 * パターンマッチの対象とする範囲（リージョン）の終了位置を返す.
+		 * @return 終了位置
+		 */
+		public int regionEnd() {
+			return regionEnd;
+		}
 		/**
 		 * 完全一致型のパターンマッチを試みる.
 		 * @return パターンマッチの結果
 		 */
 		public boolean matches() {
-			if (re.dfa.initializeRuntime().doesAccept(input)) {
-				lastIndex = input.length();
+			slots = null;
+			if (literals.admits(input, regionStart, regionEnd) && (dictionary != null
+					? dictionary.matches(input, regionStart, regionEnd)
+					: runtime().doesAccept(input, regionStart, regionEnd))) {
+				lastStart = regionStart;
+				lastIndex = regionEnd;
+				nextFrom = following(lastStart, lastIndex);
 				return true;
 			} else {
+				lastStart = -1;
 				lastIndex = -1;
 				return false;
 			}
 		}
 		/**
 		 * 前方一致型のパターンマッチを試みる.
+		 * 適合する部分文字列が複数ある場合、{@link Options#longestMatch}が{@code true}であればもっとも長いものを、
+		 * {@code false}であればもっとも短いものを選択します。
 		 * @return パターンマッチの結果
 		 */
 		public boolean lookingAt() {
-			lastIndex = re.dfa.initializeRuntime().doesAcceptPrefix(input);
-			return lastIndex > -1;
+			final boolean longest = re.options.longestMatch;
+			slots = null;
+			lastIndex = !literals.admitsPrefix(input, regionStart, regionEnd) ? -1
+					: dictionary != null ? dictionary.matchPrefix(input, regionStart, regionEnd, longest)
+					: runtime().doesAcceptPrefix(input, regionStart, regionEnd, longest);
+			if (lastIndex < 0) {
+				lastStart = -1;
+				return false;
+			}
+			lastStart = regionStart;
+			nextFrom = following(lastStart, lastIndex);
+			return true;
+		}
+		/**
+		 * 部分一致型のパターンマッチを試みる.
+		 * 前回のパターンマッチ（{@link #matches()}と{@link #lookingAt()}も含む）で適合した部分文字列の直後から探索を開始します
+		 * （前回適合した部分文字列が空文字列だった場合はその1文字後から）。
+		 * 適合する部分文字列が複数ある場合はもっとも左側からはじまるもののうちもっとも長いものを選択します。
+		 * バイト単位のマッチャーでは文字の途中（UTF-8の後続バイトの位置）で空文字列に適合することはありません。
+		 * <p>探索はスレッドの開始位置の順序を区別するDFAによる1回の前方走査で適合する部分文字列の終了位置を求め、
+		 * パターンを逆向きにしたDFAでその位置から後方に走査して開始位置を求めることで行われます。
+		 * 1回の呼び出しで評価される文字の数は、前方走査ではその時点で適合する可能性が残っている部分文字列がなくなる位置まで、
+		 * 後方走査では適合した部分文字列の長さまでです。
+		 * 前方走査は適合した部分文字列の終了位置を超えて入力文字列の末尾近くまで進むことがあるため
+		 * （たとえば{@code x+y|x}で{@code y}を含まない入力文字列を探索する場合）、
+		 * 前方走査が一定の間隔の位置で到達した状態のうちそれ以降に受理状態とならなかったものをマッチャーに記録しておき、
+		 * 後続の呼び出しの前方走査が同じ位置で同じ状態に到達した時点で走査を打ち切ります（{@link DFA.Trail}）。
+		 * これにより連続して呼び出した場合も評価される文字の数の合計は入力文字列の長さに比例します。
+		 * ただし{@link Options#nfaSimulation}が{@code true}の場合はこの記録が行われないため、
+		 * 連続して呼び出した場合の評価される文字の数の合計は最悪の場合に入力文字列の長さの2乗に比例します。
+		 * パターンが必須リテラルをもつ場合、DFAによる評価に先立ってそれを入力文字列のなかから探索し（{@link Literals}）、
+		 * 適合する部分文字列が開始しうる位置までの評価を省略します。
+		 * パターンが多数のリテラルの選択だけで構成される場合はDFAに代わって辞書照合オートマトン（{@link AhoCorasick}）を使用します。</p>
+		 * @return パターンマッチの結果
+		 */
+		public boolean find() {
+			slots = null;
+			if (nextFrom > regionEnd) {
+				lastStart = -1;
+				lastIndex = -1;
+				return false;
+			}
+			return search(nextFrom);
+		}
+		/**
+		 * 指定された位置から部分一致型のパターンマッチを試みる.
+		 * マッチャーの状態はリセットされ、リージョンは入力文字シーケンス全体に戻されます。
+		 * @param from 探索を開始する位置
+		 * @return パターンマッチの結果
+		 * @throws IndexOutOfBoundsException 位置が入力文字シーケンスの範囲外の場合
+		 */
+		public boolean find(final int from) {
+			if (from < 0 || from > input.length()) {
+				throw new IndexOutOfBoundsException("Illegal start index.");
+			}
+			reset();
+			return search(from);
+		}
+		/**
+		 * マッチャーの状態をリセットする.
+		 * リージョンは入力文字シーケンス全体に戻されます。
+		 * @return このマッチャー
+		 */
+		public Matcher reset() {
+			slots = null;
+			lastStart = -1;
+			lastIndex = -1;
+			nextFrom = 0;
+			regionStart = 0;
+			regionEnd = input.length();
+			trail = null;
+			return this;
+		}
+		/**
+		 * 直近のパターンマッチの結果を返す.
+		 * 戻り値はこのマッチャーのその後のパターンマッチの影響を受けません。
+		 * ただし入力文字シーケンスはコピーされないため、その内容が変更された場合は戻り値にも影響します。
+		 * @return パターンマッチの結果
+		 */
+		public MatchResult toMatchResult() {
+			if (re.groupCount == 0 || lastIndex < 0) {
+				final int[] result = new int[re.groupCount * 2 + 2];
+				Arrays.fill(result, -1);
+				result[0] = lastStart;
+				result[1] = lastIndex;
+				return new Match(input, result);
+			}
+			return new Match(input, slots(0).clone());
+		}
+		/**
+		 * 直近のパターンマッチで適合したグループの位置を返す.
+		 * 未計算であればこの時点で{@link PikeVM}により求めます。
+		 * @param group 参照するグループ番号
+		 * @return グループ番号 g の開始位置を 2 * g に、終了位置を 2 * g + 1 に格納した配列
+		 * @throws IndexOutOfBoundsException グループ番号が範囲外の場合
+		 */
+		private int[] slots(final int group) {
+			if (group < 0 || group > re.groupCount) {
+				throw new IndexOutOfBoundsException("No group " + group + ".");
+			}
+			if (slots == null) {
+				if (lastIndex < 0) {
+					slots = new int[re.groupCount * 2 + 2];
+					Arrays.fill(slots, -1);
+				} else {
+					if (pikeRuntime == null) {
+						pikeRuntime = re.pikeVM(bytes).initializeRuntime();
+					}
+					slots = pikeRuntime.run(input, regionStart, regionEnd, lastStart, lastIndex);
+				}
+			}
+			return slots;
+		}
+		private DFA.Runtime runtime() {
+			if (runtime == null) {
+				runtime = dfa.initializeRuntime();
+				return runtime;
+			}
+			return runtime.reset();
+		}
+		private DFA.Runtime searchRuntime(final int before) {
+			if (searchRuntime == null) {
+				searchRuntime = searchDfa.initializeRuntime();
+			}
+			return searchRuntime.reset(before);
+		}
+		private DFA.Runtime leftmostRuntime(final int before) {
+			if (leftmostRuntime == null) {
+				leftmostRuntime = leftmostDfa.initializeRuntime();
+			}
+			return leftmostRuntime.reset(before);
+		}
+		private DFA.Runtime reverseRuntime(final int before) {
+			if (reverseRuntime == null) {
+				reverseRuntime = reverseDfa.initializeRuntime();
+			}
+			return reverseRuntime.reset(before);
+		}
+		/**
+		 * 探索を開始する位置からパターンに適合するもっとも左側の部分文字列のうちもっとも長いものの位置を求める.
+		 * 開始位置の順序を区別するDFAで前方に走査して終了位置を求め、
+		 * パターンを逆向きにしたDFAでその位置から後方に走査して開始位置を求めます。
+		 * いずれの走査もDFAによる1回ずつの走査であり、位置ごとにパターンマッチをやりなおすことはありません。
+		 * ただし前方走査は終了位置を超えて適合する可能性が残っている間は進むため、1回の走査だけでは連続して呼び出した場合の
+		 * 評価の回数の合計は抑えられません。そこで前方走査には以前の呼び出しの記録（{@link DFA.Trail}）を使用し、
+		 * それ以降に受理状態とならないことが判明している位置と状態の組に到達した時点で打ち切ります。
+		 * @param from 探索を開始する位置
+		 * @return 開始位置と終了位置からなる配列、適合する部分文字列がない場合は{@code null}
+		 */
+		private int[] locate(final int from) {
+			// 表明の評価のため探索を開始する位置の直前の文字の種別を引き継ぐ
+			final int before = Look.before(input, from, regionStart);
+			if (leftmostDfa == null) {
+				final int firstEnd = searchRuntime(before).findAccept(input, from, regionEnd);
+				return firstEnd < 0 ? null : dfa.locate(input, from, before, regionEnd, firstEnd);
+			}
+			if (trail == null) {
+				trail = new DFA.Trail();
+			}
+			final int end = leftmostRuntime(before).doesAcceptPrefix(input, from, regionEnd, trail);
+			if (end < 0) {
+				return null;
+			}
+			// 逆向きのDFAでは終了位置の直後の文字が直前の文字にあたる
+			final int start = reverseRuntime(Look.after(input, end, regionEnd))
+					.doesAcceptSuffix(input, from, end, regionStart);
+			return new int[]{start, end};
+		}
+		/**
+		 * 適合した部分文字列の直後の探索を開始する位置を求める.
+		 * 空文字列に適合した場合はその1文字後とし、バイト単位のマッチャーではさらにUTF-8の後続バイトを読み飛ばして文字の境界に合わせます。
+		 * @param start 開始位置
+		 * @param end 終了位置
+		 * @return 探索を開始する位置
+		 */
+		private int following(final int start, final int end) {
+			if (start != end) {
+				return end;
+			}
+			int next = end + 1;
+			while (bytes && next < regionEnd && Utf8.isContinuation(input.charAt(next))) {
+				next ++;
+			}
+			return next;
+		}
+		private boolean search(final int from) {
+			slots = null;
+			int[] found;
+			int at = from;
+			while (true) {
+				final int candidate = literals.candidate(input, at, regionEnd);
+				if (candidate < 0) {
+					found = null;
+				} else if (dictionary != null) {
+					found = dictionary.locate(input, candidate, regionEnd);
+				} else {
+					found = locate(candidate);
+				}
+				// バイト単位のマッチャーでは文字の途中（UTF-8の後続バイトの位置）で空文字列に適合しても採用せず、
+				// 次の文字の境界から探索をやりなおす（空でない部分文字列は常に文字の境界からはじまる）
+				if (found == null || !bytes || found[0] != found[1]
+						|| found[0] == regionEnd || !Utf8.isContinuation(input.charAt(found[0]))) {
+					break;
+				}
+				at = following(found[0], found[1]);
+				if (at > regionEnd) {
+					found = null;
+					break;
+				}
+			}
+			if (found == null) {
+				lastStart = -1;
+				lastIndex = -1;
+				nextFrom = regionEnd + 1;
+				return false;
+			}
+			lastStart = found[0];
+			lastIndex = found[1];
+			nextFrom = following(lastStart, lastIndex);
+			return true;
 		}
 	}
 	
+	/**
+	 * ファイルの走査（{@link #scan(Path, LineHandler)}）でメモリ・マップを行うウィンドウの大きさ（バイト）.
+	 */
+	static final int SCAN_WINDOW = 1 << 28;
+	/**
+	 * ストリーム処理（{@link #scan(Reader, MatchHandler)}など）で1度に読み取る入力の長さ.
+	 */
+	private static final int STREAM_CHUNK = 8192;
+	
 	/**
 	 * Regexキャッシュ.
 	 * 一連のキャッシュのなかでもっとも最前面にあるもので、
 	 * 使用頻度はもっとも低いはずのものです。
 	 * DFAエンジンの弱点であるコンパイル時間の圧縮のため
-	 * 入力パターンとコンパイル済みDFAを関連づけて保管します。
+	 * 入力パターンおよびオプションとコンパイル済みDFAを関連づけて保管します。
+	 */
+	private static final RegexCache regexCache = new RegexCache(RegexCache.DEFAULT_MAXIMUM_WEIGHT);
+	
+	/**
+	 * {@link #compile(String, Options)}が使用するキャッシュを返す.
+	 * 統計情報の参照やキャッシュの破棄に使用します。
+	 * @return キャッシュ
 	 */
-	private static final Map<String,Regex> regexCache = new HashMap<String, Regex>();
+	public static RegexCache cache() {
+		return regexCache;
+	}
 	
 	/**
 	 * 正規表現パターンをもとに正規表現オブジェクトを初期化して返す.
@@ -88,59 +486,629 @@ public final class Regex {
 	 * @return 正規表現オブジェクト
 	 */
 	public static Regex compile(final String pattern) {
-		final Regex cached = regexCache.get(pattern);
-		if (cached != null) {
-			return cached;
+		return compile(pattern, Options.DEFAULT);
+	}
+	/**
+	 * 正規表現パターンとオプションをもとに正規表現オブジェクトを初期化して返す.
+	 * @param pattern 正規表現パターン
+	 * @param options オプション
+	 * @return 正規表現オブジェクト
+	 * @throws IllegalArgumentException {@link Options#eagerDfa}が{@code true}で、
+	 * 	DFAの状態の数が{@link Options#stateLimit}を超えた場合や、
+	 * 	辞書照合オートマトン（{@link AhoCorasick}）を使用しないパターンでNFAの状態の数の見積もりが{@link Options#sizeLimit}を超えた場合
+	 * @see Options#useCache
+	 */
+	public static Regex compile(final String pattern, final Options options) {
+		if (options.useCache) {
+			return regexCache.compile(pattern, options);
 		} else {
-			final Regex re = new Regex(pattern);
-			regexCache.put(pattern, re);
-			return re;
+			return compileWithoutCache(pattern, options);
 		}
 	}
+	/**
+	 * キャッシュを使用せずに正規表現オブジェクトを初期化して返す.
+	 * @param pattern 正規表現パターン
+	 * @param options オプション
+	 * @return 正規表現オブジェクト
+	 */
+	static Regex compileWithoutCache(final String pattern, final Options options) {
+		return new Regex(pattern, options);
+	}
 	
 	/**
-	 * 正規表現パターンを解析して得られたDFA.
+	 * 正規表現パターンを解析して得られたDFAと、
+	 * 正規表現パターンの先頭に暗黙の{@code .*}を加えたものと同じ意味をもつ部分一致型のパターンマッチに使用する非アンカー型のDFA、
+	 * そして適合の終了位置と開始位置を求めるためのDFAの組（未構築の場合は{@code null}）.
+	 * 辞書照合オートマトンを使用する場合はストリーム処理などではじめて必要になった時点で構築されます。
+	 * @see #charDfas()
+	 */
+	private volatile DFA[] charDfas;
+	/**
+	 * バイト単位のパターンマッチに使用するDFAの組（未構築の場合は{@code null}）.
+	 * @see #byteDfas()
+	 */
+	private volatile DFA[] byteDfas;
+	/**
+	 * グループの位置を求めるための命令列の組（文字単位とバイト単位、未構築の要素は{@code null}）.
+	 * @see #pikeVM(boolean)
+	 */
+	private final PikeVM[] pikeVMs = new PikeVM[2];
+	/**
+	 * 並列に評価する際に使用するすべての状態遷移が計算済みのDFAの組（文字単位とバイト単位、未構築の要素は{@code null}）.
+	 * 状態の数が上限を超えるため構築できなかった場合は遅延構築されるDFAが格納されます。
+	 * @see #parallelDfa(boolean)
+	 */
+	private final DFA[] parallelDfas = new DFA[2];
+	/**
+	 * 正規表現パターンを解析して得られた構文木.
+	 */
+	private final Node node;
+	/**
+	 * 正規表現パターンに含まれるグループの数.
+	 */
+	private final int groupCount;
+	/**
+	 * 正規表現パターンの必須リテラル.
+	 */
+	private final Literals literals;
+	/**
+	 * 正規表現パターンの必須リテラルをUTF-8で符号化したもの.
+	 * バイト単位のパターンマッチで使用します。
+	 */
+	private final Literals byteLiterals;
+	/**
+	 * パターンが多数のリテラルの選択だけで構成される場合に使用する辞書照合オートマトン（使用しない場合は{@code null}）.
+	 */
+	private final AhoCorasick dictionary;
+	/**
+	 * 辞書照合オートマトンのリテラルをUTF-8で符号化したもの（使用しない場合は{@code null}）.
+	 * バイト単位のパターンマッチで使用します。
 	 */
-	private final DFA dfa;
+	private final AhoCorasick byteDictionary;
 	/**
 	 * このオブジェクトのもととなった正規表現パターン.
 	 */
 	public final String pattern;
+	/**
+	 * このオブジェクトのコンパイルに使用されたオプション.
+	 */
+	public final Options options;
 	
-	private Regex(final String pattern){
+	private Regex(final String pattern, final Options options){
 		this.pattern = pattern;
-		final Node node = new Parser(new Lexer(pattern)).parse();
+		this.options = options;
+		final Parser parser = new Parser(new Lexer(pattern), options.multiline);
+		final Node parsed = parser.parse();
+		// 大文字・小文字を区別しない場合は文字と文字クラスをあらかじめ変換しておく
+		this.node = options.caseInsensitive ? parsed.caseFold(options.unicodeCase) : parsed;
+		this.groupCount = parser.groupCount();
 		Functions.dump(node);
-		final NFA.Fragment frag = node.assemble(IDFactory.create());
+		this.literals = Literals.of(node);
+		this.byteLiterals = literals.utf8();
+		this.dictionary = AhoCorasick.of(node);
+		this.byteDictionary = dictionary == null ? null : dictionary.utf8();
+		// 辞書照合オートマトンを使用する場合はDFAの構築を必要になるまで先送りする
+		// ＊NFAを構築しないのでNFAの状態の数の見積もりも検証しない（辞書照合オートマトンの大きさはリテラルの長さの合計に比例する）
+		// ＊ただしすべての状態を導出するオプションが指定された場合は状態の数の検証のため直ちに構築する
+		if (dictionary == null || options.eagerDfa) {
+			this.charDfas = dfas(node, options, false);
+		}
+	}
+	/**
+	 * 構文木からパターンマッチに使用するDFAを構築する.
+	 * 返される配列の要素は順に、アンカー型のDFA、部分一致型のパターンマッチに使用する非アンカー型のDFA、
+	 * 適合の終了位置を求めるスレッドの開始位置の順序を区別するDFA（{@link NFA#transformLeftmost(int)}）、
+	 * 適合の開始位置を求めるパターンを逆向きにしたDFAです。
+	 * はじめの3つのDFAは同じNFAから導出されます。
+	 * NFAシミュレーションを行う場合、最後の2つは{@code null}となり適合の位置は{@link DFA#locate}により求められます。
+	 * @param node 構文木
+	 * @param options オプション
+	 * @param utf8 バイト単位のDFAを構築する場合は{@code true}
+	 * @return DFAの組
+	 * @throws IllegalArgumentException NFAの状態の数の見積もりが{@link Options#sizeLimit}を超えた場合
+	 */
+	private static DFA[] dfas(final Node node, final Options options, final boolean utf8) {
+		if (node.size(options.sizeLimit) > options.sizeLimit) {
+			throw new IllegalArgumentException("Pattern too large.");
+		}
+		final NFA.Fragment frag = node.assemble(IDFactory.create(), utf8);
 		final NFA nfa = frag.build();
 		Functions.dump(nfa);
-		this.dfa = nfa.transform();
+		if (options.nfaSimulation && !options.eagerDfa) {
+			return new DFA[]{nfa.simulate(false), nfa.simulate(true), null, null};
+		}
+		final NFA reverse = node.assemble(IDFactory.create(), utf8, true).build();
+		final DFA[] result = {
+				nfa.transform(options.cacheLimit),
+				nfa.transformUnanchored(options.cacheLimit),
+				nfa.transformLeftmost(options.cacheLimit),
+				reverse.transform(options.cacheLimit)};
+		if (options.eagerDfa) {
+			for (int i = 0; i < result.length; i ++) {
+				result[i] = result[i].determinize(options.stateLimit);
+			}
+		}
+		return result;
 	}
 	
 	/**
 	 * パターンマッチの実行と結果の取得に使用するマッチャーを生成する.
-	 * @param input 入力文字列（パターンマッチ対象）
+	 * 入力文字シーケンスはコピーされずに参照されます。
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @return マッチャー
+	 */
+	public Matcher matcher(final CharSequence input) {
+		final DFA[] dfas = dictionary == null ? charDfas() : new DFA[4];
+		return new Matcher(this, input, dfas, literals, dictionary, false);
+	}
+	/**
+	 * 文字配列の一部を入力としてパターンマッチの実行と結果の取得に使用するマッチャーを生成する.
+	 * 文字配列はコピーされずに参照されます。
+	 * マッチャーが返す位置は{@code offset}を起点とするインデックスです。
+	 * @param input 文字配列（パターンマッチ対象）
+	 * @param offset 開始位置
+	 * @param length 長さ
 	 * @return マッチャー
+	 * @throws IndexOutOfBoundsException 範囲が文字配列の範囲外の場合
 	 */
-	public Matcher matcher(final String input) {
-		return new Matcher(this, input);
+	public Matcher matcher(final char[] input, final int offset, final int length) {
+		return matcher(CharBuffer.wrap(input, offset, length).slice());
+	}
+	/**
+	 * UTF-8で符号化されたバイト列を入力としてパターンマッチの実行と結果の取得に使用するマッチャーを生成する.
+	 * バイト列は復号されずにバイト単位のDFAで直接評価されます。
+	 * マッチャーが返す位置はバイト単位のインデックスで、
+	 * {@link Matcher#group()}は適合したバイト列をUTF-8として復号した文字列を返します。
+	 * <p>バイト単位のDFAでは、ドットと否定文字クラスは基本多言語面（BMP）の外側の文字にも1文字として適合します。
+	 * 正規表現パターンにサロゲート・ペアとして含まれる文字は適合しません。
+	 * バイト単位のDFAははじめて使用される時点で構築されます。</p>
+	 * @param input バイト列（パターンマッチ対象）
+	 * @return マッチャー
+	 * @throws IllegalArgumentException {@link Options#eagerDfa}が{@code true}で、
+	 * 	DFAの状態の数が{@link Options#stateLimit}を超えた場合
+	 */
+	public Matcher matcher(final byte[] input) {
+		return matcher(ByteBuffer.wrap(input));
+	}
+	/**
+	 * UTF-8で符号化されたバイト列を入力としてパターンマッチの実行と結果の取得に使用するマッチャーを生成する.
+	 * バッファの位置（position）からリミット（limit）までのバイト列を対象とし、
+	 * マッチャーが返す位置はバッファの位置を起点とするバイト単位のインデックスです。
+	 * バッファはヒープ・バッファとダイレクト・バッファのいずれでもかまいません。
+	 * バッファはコピーされず、その位置やリミットも変更されません。
+	 * @param input バッファ（パターンマッチ対象）
+	 * @return マッチャー
+	 * @throws IllegalArgumentException {@link Options#eagerDfa}が{@code true}で、
+	 * 	DFAの状態の数が{@link Options#stateLimit}を超えた場合
+	 * @see #matcher(byte[])
+	 */
+	public Matcher matcher(final ByteBuffer input) {
+		final DFA[] dfas = byteDictionary == null ? byteDfas() : new DFA[4];
+		return new Matcher(this, new ByteSequence(input), dfas, byteLiterals, byteDictionary, true);
+	}
+	/**
+	 * 文字単位のDFAを返す.
+	 * 未構築であればこの時点で構築します。
+	 * @return パターンマッチに使用するDFAの組（{@link #dfas(Node, Options, boolean)}）
+	 */
+	private DFA[] charDfas() {
+		DFA[] result = charDfas;
+		if (result == null) {
+			synchronized (this) {
+				result = charDfas;
+				if (result == null) {
+					result = dfas(node, options, false);
+					charDfas = result;
+				}
+			}
+		}
+		return result;
+	}
+	/**
+	 * バイト単位のDFAを返す.
+	 * 未構築であればこの時点で構築します。
+	 * @return パターンマッチに使用するDFAの組（{@link #dfas(Node, Options, boolean)}）
+	 */
+	private DFA[] byteDfas() {
+		DFA[] result = byteDfas;
+		if (result == null) {
+			synchronized (this) {
+				result = byteDfas;
+				if (result == null) {
+					result = dfas(node, options, true);
+					byteDfas = result;
+				}
+			}
+		}
+		return result;
+	}
+	/**
+	 * 並列の完全一致型のパターンマッチ（{@link #matches(CharSequence, ForkJoinPool)}など）に使用するDFAを返す.
+	 * 未構築であればこの時点でアンカー型のDFAのすべての状態を構築（{@link DFA#determinize(int)}）します。
+	 * 入力を分割した各区間の状態の写像を合成するには状態の全体が必要であるためです。
+	 * 状態の数が{@link Options#stateLimit}を超える場合は遅延構築されるDFAをそのまま返し、
+	 * その場合のパターンマッチは並列化されずに逐次評価となります。戻り値が{@code null}となることはありません。
+	 * @param utf8 バイト単位のパターンマッチに使用するDFAを返す場合は{@code true}
+	 * @return DFA
+	 */
+	private DFA parallelDfa(final boolean utf8) {
+		final DFA dfa = (utf8 ? byteDfas() : charDfas())[0];
+		synchronized (parallelDfas) {
+			final int i = utf8 ? 1 : 0;
+			if (parallelDfas[i] == null) {
+				try {
+					parallelDfas[i] = dfa.determinize(options.stateLimit);
+				} catch (final IllegalArgumentException e) {
+					// 状態の数が上限を超える場合は逐次評価とする
+					parallelDfas[i] = dfa;
+				}
+			}
+			return parallelDfas[i];
+		}
+	}
+	/**
+	 * グループの位置を求めるための{@link PikeVM}を返す.
+	 * 未構築であればこの時点で構築します。
+	 * @param utf8 バイト単位のパターンマッチに使用するものを返す場合は{@code true}
+	 * @return {@link PikeVM}オブジェクト
+	 */
+	private PikeVM pikeVM(final boolean utf8) {
+		synchronized (pikeVMs) {
+			final int i = utf8 ? 1 : 0;
+			if (pikeVMs[i] == null) {
+				pikeVMs[i] = PikeVM.of(node, groupCount, utf8);
+			}
+			return pikeVMs[i];
+		}
 	}
 	/**
 	 * 完全一致型のパターンマッチを試みる.
-	 * @param input 入力文字列（パターンマッチ対象）
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
 	 * @return 検証結果
 	 */
-	public boolean matches(final String input) {
+	public boolean matches(final CharSequence input) {
 		return matcher(input).matches();
 	}
 	/**
 	 * 前方一致型のパターンマッチを試みる.
-	 * @param input 入力文字列（パターンマッチ対象）
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @return 検証結果
+	 */
+	public boolean lookingAt(final CharSequence input) {
+		return matcher(input).lookingAt();
+	}
+	/**
+	 * 部分一致型のパターンマッチを試みる.
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @return 検証結果
+	 */
+	public boolean find(final CharSequence input) {
+		return matcher(input).find();
+	}
+	/**
+	 * 入力文字シーケンスを分割して並列に完全一致型のパターンマッチを試みる.
+	 * 非常に長い入力文字シーケンス（1GBの文書など）を複数のコアで評価するために使用します。
+	 * <p>はじめて呼び出した時点でDFAのすべての状態を導出して最小化し、
+	 * 入力文字シーケンスを分割した各範囲をすべての状態から評価して得られる状態の写像を順に合成して結果を求めます。
+	 * 最小化されたDFAの状態が少ないほど各範囲の評価は速やかに1つの経路に絞られ、処理時間はコアの数にほぼ反比例します。
+	 * 状態の数が{@link Options#stateLimit}を超える場合や入力文字シーケンスが短い場合は{@link #matches(CharSequence)}と同様に逐次評価となります。</p>
+	 * <p>入力文字シーケンスは複数のスレッドから同時に参照されるため、{@link String}のように読み取りがスレッドセーフなものである必要があります。</p>
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @param pool 評価を行うスレッド・プール
+	 * @return 検証結果
+	 * @throws IllegalArgumentException 辞書照合オートマトンを使用するパターンで、
+	 * 	この時点で構築するNFAの状態の数の見積もりが{@link Options#sizeLimit}を超えた場合
+	 */
+	public boolean matches(final CharSequence input, final ForkJoinPool pool) {
+		return parallelDfa(false).doesAccept(input, pool);
+	}
+	/**
+	 * UTF-8で符号化されたバイト列を分割して並列に完全一致型のパターンマッチを試みる.
+	 * バッファはコピーされず、その位置やリミットも変更されません。
+	 * @param input バッファ（パターンマッチ対象）
+	 * @param pool 評価を行うスレッド・プール
+	 * @return 検証結果
+	 * @throws IllegalArgumentException 辞書照合オートマトンを使用するパターンで、
+	 * 	この時点で構築するNFAの状態の数の見積もりが{@link Options#sizeLimit}を超えた場合
+	 * @see #matches(CharSequence, ForkJoinPool)
+	 * @see #matcher(ByteBuffer)
+	 */
+	public boolean matches(final ByteBuffer input, final ForkJoinPool pool) {
+		return parallelDfa(true).doesAccept(new ByteSequence(input), pool);
+	}
+	/**
+	 * UTF-8で符号化されたバイト列に対して完全一致型のパターンマッチを試みる.
+	 * @param input バイト列（パターンマッチ対象）
+	 * @return 検証結果
+	 * @see #matcher(byte[])
+	 */
+	public boolean matches(final byte[] input) {
+		return matcher(input).matches();
+	}
+	/**
+	 * UTF-8で符号化されたバイト列に対して完全一致型のパターンマッチを試みる.
+	 * @param input バッファ（パターンマッチ対象）
 	 * @return 検証結果
+	 * @see #matcher(ByteBuffer)
 	 */
-	public boolean lookingAt(final String input) {
+	public boolean matches(final ByteBuffer input) {
+		return matcher(input).matches();
+	}
+	/**
+	 * UTF-8で符号化されたバイト列に対して前方一致型のパターンマッチを試みる.
+	 * @param input バイト列（パターンマッチ対象）
+	 * @return 検証結果
+	 * @see #matcher(byte[])
+	 */
+	public boolean lookingAt(final byte[] input) {
 		return matcher(input).lookingAt();
 	}
+	/**
+	 * UTF-8で符号化されたバイト列に対して前方一致型のパターンマッチを試みる.
+	 * @param input バッファ（パターンマッチ対象）
+	 * @return 検証結果
+	 * @see #matcher(ByteBuffer)
+	 */
+	public boolean lookingAt(final ByteBuffer input) {
+		return matcher(input).lookingAt();
+	}
+	/**
+	 * UTF-8で符号化されたバイト列に対して部分一致型のパターンマッチを試みる.
+	 * @param input バイト列（パターンマッチ対象）
+	 * @return 検証結果
+	 * @see #matcher(byte[])
+	 */
+	public boolean find(final byte[] input) {
+		return matcher(input).find();
+	}
+	/**
+	 * UTF-8で符号化されたバイト列に対して部分一致型のパターンマッチを試みる.
+	 * @param input バッファ（パターンマッチ対象）
+	 * @return 検証結果
+	 * @see #matcher(ByteBuffer)
+	 */
+	public boolean find(final ByteBuffer input) {
+		return matcher(input).find();
+	}
+	/**
+	 * UTF-8で符号化されたテキスト・ファイルを走査してパターンに適合する部分文字列を含む行をコールバックに渡す.
+	 * ファイルは{@link FileChannel#map(FileChannel.MapMode, long, long)}によりメモリ・マップされ、
+	 * バイト単位のDFAで行ごとに評価されます（{@link #matcher(ByteBuffer)}）。
+	 * 行の内容がヒープにコピーされるのはコールバックが{@link Line#text()}を呼び出した場合だけです。
+	 * {@link Line#bytes()}はメモリ・マップされたウィンドウを参照するビューを返すため、
+	 * コールバックの呼び出しの間だけ使用でき、その後も内容を使用する場合はコピーしておく必要があります。
+	 * <p>マップは行の境界で区切られたウィンドウ（既定では{@value #SCAN_WINDOW}バイト）ごとに行われるため、
+	 * 2GBを超えるファイルも走査できます。
+	 * ウィンドウに収まらない長さの行があればウィンドウを拡張しますが、
+	 * 2GBを超える長さの行は複数の行に分割して評価されます。</p>
+	 * @param file ファイル
+	 * @param handler コールバック
+	 * @return コールバックに渡した行の数
+	 * @throws IOException ファイルの読み取りに失敗した場合
+	 */
+	public long scan(final Path file, final LineHandler handler) throws IOException {
+		return scan(file, handler, SCAN_WINDOW);
+	}
+	/**
+	 * ウィンドウの大きさを指定してファイルを走査する.
+	 * @param file ファイル
+	 * @param handler コールバック
+	 * @param window ウィンドウの大きさ（バイト）
+	 * @return コールバックに渡した行の数
+	 * @throws IOException ファイルの読み取りに失敗した場合
+	 * @see #scan(Path, LineHandler)
+	 */
+	long scan(final Path file, final LineHandler handler, final int window) throws IOException {
+		final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			final long size = channel.size();
+			long base = 0;
+			long number = 0;
+			long count = 0;
+			int mapSize = window;
+			while (base < size) {
+				final int length = (int) Math.min(size - base, mapSize);
+				final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+				// ファイルの末尾でなければ最後の改行文字の直後でウィンドウを区切る
+				int limit = length;
+				if (base + length < size) {
+					int last = length - 1;
+					while (last >= 0 && buffer.get(last) != '\n') {
+						last --;
+					}
+					if (last >= 0) {
+						limit = last + 1;
+					} else if (mapSize < Integer.MAX_VALUE) {
+						// 改行文字を含まない場合はウィンドウを拡張してマップしなおす
+						mapSize = (int) Math.min(Integer.MAX_VALUE, mapSize * 2L);
+						continue;
+					}
+				}
+				final Matcher m = matcher(buffer);
+				int start = 0;
+				while (start < limit) {
+					int end = start;
+					while (end < limit && buffer.get(end) != '\n') {
+						end ++;
+					}
+					number ++;
+					if (m.region(start, end).find()) {
+						count ++;
+						if (!handler.handle(new Line(buffer, base, number, start, end, m.start(), m.end()))) {
+							return count;
+						}
+					}
+					start = end + 1;
+				}
+				base += limit;
+				mapSize = window;
+			}
+			return count;
+		} finally {
+			channel.close();
+		}
+	}
+	/**
+	 * 分割して与えられる文字列に対して部分一致型のパターンマッチを行うマッチャーを生成する.
+	 * @param handler パターンに適合した部分文字列を受け取るコールバック
+	 * @return マッチャー
+	 * @throws IllegalArgumentException 辞書照合オートマトンを使用するパターンで、
+	 * 	この時点で構築するNFAの状態の数の見積もりが{@link Options#sizeLimit}を超えた場合
+	 */
+	public StreamMatcher streamMatcher(final MatchHandler handler) {
+		final DFA[] dfas = charDfas();
+		return new StreamMatcher(dfas[0], dfas[1], false, handler);
+	}
+	/**
+	 * 分割して与えられるUTF-8で符号化されたバイト列に対して部分一致型のパターンマッチを行うマッチャーを生成する.
+	 * @param handler パターンに適合した部分文字列を受け取るコールバック
+	 * @return マッチャー
+	 * @throws IllegalArgumentException {@link Options#eagerDfa}が{@code true}で、
+	 * 	DFAの状態の数が{@link Options#stateLimit}を超えた場合
+	 * @throws IllegalArgumentException 辞書照合オートマトンを使用するパターンで、
+	 * 	この時点で構築するNFAの状態の数の見積もりが{@link Options#sizeLimit}を超えた場合
+	 * @see #matcher(ByteBuffer)
+	 */
+	public StreamMatcher byteStreamMatcher(final MatchHandler handler) {
+		final DFA[] dfas = byteDfas();
+		return new StreamMatcher(dfas[0], dfas[1], true, handler);
+	}
+	/**
+	 * {@link Reader}から読み取った文字列に対して部分一致型のパターンマッチを行う.
+	 * 文字列は一定の長さごとに読み取られて{@link StreamMatcher}に与えられます。
+	 * {@link Reader}はクローズされません。
+	 * @param reader 入力
+	 * @param handler パターンに適合した部分文字列を受け取るコールバック
+	 * @return コールバックに渡した部分文字列の数
+	 * @throws IOException 入力の読み取りに失敗した場合
+	 */
+	public long scan(final Reader reader, final MatchHandler handler) throws IOException {
+		final StreamMatcher m = streamMatcher(handler);
+		final char[] chunk = new char[STREAM_CHUNK];
+		int n;
+		while (!m.isStopped() && (n = reader.read(chunk)) != -1) {
+			m.feed(chunk, 0, n);
+		}
+		m.finish();
+		return m.matchCount();
+	}
+	/**
+	 * {@link InputStream}から読み取ったUTF-8で符号化されたバイト列に対して部分一致型のパターンマッチを行う.
+	 * バイト列は一定の長さごとに読み取られて{@link StreamMatcher}に与えられます。
+	 * {@link InputStream}はクローズされません。
+	 * @param in 入力
+	 * @param handler パターンに適合した部分文字列を受け取るコールバック
+	 * @return コールバックに渡した部分文字列の数
+	 * @throws IOException 入力の読み取りに失敗した場合
+	 */
+	public long scan(final InputStream in, final MatchHandler handler) throws IOException {
+		final StreamMatcher m = byteStreamMatcher(handler);
+		final byte[] chunk = new byte[STREAM_CHUNK];
+		int n;
+		while (!m.isStopped() && (n = in.read(chunk)) != -1) {
+			m.feed(chunk, 0, n);
+		}
+		m.finish();
+		return m.matchCount();
+	}
+	/**
+	 * 入力文字列のなかでパターンに適合する部分文字列を重複なくすべて列挙する.
+	 * 列挙は{@link Matcher#find()}を繰り返し呼び出すことで遅延的に行われます。
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @return パターンマッチの結果の列挙
+	 */
+	public Iterable<MatchResult> findAll(final CharSequence input) {
+		return new Iterable<MatchResult>() {
+			@Override
+			public Iterator<MatchResult> iterator() {
+				final Matcher m = matcher(input);
+				return new Iterator<MatchResult>() {
+					private MatchResult next = m.find() ? m.toMatchResult() : null;
+					@Override
+					public boolean hasNext() {
+						return next != null;
+					}
+					@Override
+					public MatchResult next() {
+						if (next == null) {
+							throw new NoSuchElementException();
+						}
+						final MatchResult result = next;
+						next = m.find() ? m.toMatchResult() : null;
+						return result;
+					}
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+	/**
+	 * このオブジェクトが確保しているメモリの量を概算して返す.
+	 * 遅延構築されるDFAの状態はパターンマッチの過程で増減するため、呼び出しの都度値が変わる場合があります。
+	 * @return メモリの量（バイト）
+	 */
+	public long footprint() {
+		final long dictionaries = dictionary == null ? 0 : dictionary.footprint() + byteDictionary.footprint();
+		long result = dictionaries;
+		synchronized (parallelDfas) {
+			for (int i = 0; i < parallelDfas.length; i ++) {
+				// 遅延構築されるDFAやはじめからすべての状態遷移が計算済みのDFAは下で集計する
+				final DFA dfa = parallelDfas[i];
+				if (dfa != null && dfa != (i == 0 ? charDfas : byteDfas)[0]) {
+					result += dfa.footprint();
+				}
+			}
+		}
+		for (final DFA[] dfas : new DFA[][]{charDfas, byteDfas}) {
+			if (dfas != null) {
+				for (final DFA dfa : dfas) {
+					if (dfa != null) {
+						result += dfa.footprint();
+					}
+				}
+			}
+		}
+		return result;
+	}
+	/**
+	 * 遅延構築されるDFAの状態がキャッシュ上限に達して破棄された回数を返す.
+	 * @return 回数
+	 * @see Options#cacheLimit
+	 */
+	public long cacheClearCount() {
+		long result = 0;
+		for (final DFA[] dfas : new DFA[][]{charDfas, byteDfas}) {
+			if (dfas != null) {
+				for (final DFA dfa : dfas) {
+					if (dfa != null) {
+						result += dfa.clearCount();
+					}
+				}
+			}
+		}
+		return result;
+	}
+	/**
+	 * キャッシュの破棄が頻発したためにパターンマッチがNFAシミュレーションに切り替えられた回数を返す.
+	 * @return 回数
+	 * @see Options#cacheLimit
+	 */
+	public long fallbackCount() {
+		long result = 0;
+		for (final DFA[] dfas : new DFA[][]{charDfas, byteDfas}) {
+			if (dfas != null) {
+				for (final DFA dfa : dfas) {
+					if (dfa != null) {
+						result += dfa.fallbackCount();
+					}
+				}
+			}
+		}
+		return result;
+	}
 	/**
 	 * オブジェクトの内容を文字列表現として整形する.
 	 * @return 整形結果
@@ -150,7 +1118,7 @@ public final class Regex {
 		buff.append("pattern: ")
 		.append(Functions.stringLiteral(pattern))
 		.append(System.lineSeparator())
-		.append(this.dfa.inspect());
+		.append(charDfas()[0].inspect());
 		return buff.toString();
 	}
 }
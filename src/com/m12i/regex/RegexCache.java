@@ -0,0 +1,247 @@
+package com.m12i.regex;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * コンパイル済み正規表現オブジェクトのキャッシュ.
+ * 正規表現パターンとオプションをキーにして{@link Regex}を保管します。
+ * <p>保管される{@link Regex}の重み（{@link Regex#footprint()}）の合計には上限があり、
+ * 上限を超えた場合はもっとも長いあいだ使用されていないものから順に破棄されます（LRU）。
+ * {@link Regex}が使用するメモリの量は遅延構築されるDFAの状態が導出されるにつれて増えるため、
+ * 重みはキャッシュから返すたびにそのエントリについて、新たに登録するたびにすべてのエントリについて量りなおされます。</p>
+ * <p>このオブジェクトはスレッドセーフです。
+ * 複数のスレッドが同じパターンを同時にコンパイルしようとした場合、コンパイルは1度だけ行われ、
+ * ほかのスレッドはその結果を待って同じ{@link Regex}を受け取ります。
+ * コンパイルそのものはロックの外側で行われるため、ほかのパターンの取得を妨げることはありません。</p>
+ */
+public final class RegexCache {
+	/**
+	 * {@link #maximumWeight}のデフォルト値.
+	 */
+	public static final long DEFAULT_MAXIMUM_WEIGHT = 8L * 1024 * 1024;
+
+	/**
+	 * キャッシュのためのキー.
+	 */
+	private static final class Key {
+		final String pattern;
+		final Options options;
+		private final int hash;
+		Key(final String pattern, final Options options) {
+			this.pattern = pattern;
+			this.options = options;
+			this.hash = makeHashCode();
+		}
+		private int makeHashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + pattern.hashCode();
+			result = prime * result + options.hashCode();
+			return result;
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (!pattern.equals(other.pattern))
+				return false;
+			if (!options.equals(other.options))
+				return false;
+			return true;
+		}
+	}
+	/**
+	 * キャッシュのエントリ.
+	 * コンパイル中のものも含みます。
+	 */
+	private static final class Entry {
+		final FutureTask<Regex> task;
+		// コンパイル完了後に量った重み（コンパイル中は0）
+		long weight = 0;
+		// 重みを量った正規表現オブジェクト（コンパイル中はnull）
+		Regex regex = null;
+		Entry(final FutureTask<Regex> task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * 保管される{@link Regex}の重みの合計の上限.
+	 */
+	public final long maximumWeight;
+	// アクセス順に並べられたエントリ（このオブジェクト自身をロックとして使用する）
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long weight = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * 重みの合計の上限を指定してキャッシュを初期化する.
+	 * @param maximumWeight 重みの合計の上限
+	 */
+	public RegexCache(final long maximumWeight) {
+		if (maximumWeight < 0) {
+			throw new IllegalArgumentException("Maximum weight must not be negative.");
+		}
+		this.maximumWeight = maximumWeight;
+	}
+
+	/**
+	 * 正規表現パターンとオプションに対応する正規表現オブジェクトを返す.
+	 * キャッシュになければコンパイルして登録します。
+	 * @param pattern 正規表現パターン
+	 * @param options オプション
+	 * @return 正規表現オブジェクト
+	 * @throws IllegalArgumentException パターンのコンパイルに失敗した場合
+	 */
+	public Regex compile(final String pattern, final Options options) {
+		final Key key = new Key(pattern, options);
+		final Entry entry;
+		final boolean owner;
+		synchronized (this) {
+			final Entry cached = entries.get(key);
+			if (cached != null) {
+				hits ++;
+				entry = cached;
+				owner = false;
+			} else {
+				misses ++;
+				entry = new Entry(new FutureTask<Regex>(new Callable<Regex>() {
+					@Override
+					public Regex call() {
+						return Regex.compileWithoutCache(pattern, options);
+					}
+				}));
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+		if (owner) {
+			// コンパイルはロックの外側で行う
+			entry.task.run();
+		}
+		final Regex re;
+		try {
+			re = entry.task.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (final ExecutionException e) {
+			if (owner) {
+				// コンパイルに失敗したパターンは保管しない
+				synchronized (this) {
+					if (entries.get(key) == entry) {
+						entries.remove(key);
+					}
+				}
+			}
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		synchronized (this) {
+			// 破棄されていなければ重みを量りなおして上限を超えた分を破棄する
+			// ＊新たに登録した場合はほかのエントリもパターンマッチで重みが増えている可能性があるので量りなおす
+			if (entries.get(key) == entry && (owner || entry.regex != null)) {
+				entry.regex = re;
+				if (owner) {
+					for (final Entry each : entries.values()) {
+						reweigh(each);
+					}
+				} else {
+					reweigh(entry);
+				}
+				evict();
+			}
+		}
+		return re;
+	}
+	/**
+	 * エントリの重みを量りなおして重みの合計に反映する.
+	 * @param entry エントリ（コンパイル中の場合は何もしない）
+	 */
+	private void reweigh(final Entry entry) {
+		if (entry.regex == null) {
+			return;
+		}
+		final long current = entry.regex.footprint();
+		weight += current - entry.weight;
+		entry.weight = current;
+	}
+	private void evict() {
+		final Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+		while (weight > maximumWeight && iter.hasNext()) {
+			final Entry eldest = iter.next().getValue();
+			if (!eldest.task.isDone()) {
+				// コンパイル中のものは重みが確定していないので対象外
+				continue;
+			}
+			iter.remove();
+			weight -= eldest.weight;
+			evictions ++;
+		}
+	}
+	/**
+	 * キャッシュの内容をすべて破棄する.
+	 * 統計情報は初期化されません。
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+	/**
+	 * 保管されている正規表現オブジェクトの数を返す.
+	 * コンパイル中のものも含みます。
+	 * @return 数
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	/**
+	 * 保管されている正規表現オブジェクトの重みの合計を返す.
+	 * @return 重みの合計
+	 */
+	public synchronized long weight() {
+		return weight;
+	}
+	/**
+	 * キャッシュに保管済みの正規表現オブジェクトが返された回数を返す.
+	 * @return 回数
+	 */
+	public synchronized long hitCount() {
+		return hits;
+	}
+	/**
+	 * キャッシュに保管されておらずコンパイルが行われた回数を返す.
+	 * @return 回数
+	 */
+	public synchronized long missCount() {
+		return misses;
+	}
+	/**
+	 * 重みの合計が上限を超えたために正規表現オブジェクトが破棄された回数を返す.
+	 * @return 回数
+	 */
+	public synchronized long evictionCount() {
+		return evictions;
+	}
+}
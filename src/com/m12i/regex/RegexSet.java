@@ -0,0 +1,181 @@
+package com.m12i.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 複数の正規表現パターンをまとめて評価する正規表現オブジェクト.
+ * すべてのパターンを選択（和）により1つのNFAに束ね、そこから導出した1つのDFAで入力文字列を1回だけ走査して、
+ * 適合したすべてのパターンのインデックスを返します。
+ * NFAの受理状態にはパターンのインデックスがラベルとして付与され、
+ * DFAの各状態はそれに含まれる受理状態のラベルの一覧を保持します（{@link NFA#labels}）。
+ * そのため1文字あたりの処理時間はパターンの数にほとんど依存しません。
+ * <p>このオブジェクトはスレッドセーフであり、複数のスレッドで共有することができます。
+ * {@link Regex#compile(String, Options)}とは異なりキャッシュは使用されません。</p>
+ */
+public final class RegexSet {
+	/**
+	 * 正規表現パターンをもとに正規表現オブジェクトを初期化して返す.
+	 * @param patterns 正規表現パターン
+	 * @return 正規表現オブジェクト
+	 */
+	public static RegexSet compile(final String... patterns) {
+		return compile(Arrays.asList(patterns), Options.DEFAULT);
+	}
+	/**
+	 * 正規表現パターンとオプションをもとに正規表現オブジェクトを初期化して返す.
+	 * @param patterns 正規表現パターンのリスト
+	 * @param options オプション
+	 * @return 正規表現オブジェクト
+	 * @throws IllegalArgumentException {@link Options#eagerDfa}が{@code true}で、
+	 * 	DFAの状態の数が{@link Options#stateLimit}を超えた場合や、
+	 * 	NFAの状態の数の見積もりの合計が{@link Options#sizeLimit}を超えた場合
+	 */
+	public static RegexSet compile(final List<String> patterns, final Options options) {
+		return new RegexSet(patterns, options);
+	}
+
+	/**
+	 * 完全一致型のパターンマッチに使用するDFA.
+	 */
+	private final DFA dfa;
+	/**
+	 * 部分一致型のパターンマッチに使用する非アンカー型のDFA.
+	 */
+	private final DFA searchDfa;
+	/**
+	 * このオブジェクトのもととなった正規表現パターンのリスト.
+	 * リストのインデックスがパターンマッチの結果として返されるインデックスとなります。
+	 */
+	public final List<String> patterns;
+	/**
+	 * このオブジェクトのコンパイルに使用されたオプション.
+	 */
+	public final Options options;
+
+	private RegexSet(final List<String> patterns, final Options options) {
+		this.patterns = Collections.unmodifiableList(new ArrayList<String>(patterns));
+		this.options = options;
+		// すべてのパターンの状態に同じファクトリでIDを発番する
+		final IDFactory factory = IDFactory.create();
+		final List<NFA.Fragment> fragments = new ArrayList<NFA.Fragment>(this.patterns.size());
+		final List<Node> nodes = new ArrayList<Node>(this.patterns.size());
+		long size = 0;
+		for (final String pattern : this.patterns) {
+			final Node parsed = new Parser(new Lexer(pattern), options.multiline).parse();
+			final Node node = options.caseInsensitive ? parsed.caseFold(options.unicodeCase) : parsed;
+			size += node.size(options.sizeLimit);
+			if (size > options.sizeLimit) {
+				throw new IllegalArgumentException("Pattern too large.");
+			}
+			nodes.add(node);
+		}
+		for (final Node node : nodes) {
+			fragments.add(node.assemble(factory));
+		}
+		final NFA nfa = NFA.union(fragments, factory);
+		Functions.dump(nfa);
+		if (options.nfaSimulation && !options.eagerDfa) {
+			this.dfa = nfa.simulate(false);
+			this.searchDfa = nfa.simulate(true);
+			return;
+		}
+		final DFA anchored = nfa.transform(options.cacheLimit);
+		final DFA unanchored = nfa.transformUnanchored(options.cacheLimit);
+		if (options.eagerDfa) {
+			this.dfa = anchored.determinize(options.stateLimit);
+			this.searchDfa = unanchored.determinize(options.stateLimit);
+		} else {
+			this.dfa = anchored;
+			this.searchDfa = unanchored;
+		}
+	}
+
+	/**
+	 * 正規表現パターンの数を返す.
+	 * @return パターンの数
+	 */
+	public int size() {
+		return patterns.size();
+	}
+	/**
+	 * 完全一致型のパターンマッチを試みる.
+	 * 入力文字シーケンス全体に適合したすべてのパターンのインデックスを返します。
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @return 適合したパターンのインデックスの集合
+	 */
+	public BitSet matches(final CharSequence input) {
+		final DFA.Runtime rt = dfa.initializeRuntime();
+		final int length = input.length();
+		for (int i = 0; i < length; i ++) {
+			if (rt.isDead()) {
+				return new BitSet();
+			}
+			rt.doTransition(input.charAt(i));
+		}
+		final BitSet result = new BitSet();
+		toBitSet(rt.labels(Look.EDGE), result);
+		return result;
+	}
+	/**
+	 * 部分一致型のパターンマッチを試みる.
+	 * 入力文字シーケンスのいずれかの部分文字列に適合したすべてのパターンのインデックスを返します。
+	 * すべてのパターンが適合した時点で評価を打ち切ります。
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @return 適合したパターンのインデックスの集合
+	 */
+	public BitSet find(final CharSequence input) {
+		final BitSet result = new BitSet();
+		final DFA.Runtime rt = searchDfa.initializeRuntime();
+		final int length = input.length();
+		final int size = patterns.size();
+		int[] last = rt.labels(Look.after(input, 0, length));
+		// 適合したパターンの数は新たに立てたビットの数を累計して求める（BitSet#cardinality()はパターンの数に比例する）
+		int count = toBitSet(last, result);
+		for (int i = 0; i < length && count < size; i ++) {
+			rt.doTransition(input.charAt(i));
+			final int[] labels = rt.labels(Look.after(input, i + 1, length));
+			// 同じ状態にとどまっている間はラベルの一覧も同じなので集計を省略する
+			if (labels != last) {
+				count += toBitSet(labels, result);
+				last = labels;
+			}
+		}
+		return result;
+	}
+	/**
+	 * 部分一致型のパターンマッチを試みる.
+	 * いずれかのパターンが入力文字シーケンスのいずれかの部分文字列に適合するかどうかを返します。
+	 * @param input 入力文字シーケンス（パターンマッチ対象）
+	 * @return 検証結果
+	 */
+	public boolean findAny(final CharSequence input) {
+		return searchDfa.initializeRuntime().findAccept(input, 0, input.length()) >= 0;
+	}
+	/**
+	 * 確保済みのメモリの量を概算して返す.
+	 * @return メモリの量（バイト）
+	 */
+	public long footprint() {
+		return dfa.footprint() + searchDfa.footprint();
+	}
+	/**
+	 * ラベルの一覧が示すパターンのインデックスのビットを立てる.
+	 * @param labels ラベルの一覧
+	 * @param result ビットを立てる集合
+	 * @return 新たに立てたビットの数
+	 */
+	private static int toBitSet(final int[] labels, final BitSet result) {
+		int count = 0;
+		for (final int label : labels) {
+			if (!result.get(label)) {
+				result.set(label);
+				count ++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,204 @@
+package com.m12i.regex;
+
+/**
+ * NFAシミュレーションを行うオブジェクト.
+ * DFAの状態を導出せずに、NFAの状態セットを入力文字ごとに直接遷移させます（Thompsonの方式）。
+ * 状態セットは2つの{@link SparseSet}を交互に使用して管理されるため、
+ * 初期化の後は入力文字を評価してもメモリを確保することがなく、
+ * 1文字あたりの処理時間はNFAの大きさで抑えられます。
+ * <p>NFAが表明による遷移をもつ場合は直前の文字の種別を保持し、
+ * 状態遷移と受理状態の検証の前に直後の文字の種別のもとで成り立つ表明による遷移をたどります。</p>
+ * <p>このオブジェクトはスレッドセーフではありません。</p>
+ */
+final class Simulator {
+	private final NFA nfa;
+	/**
+	 * 非アンカー型であるかどうか.
+	 * 非アンカー型の場合は状態遷移と受理状態の検証のたびにNFAの初期状態のイプシロン閉包が合流されます。
+	 * @see DFA#transformUnanchored
+	 */
+	private final boolean unanchored;
+	/**
+	 * NFAの初期状態のイプシロン閉包が受理状態を含むかどうか.
+	 */
+	private final boolean seedAccepting;
+	private SparseSet current;
+	private SparseSet next;
+	// 受理状態の検証のために表明による遷移をたどる作業用の状態セット
+	private final SparseSet scratch;
+	// 現在の状態セットが受理状態を含むかどうか（表明による遷移をたどる前の状態セットについて）
+	private boolean accepting;
+	// 直前の文字の種別（正規化済み）
+	private int before;
+
+	/**
+	 * オブジェクトを初期化する.
+	 * 状態セットは空の状態セットとなります。
+	 * @param nfa {@link NFA}オブジェクト
+	 * @param unanchored 非アンカー型とする場合は{@code true}
+	 */
+	Simulator(final NFA nfa, final boolean unanchored) {
+		this.nfa = nfa;
+		this.unanchored = unanchored;
+		boolean seedAccepting = false;
+		for (final int s : nfa.initial) {
+			seedAccepting |= nfa.labels[s] >= 0;
+		}
+		this.seedAccepting = seedAccepting;
+		this.current = new SparseSet(nfa.size);
+		this.next = new SparseSet(nfa.size);
+		this.scratch = new SparseSet(nfa.size);
+	}
+
+	/**
+	 * 状態セットと直前の文字の種別を設定する.
+	 * @param states 状態セット
+	 * @param before 直前の文字の種別（{@link NFA#look(int)}により正規化済み）
+	 */
+	void reset(final int[] states, final int before) {
+		this.before = before;
+		current.clear();
+		accepting = false;
+		for (final int s : states) {
+			if (current.add(s)) {
+				accepting |= nfa.labels[s] >= 0;
+			}
+		}
+	}
+	/**
+	 * 入力文字を利用して状態遷移を行う.
+	 * @param by 入力文字
+	 */
+	void doTransition(final char by) {
+		doTransition(nfa.alphabet.classOf(by));
+	}
+	/**
+	 * 入力文字クラスIDを利用して状態遷移を行う.
+	 * @param klass 入力文字クラスID
+	 */
+	void doTransition(final int klass) {
+		next.clear();
+		boolean nextAccepting = false;
+		if (nfa.hasAssertions) {
+			// 初期状態のイプシロン閉包を合流させたうえで表明による遷移をたどる
+			if (unanchored) {
+				for (final int s : nfa.initial) {
+					current.add(s);
+				}
+			}
+			expand(current, nfa.categoryOf(klass));
+			before = nfa.categoryOf(klass);
+		} else if (unanchored) {
+			for (final int s : nfa.initial) {
+				nextAccepting |= add(nfa.transition(s, klass));
+			}
+		}
+		final int size = current.size();
+		for (int i = 0; i < size; i ++) {
+			nextAccepting |= add(nfa.transition(current.get(i), klass));
+		}
+		final SparseSet tmp = current;
+		current = next;
+		next = tmp;
+		accepting = nextAccepting;
+	}
+	private boolean add(final int[] accepts) {
+		boolean result = false;
+		for (final int s : accepts) {
+			if (next.add(s)) {
+				result |= nfa.labels[s] >= 0;
+			}
+		}
+		return result;
+	}
+	/**
+	 * 状態セットに直前と直後の文字の種別のもとで成り立つ表明による遷移の遷移先を加える.
+	 * 追加した状態も同じ走査のなかでたどられます。
+	 * @param set 状態セット
+	 * @param after 直後の文字の種別（正規化済み）
+	 */
+	private void expand(final SparseSet set, final int after) {
+		for (int i = 0; i < set.size(); i ++) {
+			final char assertion = nfa.assertionOf(set.get(i));
+			if (assertion != 0 && Look.holds(assertion, before, after)) {
+				for (final int t : nfa.assertionTargets(set.get(i))) {
+					set.add(t);
+				}
+			}
+		}
+	}
+	/**
+	 * 受理状態の検証のため、現在の状態セットに直後の文字の種別のもとで成り立つ表明による遷移の遷移先を加えた状態セットを求める.
+	 * 非アンカー型の場合はNFAの初期状態のイプシロン閉包も合流させます。
+	 * @param after 直後の文字の種別（{@link Look#EDGE}など）
+	 * @return 状態セット
+	 */
+	private SparseSet resolve(final int after) {
+		scratch.clear();
+		final int size = current.size();
+		for (int i = 0; i < size; i ++) {
+			scratch.add(current.get(i));
+		}
+		if (unanchored) {
+			for (final int s : nfa.initial) {
+				scratch.add(s);
+			}
+		}
+		expand(scratch, nfa.look(after));
+		return scratch;
+	}
+	/**
+	 * 現在の状態セットが受理状態を含むかどうかを返す.
+	 * @param after 直後の文字の種別（{@link Look#EDGE}など）
+	 * @return 検証結果
+	 */
+	boolean isAccepting(final int after) {
+		if (!nfa.hasAssertions) {
+			return accepting || (unanchored && seedAccepting);
+		}
+		final SparseSet set = resolve(after);
+		for (int i = 0; i < set.size(); i ++) {
+			if (nfa.labels[set.get(i)] >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	/**
+	 * 現在の状態セットが空であるかどうかを返す.
+	 * @return 検証結果
+	 */
+	boolean isEmpty() {
+		return current.size() == 0;
+	}
+	/**
+	 * 現在の状態セットに含まれる受理状態のラベルの一覧を返す.
+	 * 非アンカー型の場合はNFAの初期状態のイプシロン閉包に含まれるラベルも加えます。
+	 * @param after 直後の文字の種別（{@link Look#EDGE}など）
+	 * @return ラベルの一覧（昇順に整列済み、重複なし）
+	 * @see NFA#labels
+	 */
+	int[] labels(final int after) {
+		final boolean[] marks = new boolean[nfa.labelCount];
+		int count = 0;
+		final SparseSet set = nfa.hasAssertions ? resolve(after) : current;
+		final int size = set.size();
+		final int seeds = unanchored && !nfa.hasAssertions ? nfa.initial.length : 0;
+		for (int i = 0; i < size + seeds; i ++) {
+			final int s = i < size ? set.get(i) : nfa.initial[i - size];
+			final int label = nfa.labels[s];
+			if (label >= 0 && !marks[label]) {
+				marks[label] = true;
+				count ++;
+			}
+		}
+		final int[] result = new int[count];
+		int n = 0;
+		for (int label = 0; label < marks.length; label ++) {
+			if (marks[label]) {
+				result[n ++] = label;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,48 @@
+package com.m12i.regex;
+
+/**
+ * 文字シーケンスの部分範囲をあらわすビュー.
+ * もとの文字シーケンスをコピーせずに参照します。
+ * そのため、もとの文字シーケンスが変更された場合はその変更がこのオブジェクトにも反映されます。
+ * {@link String#substring(int, int)}と異なり、生成にかかる時間と使用するメモリの量は範囲の長さによりません。
+ */
+final class Slice implements CharSequence {
+	private final CharSequence source;
+	private final int start;
+	private final int end;
+
+	/**
+	 * 文字シーケンスとその範囲をもとにオブジェクトを初期化する.
+	 * @param source もとの文字シーケンス
+	 * @param start 開始位置
+	 * @param end 終了位置（この位置の文字は含まない）
+	 */
+	Slice(final CharSequence source, final int start, final int end) {
+		this.source = source;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+	@Override
+	public char charAt(final int index) {
+		if (index < 0 || index >= end - start) {
+			throw new IndexOutOfBoundsException();
+		}
+		return source.charAt(start + index);
+	}
+	@Override
+	public CharSequence subSequence(final int start, final int end) {
+		if (start < 0 || end > this.end - this.start || start > end) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new Slice(source, this.start + start, this.start + end);
+	}
+	@Override
+	public String toString() {
+		return source.subSequence(start, end).toString();
+	}
+}
@@ -0,0 +1,69 @@
+package com.m12i.regex;
+
+/**
+ * 状態IDの集合.
+ * Briggs-Torczon法による疎集合で、要素の追加・検証と集合の消去をいずれも定数時間で行います。
+ * 要素は追加された順に{@link #get(int)}で参照できます。
+ * 要素の値の上限は初期化の時点で決まり、その後メモリを確保することはありません。
+ */
+final class SparseSet {
+	// 要素を追加された順に格納
+	private final int[] dense;
+	// 要素の値をキーにして dense のなかの位置を管理（dense と相互に参照しあう場合だけ有効）
+	private final int[] sparse;
+	private int size = 0;
+
+	/**
+	 * 要素の値の上限をもとにオブジェクトを初期化する.
+	 * @param capacity 要素の値の上限（要素の値はこの値未満）
+	 */
+	SparseSet(final int capacity) {
+		this.dense = new int[capacity];
+		this.sparse = new int[capacity];
+	}
+
+	/**
+	 * 要素を追加する.
+	 * @param value 要素
+	 * @return 追加した場合は{@code true}、すでに含まれていた場合は{@code false}
+	 */
+	boolean add(final int value) {
+		if (contains(value)) {
+			return false;
+		}
+		dense[size] = value;
+		sparse[value] = size;
+		size ++;
+		return true;
+	}
+	/**
+	 * 要素が含まれるかどうかを返す.
+	 * @param value 要素
+	 * @return 検証結果
+	 */
+	boolean contains(final int value) {
+		final int i = sparse[value];
+		return i < size && dense[i] == value;
+	}
+	/**
+	 * 指定された位置の要素を返す.
+	 * @param index 位置（要素が追加された順）
+	 * @return 要素
+	 */
+	int get(final int index) {
+		return dense[index];
+	}
+	/**
+	 * 要素の数を返す.
+	 * @return 要素の数
+	 */
+	int size() {
+		return size;
+	}
+	/**
+	 * すべての要素を取り除く.
+	 */
+	void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,278 @@
+package com.m12i.regex;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link DFA}の状態と状態遷移表の格納庫.
+ * 複数のスレッドから同時に使用されることを前提としており、ロックを使用せずに状態と状態遷移を登録・参照できます。
+ * <p>状態は追記のみ行われ、一度割り当てられた状態IDとその内容が変更されたり削除されたりすることはありません。
+ * 状態は状態IDの小さい順に容量が倍々に増えていくブロックに格納されます。
+ * ブロックは必要になった時点でCAS操作により追加されるため、既存のブロックがコピーされることはありません。</p>
+ * <p>状態遷移表の各要素もCAS操作により登録されます。
+ * 同じ状態遷移を複数のスレッドが同時に計算することはありえますが、
+ * 状態はNFAの状態セットをキーにして重複なく登録されるため、いずれのスレッドの計算結果も同じ状態IDとなります。</p>
+ */
+final class StateStore {
+	/**
+	 * 状態遷移表において遷移先が未計算であることをあらわす値.
+	 */
+	static final int UNKNOWN = -1;
+	/**
+	 * 先頭のブロックの容量（2の冪乗数のビット数）.
+	 */
+	private static final int BASE_BITS = 4;
+	/**
+	 * ブロックの最大数.
+	 */
+	private static final int MAX_BLOCKS = 32 - BASE_BITS;
+
+	/**
+	 * 状態のブロック.
+	 * 配列の要素は状態IDを割り当てたスレッドによって書き込まれ、
+	 * 状態IDの公開（{@link ConcurrentMap#putIfAbsent(Object, Object)}や状態遷移表へのCAS操作）を通じて
+	 * ほかのスレッドから参照可能になります。
+	 */
+	private static final class Block {
+		final int[][] sets;
+		final byte[] befores;
+		final byte[] acceptance;
+		final int[][][] labels;
+		final AtomicIntegerArray next;
+		Block(final int capacity, final int width) {
+			this.sets = new int[capacity][];
+			this.befores = new byte[capacity];
+			this.acceptance = new byte[capacity];
+			this.labels = new int[capacity][][];
+			this.next = new AtomicIntegerArray(capacity * width);
+			for (int i = 0; i < capacity * width; i ++) {
+				next.lazySet(i, UNKNOWN);
+			}
+		}
+	}
+	/**
+	 * DFAの状態をあらわすNFAの状態セットと直前の文字の種別のキー.
+	 * 状態セットは昇順に整列された正規形で保持されるため、
+	 * 同じ状態セットは要素の列挙順序にかかわらず同じキーとなります。
+	 */
+	private static final class Key {
+		final int[] states;
+		final int before;
+		private final int hash;
+		Key(final int[] states, final int before) {
+			this.states = states;
+			this.before = before;
+			// イミュータブル・オブジェクトなのでこの時点でハッシュコードも確定する
+			this.hash = Arrays.hashCode(states) * 31 + before;
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (hash != other.hash)
+				return false;
+			if (before != other.before)
+				return false;
+			return Arrays.equals(states, other.states);
+		}
+	}
+
+	/**
+	 * 状態遷移表の1状態あたりの幅（入力文字クラスの数）.
+	 */
+	private final int width;
+	private final AtomicReferenceArray<Block> blocks = new AtomicReferenceArray<Block>(MAX_BLOCKS);
+	// 次に割り当てる状態ID
+	private final AtomicInteger nextId = new AtomicInteger();
+	// 採用された状態の数
+	private final AtomicInteger size = new AtomicInteger();
+	// NFAの状態セットをキーにして状態IDを管理（状態セットの重複を防止する）
+	private final ConcurrentMap<Key, Integer> ids = new ConcurrentHashMap<Key, Integer>();
+
+	/**
+	 * 格納庫を初期化する.
+	 * @param width 状態遷移表の1状態あたりの幅（入力文字クラスの数）
+	 */
+	StateStore(final int width) {
+		this.width = width;
+	}
+
+	/**
+	 * 状態遷移表を参照して遷移先の状態IDを返す.
+	 * @param from 遷移元の状態ID
+	 * @param klass 入力文字クラスID
+	 * @return 遷移先の状態ID（未計算の場合は{@link #UNKNOWN}）
+	 */
+	int next(final int from, final int klass) {
+		final int b = blockIndex(from);
+		return blocks.get(b).next.get((from - blockStart(b)) * width + klass);
+	}
+	/**
+	 * 状態遷移表に遷移先の状態IDを登録する.
+	 * すでにほかのスレッドにより登録済みの場合はそちらの値が維持されます。
+	 * @param from 遷移元の状態ID
+	 * @param klass 入力文字クラスID
+	 * @param to 遷移先の状態ID
+	 */
+	void setNext(final int from, final int klass, final int to) {
+		final int b = blockIndex(from);
+		blocks.get(b).next.compareAndSet((from - blockStart(b)) * width + klass, UNKNOWN, to);
+	}
+	/**
+	 * 状態IDに対応するNFAの状態セットを返す.
+	 * @param id 状態ID
+	 * @return NFAの状態セット
+	 */
+	int[] set(final int id) {
+		final int b = blockIndex(id);
+		return blocks.get(b).sets[id - blockStart(b)];
+	}
+	/**
+	 * 状態IDに対応する直前の文字の種別を返す.
+	 * @param id 状態ID
+	 * @return 直前の文字の種別（{@link NFA#look(int)}により正規化済み）
+	 */
+	int before(final int id) {
+		final int b = blockIndex(id);
+		return blocks.get(b).befores[id - blockStart(b)];
+	}
+	/**
+	 * 直後の文字の種別ごとに状態が受理状態であるかどうかを返す.
+	 * @param id 状態ID
+	 * @return 直後の文字の種別（{@link Look#EDGE}など）のビットを受理状態となる場合に立てた値
+	 */
+	int acceptance(final int id) {
+		final int b = blockIndex(id);
+		return blocks.get(b).acceptance[id - blockStart(b)];
+	}
+	/**
+	 * 状態に含まれる受理状態のラベルの一覧を直後の文字の種別ごとに返す.
+	 * @param id 状態ID
+	 * @return 直後の文字の種別（{@link Look#EDGE}など）をインデックスとしてラベルの一覧（昇順に整列済み）を格納した配列
+	 * @see NFA#labels
+	 */
+	int[][] labels(final int id) {
+		final int b = blockIndex(id);
+		return blocks.get(b).labels[id - blockStart(b)];
+	}
+	/**
+	 * NFAの状態セットと直前の文字の種別に対応する状態IDを返す.
+	 * 未知の組み合わせであれば新たに状態IDを割り当てて登録します。
+	 * 複数のスレッドが同じ組み合わせを同時に登録しようとした場合、いずれか1つの状態IDだけが採用されます。
+	 * 直後の文字の種別に対応するラベルを1つ以上もつ場合にその種別について受理状態となります。
+	 * @param states NFAの状態セット（昇順に整列済み）
+	 * @param before 直前の文字の種別
+	 * @param labels 直後の文字の種別をインデックスとして状態に含まれる受理状態のラベルの一覧（昇順に整列済み）を格納した配列
+	 * @return 状態ID
+	 */
+	int intern(final int[] states, final int before, final int[][] labels) {
+		final Key key = new Key(states, before);
+		final Integer known = ids.get(key);
+		if (known != null) {
+			return known;
+		}
+		// 状態IDを割り当てて公開前に内容を書き込んでおく
+		final int id = nextId.getAndIncrement();
+		final int b = blockIndex(id);
+		final Block block = block(b);
+		int acceptance = 0;
+		for (int after = 0; after < labels.length; after ++) {
+			if (labels[after].length > 0) {
+				acceptance |= 1 << after;
+			}
+		}
+		block.sets[id - blockStart(b)] = states;
+		block.befores[id - blockStart(b)] = (byte) before;
+		block.acceptance[id - blockStart(b)] = (byte) acceptance;
+		block.labels[id - blockStart(b)] = labels;
+		final Integer raced = ids.putIfAbsent(key, id);
+		if (raced != null) {
+			// ほかのスレッドが先に登録していた場合はそちらを採用する
+			// ＊このスレッドが割り当てた状態IDはどこからも参照されない
+			return raced;
+		}
+		size.incrementAndGet();
+		return id;
+	}
+	/**
+	 * 割り当て済みの状態IDの上限を返す.
+	 * 状態IDは{@code 0}以上この値未満です。
+	 * ほかのスレッドとの競合により採用されなかった状態IDが含まれる場合があり、
+	 * その状態IDについて{@link #set(int)}は{@code null}を返すか、採用された状態と同じ状態セットを返します。
+	 * @return 状態IDの上限
+	 */
+	int idLimit() {
+		return nextId.get();
+	}
+	/**
+	 * 登録済みの状態の数を返す.
+	 * @return 状態の数
+	 */
+	int size() {
+		return size.get();
+	}
+	/**
+	 * 状態IDが採用されたものであるかどうかを返す.
+	 * @param id 状態ID
+	 * @return 検証結果
+	 */
+	boolean isInterned(final int id) {
+		final int[] states = set(id);
+		if (states == null) {
+			return false;
+		}
+		final Integer known = ids.get(new Key(states, before(id)));
+		return known != null && known == id;
+	}
+	/**
+	 * 確保済みのメモリの量を概算して返す.
+	 * @return メモリの量（バイト）
+	 */
+	long footprint() {
+		long result = 0;
+		for (int b = 0; b < MAX_BLOCKS; b ++) {
+			final Block block = blocks.get(b);
+			if (block == null) {
+				break;
+			}
+			// 状態遷移表の要素、状態セットとラベルの一覧への参照、直前の文字の種別、受理状態のビット
+			result += (long) block.acceptance.length * (width * 4 + 8 + 8 + 2);
+			for (final int[] states : block.sets) {
+				if (states != null) {
+					result += 16 + states.length * 4;
+				}
+			}
+		}
+		return result;
+	}
+	private Block block(final int b) {
+		final Block existing = blocks.get(b);
+		if (existing != null) {
+			return existing;
+		}
+		final Block created = new Block(1 << (BASE_BITS + b), width);
+		if (blocks.compareAndSet(b, null, created)) {
+			return created;
+		}
+		return blocks.get(b);
+	}
+	private static int blockIndex(final int id) {
+		return 31 - Integer.numberOfLeadingZeros((id >>> BASE_BITS) + 1);
+	}
+	private static int blockStart(final int b) {
+		return ((1 << b) - 1) << BASE_BITS;
+	}
+}
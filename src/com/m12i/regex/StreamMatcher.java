@@ -0,0 +1,332 @@
+package com.m12i.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 分割して与えられる入力に対して部分一致型のパターンマッチを行うマッチャー.
+ * {@link Regex#streamMatcher(MatchHandler)}もしくは{@link Regex#byteStreamMatcher(MatchHandler)}により初期化されます。
+ * <p>入力は{@link #feed(CharSequence)}などで順次与えます。
+ * DFAの状態は入力の区切りをまたいで引き継がれ、パターンに適合する部分文字列の位置が確定した時点で
+ * {@link MatchHandler}に通知されます。すべての入力を与えたら{@link #finish()}を呼び出します。
+ * 部分文字列の選択規則は{@link Regex.Matcher#find()}を繰り返し呼び出した場合と同じです。</p>
+ * <p>マッチャーが保持する入力は、パターンに適合する可能性がある部分文字列がはじまりうる位置以降の分だけです。
+ * 非アンカー型のDFAがアイドル状態（{@link DFA.Runtime#isIdle()}）に到達するたびにそれ以前の入力は破棄されるため、
+ * 適合途中の部分文字列が長くならないかぎり使用するメモリの量は一定です。
+ * パターンが表明を含む場合は、その評価のため保持する入力の直前の1文字も保持されます。</p>
+ * <p>位置はいずれも入力全体の先頭を起点とするインデックス（バイト単位のマッチャーではバイト単位）です。
+ * このオブジェクトはスレッドセーフではありません。</p>
+ */
+public final class StreamMatcher {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final DFA dfa;
+	private final DFA searchDfa;
+	private final boolean utf8;
+	private final MatchHandler handler;
+	// 保持する入力の直前に保持しておく文字の数（表明の評価に使用する）
+	private final int lookBehind;
+	// 保持している入力（バイト単位のマッチャーでは各バイトを0〜255の文字として保持する）
+	private char[] buffer = new char[256];
+	// buffer[0] の位置
+	private long bufferStart = 0;
+	private int bufferLength = 0;
+	// 保持しておく必要がある入力の先頭の位置
+	private long keep = 0;
+	// 非アンカー型のDFAとその評価位置
+	private DFA.Runtime runtime;
+	private long scanPosition = 0;
+	// 非アンカー型のDFAを評価位置の直前の文字の種別で初期状態に戻す必要があれば true
+	private boolean rewind = false;
+	// 部分文字列の位置を求めている途中であればそのオブジェクトと評価位置（それ以外の場合はnull）
+	private DFA.Locator locator = null;
+	private long locatePosition = 0;
+	private long matchStart = -1;
+	private long matchEnd = -1;
+	private long matchCount = 0;
+	private boolean stopped = false;
+	private boolean finished = false;
+
+	StreamMatcher(final DFA dfa, final DFA searchDfa, final boolean utf8, final MatchHandler handler) {
+		this.dfa = dfa;
+		// アイドル状態を判定するため遅延構築されるDFAを使用する
+		this.searchDfa = searchDfa.lazy();
+		this.utf8 = utf8;
+		this.handler = handler;
+		this.lookBehind = dfa.hasAssertions() ? 1 : 0;
+		this.runtime = this.searchDfa.initializeRuntime();
+	}
+
+	/**
+	 * 文字配列の一部を入力として与える.
+	 * @param chars 文字配列
+	 * @param offset 開始位置
+	 * @param length 長さ
+	 * @throws IllegalStateException バイト単位のマッチャーである場合、もしくは{@link #finish()}の呼び出し後である場合
+	 */
+	public void feed(final char[] chars, final int offset, final int length) {
+		feed(CharBuffer.wrap(chars, offset, length));
+	}
+	/**
+	 * 文字シーケンスを入力として与える.
+	 * {@link CharBuffer}の場合は位置（position）からリミット（limit）までの文字が対象となり、
+	 * バッファの位置は変更されません。
+	 * @param chunk 文字シーケンス
+	 * @throws IllegalStateException バイト単位のマッチャーである場合、もしくは{@link #finish()}の呼び出し後である場合
+	 */
+	public void feed(final CharSequence chunk) {
+		if (utf8) {
+			throw new IllegalStateException("Byte stream matcher requires byte input.");
+		}
+		if (stopped) {
+			return;
+		}
+		final int length = chunk.length();
+		final int at = reserve(length);
+		for (int i = 0; i < length; i ++) {
+			buffer[at + i] = chunk.charAt(i);
+		}
+		bufferLength += length;
+		drain(false);
+	}
+	/**
+	 * UTF-8で符号化されたバイト配列の一部を入力として与える.
+	 * @param bytes バイト配列
+	 * @param offset 開始位置
+	 * @param length 長さ
+	 * @throws IllegalStateException 文字単位のマッチャーである場合、もしくは{@link #finish()}の呼び出し後である場合
+	 */
+	public void feed(final byte[] bytes, final int offset, final int length) {
+		feed(ByteBuffer.wrap(bytes, offset, length));
+	}
+	/**
+	 * UTF-8で符号化されたバイト列を入力として与える.
+	 * バッファの位置（position）からリミット（limit）までのバイトが対象となり、バッファの位置は変更されません。
+	 * @param chunk バッファ
+	 * @throws IllegalStateException 文字単位のマッチャーである場合、もしくは{@link #finish()}の呼び出し後である場合
+	 */
+	public void feed(final ByteBuffer chunk) {
+		if (!utf8) {
+			throw new IllegalStateException("Char stream matcher requires char input.");
+		}
+		if (stopped) {
+			return;
+		}
+		final int length = chunk.remaining();
+		final int at = reserve(length);
+		for (int i = 0; i < length; i ++) {
+			buffer[at + i] = (char) (chunk.get(chunk.position() + i) & 0xFF);
+		}
+		bufferLength += length;
+		drain(false);
+	}
+	/**
+	 * 入力の終わりを通知する.
+	 * 位置が確定していなかった部分文字列はこの時点で確定して通知されます。
+	 */
+	public void finish() {
+		if (!finished) {
+			finished = true;
+			drain(true);
+		}
+	}
+	/**
+	 * 処理を中断したかどうかを返す.
+	 * {@link MatchHandler#handle(StreamMatcher)}が{@code false}を返すと処理は中断され、
+	 * 以降に与えられた入力は保持されずに無視されます。
+	 * @return 検証結果
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+	/**
+	 * これまでに与えられた入力の長さを返す.
+	 * @return 長さ
+	 */
+	public long position() {
+		return bufferStart + bufferLength;
+	}
+	/**
+	 * これまでに通知した部分文字列の数を返す.
+	 * @return 数
+	 */
+	public long matchCount() {
+		return matchCount;
+	}
+	/**
+	 * 直近に通知した部分文字列の開始位置を返す.
+	 * @return 開始位置
+	 */
+	public long start() {
+		return matchStart;
+	}
+	/**
+	 * 直近に通知した部分文字列の終了位置を返す.
+	 * @return 終了位置
+	 */
+	public long end() {
+		return matchEnd;
+	}
+	/**
+	 * 直近に通知した部分文字列を返す.
+	 * バイト単位のマッチャーではUTF-8として復号した文字列を返します。
+	 * {@link MatchHandler#handle(StreamMatcher)}の呼び出しの間だけ使用できます。
+	 * @return 部分文字列
+	 */
+	public String group() {
+		final int offset = offsetOf(matchStart);
+		final int length = (int) (matchEnd - matchStart);
+		if (!utf8) {
+			return new String(buffer, offset, length);
+		}
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i ++) {
+			bytes[i] = (byte) buffer[offset + i];
+		}
+		return new String(bytes, UTF_8);
+	}
+	/**
+	 * 直近に通知した部分文字列をマッチャーが保持する入力のビューとして返す.
+	 * バイト単位のマッチャーでは各バイトが0〜255の文字としてあらわれます。
+	 * {@link MatchHandler#handle(StreamMatcher)}の呼び出しの間だけ使用できます。
+	 * @return 部分文字列のビュー
+	 */
+	public CharSequence groupSequence() {
+		final int offset = offsetOf(matchStart);
+		return CharBuffer.wrap(buffer, offset, (int) (matchEnd - matchStart)).slice();
+	}
+	/**
+	 * マッチャーが保持している入力の長さを返す.
+	 * @return 長さ
+	 */
+	int buffered() {
+		return bufferLength;
+	}
+
+	/**
+	 * 不要になった入力を破棄したうえで入力を追記する領域を確保する.
+	 * @param length 追記する長さ
+	 * @return 追記を開始するインデックス
+	 */
+	private int reserve(final int length) {
+		if (finished) {
+			throw new IllegalStateException("Stream already finished.");
+		}
+		final int drop = (int) (Math.min(keep - lookBehind, bufferStart + bufferLength) - bufferStart);
+		if (drop > 0) {
+			System.arraycopy(buffer, drop, buffer, 0, bufferLength - drop);
+			bufferStart += drop;
+			bufferLength -= drop;
+		}
+		if (bufferLength + length > buffer.length) {
+			final char[] grown = new char[Math.max(buffer.length * 2, bufferLength + length)];
+			System.arraycopy(buffer, 0, grown, 0, bufferLength);
+			buffer = grown;
+		}
+		return bufferLength;
+	}
+	private int offsetOf(final long position) {
+		return (int) (position - bufferStart);
+	}
+	/**
+	 * 位置の直前の文字の種別を返す.
+	 * 表明を含まないパターンでは直前の文字を保持していない場合があり、その場合は{@link Look#OTHER}を返します（評価には影響しません）。
+	 * @param position 位置
+	 * @return 種別
+	 */
+	private int before(final long position) {
+		if (position == 0) {
+			return Look.EDGE;
+		}
+		return position > bufferStart ? Look.of(buffer[offsetOf(position - 1)]) : Look.OTHER;
+	}
+	/**
+	 * 保持している入力を評価できるところまで評価する.
+	 * @param eof 入力の終わりに達している場合は{@code true}
+	 */
+	private void drain(final boolean eof) {
+		final long bufferEnd = bufferStart + bufferLength;
+		while (!stopped) {
+			if (locator == null) {
+				// 空文字列に適合した直後は1文字読み飛ばすため評価位置が入力の末尾を超えることがある
+				if (scanPosition > bufferEnd) {
+					break;
+				}
+				if (rewind) {
+					runtime.reset(before(scanPosition));
+					rewind = false;
+				}
+				// アイドル状態であればそれ以前の入力からはじまる部分文字列が適合することはない
+				if (runtime.isIdle()) {
+					keep = scanPosition;
+				}
+				// 受理状態の検証には直後の文字の種別が必要（入力の終わりでは末尾とみなす）
+				final int acceptance = runtime.acceptance();
+				final int after = scanPosition < bufferEnd ? Look.of(buffer[offsetOf(scanPosition)])
+						: eof ? Look.EDGE : -1;
+				if (after < 0 && acceptance != 0 && acceptance != (1 << Look.COUNT) - 1) {
+					// 直後の文字によって結果が変わるので次の入力を待つ
+					break;
+				}
+				if ((acceptance & (1 << Math.max(after, 0))) != 0) {
+					// 適合する部分文字列がはじめて終了する位置が見つかったのでその開始位置と終了位置を求める
+					locator = new DFA.Locator(dfa, keep, before(keep), scanPosition);
+					locatePosition = keep;
+					continue;
+				}
+				if (scanPosition == bufferEnd) {
+					break;
+				}
+				runtime.doTransition(buffer[offsetOf(scanPosition)]);
+				scanPosition ++;
+			} else {
+				if (!locator.isDone() && eof && locatePosition == bufferEnd) {
+					locator.finish();
+					emit();
+					continue;
+				}
+				if (locator.isDone()) {
+					emit();
+					continue;
+				}
+				if (locatePosition == bufferEnd) {
+					break;
+				}
+				locator.feed(buffer[offsetOf(locatePosition)]);
+				locatePosition ++;
+			}
+		}
+	}
+	/**
+	 * 位置が確定した部分文字列を通知して次の部分文字列の探索を開始する.
+	 */
+	private void emit() {
+		final long start = locator.start();
+		final long end = locator.end();
+		locator = null;
+		final long bufferEnd = bufferStart + bufferLength;
+		// バイト単位のマッチャーでは文字の途中（UTF-8の後続バイトの位置）で空文字列に適合しても通知しない
+		if (!utf8 || start != end || start == bufferEnd || !Utf8.isContinuation(buffer[offsetOf(start)])) {
+			matchStart = start;
+			matchEnd = end;
+			matchCount ++;
+			if (!handler.handle(this)) {
+				stopped = true;
+			}
+		}
+		// 保持している入力を使って直後の位置から探索をやりなおす
+		// ＊直前の文字が与えられていない場合があるため初期状態に戻すのは評価を再開する時点とする
+		// ＊バイト単位のマッチャーでは保持している範囲の後続バイトを読み飛ばして文字の境界に合わせる
+		long nextFrom = end;
+		if (start == end) {
+			nextFrom ++;
+			while (utf8 && nextFrom < bufferEnd && Utf8.isContinuation(buffer[offsetOf(nextFrom)])) {
+				nextFrom ++;
+			}
+		}
+		rewind = true;
+		scanPosition = nextFrom;
+		keep = nextFrom;
+	}
+}
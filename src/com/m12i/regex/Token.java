@@ -2,7 +2,7 @@ package com.m12i.regex;
 
 final class Token {
 	static enum Kind {
-		CHAR, UNION, STAR, PLUS, DOT, LPAREN, RPAREN, EOF, LBRACKET, RBRACKET, CARET, HYPHEN;
+		CHAR, UNION, STAR, PLUS, DOT, LPAREN, RPAREN, EOF, LBRACKET, RBRACKET, CARET, HYPHEN, REPEAT, ASSERTION;
 	}
 	
 	private final static char nullChar = '\u0000';
@@ -21,13 +21,37 @@ final class Token {
 	static Token charToken(final char value) {
 		return new Token(value, Kind.CHAR);
 	}
+	/**
+	 * 位置に関する表明（{@code ^}、{@code $}、{@code \b}、{@code \B}）をあらわすトークンを返す.
+	 * @param value 表明の記号（{@code '^'}、{@code '$'}、{@code 'b'}、{@code 'B'}）
+	 * @return トークン
+	 */
+	static Token assertionToken(final char value) {
+		return new Token(value, Kind.ASSERTION);
+	}
+	/**
+	 * 回数を指定した繰り返し（{@code {n}}、{@code {n,}}、{@code {n,m}}）をあらわすトークンを返す.
+	 * @param min 繰り返しの回数の下限
+	 * @param max 繰り返しの回数の上限（上限がない場合は{@code -1}）
+	 * @return トークン
+	 */
+	static Token repeatToken(final int min, final int max) {
+		return new Token(nullChar, Kind.REPEAT, min, max);
+	}
 	
 	final char value;
 	final Kind kind;
+	final int min;
+	final int max;
 	
 	private Token(final char value, final Kind kind) {
+		this(value, kind, 0, 0);
+	}
+	private Token(final char value, final Kind kind, final int min, final int max) {
 		this.value = value;
 		this.kind = kind;
+		this.min = min;
+		this.max = max;
 	}
 	
 	/**
@@ -35,8 +59,10 @@ final class Token {
 	 * @return 整形結果
 	 */
 	String inspect() {
-		if (this.kind == Kind.CHAR) {
+		if (this.kind == Kind.CHAR || this.kind == Kind.ASSERTION) {
 			return this.kind.toString() + '(' + this.value + ')';
+		} else if (this.kind == Kind.REPEAT) {
+			return this.kind.toString() + '(' + this.min + ',' + this.max + ')';
 		} else {
 			return this.kind.toString();
 		}
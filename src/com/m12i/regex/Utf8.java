@@ -0,0 +1,143 @@
+package com.m12i.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.m12i.regex.NFA.Fragment;
+
+/**
+ * 入力文字をUTF-8のバイト列に変換するためのヘルパー関数.
+ * バイト単位のパターンマッチのため、{@link Char}オブジェクトがあらわす文字の集合を
+ * 同じ文字の集合をUTF-8で符号化したバイト列に適合する{@link Fragment}オブジェクトに変換します。
+ * バイトは{@code 0}から{@code 255}までの値の文字として扱われます。
+ */
+final class Utf8 {
+	private Utf8() {}
+
+	/**
+	 * UTF-8で1〜3バイトで符号化されるコードポイントの上限.
+	 */
+	private static final int[] MAX_BY_LENGTH = {0x7F, 0x7FF, 0xFFFF};
+
+	/**
+	 * 入力文字に適合するUTF-8のバイト列に適合する{@link Fragment}オブジェクトを構成する.
+	 * @param by 入力文字
+	 * @param factory 各状態にIDを初番するためのファクトリ
+	 * @param reverse バイト列を逆順にしたもの（末尾のバイトから順）に適合させる場合は{@code true}
+	 * @return {@link Fragment}オブジェクト
+	 */
+	static Fragment fragment(final Char by, final IDFactory factory, final boolean reverse) {
+		final int s0 = factory.product();
+		final int s1 = factory.product();
+		final Fragment fragN = new Fragment(factory, s0, s1);
+		final int[] ranges = by.ranges();
+		for (int i = 0; i < ranges.length; i += 2) {
+			for (final int[] sequence : sequences(ranges[i], ranges[i + 1])) {
+				// バイトの区間の列を順に（逆向きの場合は末尾から）連結する
+				int from = s0;
+				for (int j = 0; j < sequence.length; j += 2) {
+					final int to = j + 2 < sequence.length ? factory.product() : s1;
+					final int k = reverse ? sequence.length - 2 - j : j;
+					fragN.connect(from, byteRange(sequence[k], sequence[k + 1]), Functions.array(to));
+					from = to;
+				}
+			}
+		}
+		return fragN;
+	}
+	/**
+	 * コードポイントの区間をUTF-8で符号化したバイト列の集合を、バイトの区間の列の集合として返す.
+	 * 各列の要素は各バイトの区間の下限と上限を交互に格納します。
+	 * 列がそれぞれ表現するバイト列の集合は互いに素で、それらの和集合が区間全体の符号化結果と一致します。
+	 * @param lo 区間の下限
+	 * @param hi 区間の上限
+	 * @return バイトの区間の列の集合
+	 */
+	static List<int[]> sequences(final int lo, final int hi) {
+		final List<int[]> result = new ArrayList<int[]>();
+		split(lo, hi, result);
+		return result;
+	}
+	private static void split(final int lo, final int hi, final List<int[]> result) {
+		if (lo > hi) {
+			return;
+		}
+		// 符号化後のバイト数が異なる区間にまたがる場合は分割する
+		for (final int max : MAX_BY_LENGTH) {
+			if (lo <= max && max < hi) {
+				split(lo, max, result);
+				split(max + 1, hi, result);
+				return;
+			}
+		}
+		if (hi <= 0x7F) {
+			result.add(new int[]{lo, hi});
+			return;
+		}
+		// 後続バイトの値域がすべて埋まるように区間を分割する
+		final int n = length(lo);
+		for (int i = 1; i < n; i ++) {
+			final int m = (1 << (6 * i)) - 1;
+			if ((lo & ~m) != (hi & ~m)) {
+				if ((lo & m) != 0) {
+					split(lo, lo | m, result);
+					split((lo | m) + 1, hi, result);
+					return;
+				}
+				if ((hi & m) != m) {
+					split(lo, (hi & ~m) - 1, result);
+					split(hi & ~m, hi, result);
+					return;
+				}
+			}
+		}
+		// 下限と上限の符号化結果の各バイトがそのままバイトの区間となる
+		final byte[] los = encode(lo);
+		final byte[] his = encode(hi);
+		final int[] sequence = new int[n * 2];
+		for (int i = 0; i < n; i ++) {
+			sequence[i * 2] = los[i] & 0xFF;
+			sequence[i * 2 + 1] = his[i] & 0xFF;
+		}
+		result.add(sequence);
+	}
+	private static int length(final int cp) {
+		return cp <= 0x7F ? 1 : cp <= 0x7FF ? 2 : cp <= 0xFFFF ? 3 : 4;
+	}
+	private static byte[] encode(final int cp) {
+		final int n = length(cp);
+		final byte[] result = new byte[n];
+		if (n == 1) {
+			result[0] = (byte) cp;
+			return result;
+		}
+		int rest = cp;
+		for (int i = n - 1; i > 0; i --) {
+			result[i] = (byte) (0x80 | (rest & 0x3F));
+			rest >>>= 6;
+		}
+		result[0] = (byte) ((0xFF00 >>> n) | rest);
+		return result;
+	}
+	/**
+	 * バイトがUTF-8の後続バイト（{@code 0x80}〜{@code 0xBF}）かどうかを返す.
+	 * 後続バイトの位置は文字の境界ではありません。
+	 * @param b バイト（{@code 0}から{@code 255}までの値の文字）
+	 * @return 検証結果
+	 */
+	static boolean isContinuation(final char b) {
+		return (b & 0xC0) == 0x80;
+	}
+	/**
+	 * バイトの区間に適合する{@link Char}オブジェクトを返す.
+	 * @param lo 区間の下限
+	 * @param hi 区間の上限
+	 * @return {@link Char}オブジェクト
+	 */
+	static Char byteRange(final int lo, final int hi) {
+		if (lo == hi) {
+			return Char.khar((char) lo);
+		}
+		return Char.klass(new int[]{lo, hi});
+	}
+}
@@ -2,6 +2,27 @@ package com.m12i.regex;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
 import static org.hamcrest.CoreMatchers.*;
 import org.junit.Test;
 
@@ -230,4 +251,1484 @@ public class RegexTest {
 		assertThat(re0.matches("bbc"), is(true));
 	}
 
+	@Test
+	public void matchesTest40() {
+		final Regex re0 = Regex.compile("a[^b-z]*z");
+		assertThat(re0.matches("az"), is(true));
+		assertThat(re0.matches("a\u3042\u3044z"), is(true));
+		assertThat(re0.matches("a\uffffz"), is(true));
+		assertThat(re0.matches("a\u3042bz"), is(false));
+		final StringBuilder buff = new StringBuilder("a");
+		for (int i = 0; i < 10000; i ++) {
+			buff.append((char) ('A' + i % 26));
+		}
+		assertThat(re0.matches(buff.append('z').toString()), is(true));
+		assertThat(re0.matches(buff.append('y').toString()), is(false));
+	}
+
+	@Test
+	public void matchesTest41() {
+		// 状態数が128を超えるパターン
+		final StringBuilder buff = new StringBuilder();
+		for (int i = 0; i < 100; i ++) {
+			buff.append((char) ('a' + i % 26));
+		}
+		final String literal = buff.toString();
+		final Regex re0 = Regex.compile(literal + "(x|y)*");
+		assertThat(re0.matches(literal), is(true));
+		assertThat(re0.matches(literal + "xyyx"), is(true));
+		assertThat(re0.matches(literal + "xyz"), is(false));
+		assertThat(re0.matches(literal.substring(1)), is(false));
+	}
+
+	@Test
+	public void eagerDfaTest00() {
+		final String[] patterns = {"ab*", "a[b-z]+", "a[^b-z]*", "(a|b)*c", "(a|b)+c", "a(aa|ab)", "(a|b)*a(a|b)"};
+		for (final String pattern : patterns) {
+			final Regex lazy = Regex.compile(pattern);
+			final Regex eager = Regex.compile(pattern, Options.EAGER_DFA);
+			assertThat(eager.options.eagerDfa, is(true));
+			for (final String input : inputs("abcz", 5)) {
+				assertThat(pattern + " / " + input, eager.matches(input), is(lazy.matches(input)));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void eagerDfaTest01() {
+		// 状態の数がパターンの長さに対して指数的に増加する
+		Regex.compile("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)", Options.EAGER_DFA.stateLimit(32));
+	}
+
+	@Test
+	public void eagerDfaTest02() {
+		final Regex re0 = Regex.compile("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)", Options.EAGER_DFA.stateLimit(256));
+		assertThat(re0.matches("bbbabbbbb"), is(true));
+		assertThat(re0.matches("bbbbabbbb"), is(false));
+	}
+
+	private static String[] inputs(final String chars, final int maxLength) {
+		final List<String> result = new ArrayList<String>();
+		result.add("");
+		for (int i = 0; i < result.size(); i ++) {
+			final String prefix = result.get(i);
+			if (prefix.length() == maxLength) {
+				break;
+			}
+			for (final char c : chars.toCharArray()) {
+				result.add(prefix + c);
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Test
+	public void concurrencyTest00() throws Exception {
+		// 状態数の多いパターンを64スレッドで同時に使用して遅延構築される状態を共有する
+		final String pattern = "(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)[^c]*";
+		final Regex re0 = Regex.compile(pattern);
+		final Pattern expected = Pattern.compile(pattern);
+		final int threads = 64;
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final CountDownLatch gate = new CountDownLatch(1);
+		final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		try {
+			for (int t = 0; t < threads; t ++) {
+				final long seed = t;
+				results.add(pool.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						final Random random = new Random(seed);
+						final StringBuilder buff = new StringBuilder();
+						int mismatches = 0;
+						gate.await();
+						for (int i = 0; i < 2000; i ++) {
+							buff.setLength(0);
+							final int len = random.nextInt(24);
+							for (int j = 0; j < len; j ++) {
+								buff.append("abcd".charAt(random.nextInt(4)));
+							}
+							final String input = buff.toString();
+							if (re0.matches(input) != expected.matcher(input).matches()) {
+								mismatches ++;
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+			gate.countDown();
+			for (final Future<Integer> result : results) {
+				assertThat(result.get(), is(0));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void cacheLimitTest00() {
+		// 状態の数がキャッシュ上限を大きく超えるパターン
+		final String pattern = "(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)";
+		final Regex re0 = Regex.compile(pattern, Options.DEFAULT.cacheLimit(16));
+		final Pattern expected = Pattern.compile(pattern);
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (int i = 0; i < 100; i ++) {
+			buff.setLength(0);
+			final int len = random.nextInt(500);
+			for (int j = 0; j < len; j ++) {
+				buff.append("ab".charAt(random.nextInt(2)));
+			}
+			final String input = buff.toString();
+			assertThat(input, re0.matches(input), is(expected.matcher(input).matches()));
+		}
+		assertThat(re0.cacheClearCount() > 0, is(true));
+		assertThat(re0.fallbackCount() > 0, is(true));
+	}
+
+	@Test
+	public void cacheLimitTest01() {
+		final Regex re0 = Regex.compile("(a|b)*a(a|b)(a|b)", Options.DEFAULT.cacheLimit(64));
+		assertThat(re0.matches("abababbbaab"), is(true));
+		assertThat(re0.matches("abababbbbab"), is(false));
+		assertThat(re0.cacheClearCount(), is(0L));
+		assertThat(re0.fallbackCount(), is(0L));
+	}
+	
+	@Test
+	public void regexCacheTest00() {
+		final RegexCache cache = new RegexCache(RegexCache.DEFAULT_MAXIMUM_WEIGHT);
+		final Regex re0 = cache.compile("abc", Options.DEFAULT);
+		final Regex re1 = cache.compile("abc", Options.DEFAULT);
+		final Regex re2 = cache.compile("abc", Options.EAGER_DFA);
+		assertThat(re0 == re1, is(true));
+		assertThat(re0 == re2, is(false));
+		assertThat(cache.hitCount(), is(1L));
+		assertThat(cache.missCount(), is(2L));
+		assertThat(cache.size(), is(2));
+		assertThat(cache.weight() > 0, is(true));
+		
+		final Regex re3 = Regex.compile("abc", Options.DEFAULT.useCache(false));
+		final Regex re4 = Regex.compile("abc", Options.DEFAULT.useCache(false));
+		assertThat(re3 == re4, is(false));
+		assertThat(re3.matches("abc"), is(true));
+	}
+	
+	@Test
+	public void regexCacheTest01() {
+		final Regex re0 = Regex.compileWithoutCache("(a|b)*x", Options.DEFAULT);
+		final RegexCache cache = new RegexCache(re0.footprint() * 2);
+		final Regex re1 = cache.compile("(a|b)*x", Options.DEFAULT);
+		cache.compile("(a|b)*y", Options.DEFAULT);
+		// もっとも長いあいだ使用されていないものから破棄される
+		cache.compile("(a|b)*x", Options.DEFAULT);
+		cache.compile("(a|b)*z", Options.DEFAULT);
+		assertThat(cache.evictionCount(), is(1L));
+		assertThat(cache.size(), is(2));
+		assertThat(cache.weight() <= cache.maximumWeight, is(true));
+		assertThat(cache.compile("(a|b)*x", Options.DEFAULT) == re1, is(true));
+		cache.compile("(a|b)*y", Options.DEFAULT);
+		assertThat(cache.missCount(), is(4L));
+	}
+	
+	@Test
+	public void regexCacheTest02() throws Exception {
+		final RegexCache cache = new RegexCache(RegexCache.DEFAULT_MAXIMUM_WEIGHT);
+		final int threads = 16;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final List<Future<Regex>> results = new ArrayList<Future<Regex>>();
+		try {
+			for (int t = 0; t < threads; t ++) {
+				results.add(executor.submit(new Callable<Regex>() {
+					@Override
+					public Regex call() throws Exception {
+						latch.await();
+						return cache.compile("((a|b)*a(a|b)(a|b))+c", Options.EAGER_DFA);
+					}
+				}));
+			}
+			latch.countDown();
+			final Regex first = results.get(0).get();
+			for (final Future<Regex> result : results) {
+				assertThat(result.get() == first, is(true));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(cache.missCount(), is(1L));
+		assertThat(cache.hitCount(), is((long) threads - 1));
+	}
+	
+	@Test
+	public void regexCacheTest03() {
+		// パターンマッチで導出された状態の分も重みに反映され、重みの合計は上限を超えない
+		final String pattern = "(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)";
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (int i = 0; i < 5000; i ++) {
+			buff.append("abc".charAt(random.nextInt(3)));
+		}
+		// 同じ入力文字列で状態を導出させた後の重みをもとに上限を決める
+		final Regex grown = Regex.compileWithoutCache(pattern, Options.DEFAULT);
+		final Regex.Matcher m0 = grown.matcher(buff);
+		while (m0.find()) {
+			// 状態を導出させる
+		}
+		final RegexCache cache = new RegexCache(grown.footprint() + 1024);
+		final Regex re0 = cache.compile(pattern, Options.DEFAULT);
+		cache.compile("xyz", Options.DEFAULT);
+		assertThat(cache.evictionCount(), is(0L));
+		final Regex.Matcher m1 = re0.matcher(buff);
+		while (m1.find()) {
+			// 状態を導出させる
+		}
+		assertThat(cache.compile(pattern, Options.DEFAULT) == re0, is(true));
+		assertThat(cache.evictionCount(), is(1L));
+		assertThat(cache.weight(), is(re0.footprint()));
+		assertThat(cache.weight() <= cache.maximumWeight, is(true));
+	}
+
+	@Test
+	public void findTest00() {
+		final Regex re0 = Regex.compile("hel+o");
+		final Regex.Matcher m0 = re0.matcher("say hello world, say helllo");
+		assertThat(m0.find(), is(true));
+		assertThat(m0.start(), is(4));
+		assertThat(m0.end(), is(9));
+		assertThat(m0.group(), is("hello"));
+		assertThat(m0.find(), is(true));
+		assertThat(m0.start(), is(21));
+		assertThat(m0.group(), is("helllo"));
+		assertThat(m0.find(), is(false));
+		assertThat(m0.find(5), is(true));
+		assertThat(m0.start(), is(21));
+		assertThat(re0.find("help"), is(false));
+		try {
+			m0.find(28);
+			fail();
+		} catch (final IndexOutOfBoundsException e) {
+			// OK
+		}
+	}
+	
+	@Test
+	public void findTest01() {
+		// 空文字列に適合する場合は次の探索を1文字後から開始する
+		final Regex re0 = Regex.compile("a*");
+		final java.util.regex.Matcher expected = Pattern.compile("a*").matcher("baaacaa");
+		for (final MatchResult actual : re0.findAll("baaacaa")) {
+			assertThat(expected.find(), is(true));
+			assertThat(actual.start(), is(expected.start()));
+			assertThat(actual.end(), is(expected.end()));
+		}
+		assertThat(expected.find(), is(false));
+	}
+	
+	@Test
+	public void findTest02() {
+		// もっとも左側からはじまるもののうちもっとも長いものを選択する
+		final String[] patterns = {"ab|a|bab", "(a|b)*c", "a(ba)*", "b+a|ab*", "(ab|b)*a*", "[^a]a.b"};
+		final Random random = new Random(0);
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern);
+			for (int i = 0; i < 200; i ++) {
+				final StringBuilder buff = new StringBuilder();
+				final int len = random.nextInt(20);
+				for (int j = 0; j < len; j ++) {
+					buff.append("abc".charAt(random.nextInt(3)));
+				}
+				final String input = buff.toString();
+				final Regex.Matcher m0 = re0.matcher(input);
+				int from = 0;
+				while (from <= input.length()) {
+					final int[] expected = leftmostLongest(re0, input, from);
+					assertThat(pattern + " " + input, m0.find(), is(expected != null));
+					if (expected == null) {
+						break;
+					}
+					assertThat(pattern + " " + input, m0.start(), is(expected[0]));
+					assertThat(pattern + " " + input, m0.end(), is(expected[1]));
+					from = expected[0] == expected[1] ? expected[1] + 1 : expected[1];
+				}
+			}
+		}
+	}
+	@Test
+	public void findTest03() {
+		// 前方走査が適合の終了位置を超えて末尾まで進むパターンでも、すべての適合を求める評価の回数は入力文字列の長さに比例する
+		final Regex re0 = Regex.compile("x+y|x");
+		final StringBuilder buff = new StringBuilder();
+		for (int i = 0; i < 20000; i ++) {
+			buff.append('x');
+		}
+		final int[] reads = {0};
+		final CharSequence input = new CharSequence() {
+			@Override
+			public char charAt(final int index) {
+				reads[0] ++;
+				return buff.charAt(index);
+			}
+			@Override
+			public int length() {
+				return buff.length();
+			}
+			@Override
+			public CharSequence subSequence(final int start, final int end) {
+				return buff.subSequence(start, end);
+			}
+		};
+		final Regex.Matcher m0 = re0.matcher(input);
+		int count = 0;
+		while (m0.find()) {
+			assertThat(m0.start(), is(count));
+			assertThat(m0.end(), is(count + 1));
+			count ++;
+		}
+		assertThat(count, is(20000));
+		// 記録がなければ各呼び出しが末尾まで走査するため約2億回となる
+		assertThat(reads[0] < 20000 * (DFA.Trail.STRIDE + 8), is(true));
+		
+		// 末尾に y があれば全体が1つの適合となる
+		buff.append('y');
+		final Regex.Matcher m1 = re0.matcher(input);
+		assertThat(m1.find(), is(true));
+		assertThat(m1.end(), is(20001));
+		assertThat(m1.find(), is(false));
+	}
+	private static int[] leftmostLongest(final Regex re, final String input, final int from) {
+		for (int start = from; start <= input.length(); start ++) {
+			for (int end = input.length(); end >= start; end --) {
+				if (re.matches(input.substring(start, end))) {
+					return new int[]{start, end};
+				}
+			}
+		}
+		return null;
+	}
+	
+	@Test
+	public void lookingAtTest00() {
+		// デフォルトは最短一致
+		final Regex.Matcher m0 = Regex.compile("a+").matcher("aaab");
+		assertThat(m0.lookingAt(), is(true));
+		assertThat(m0.end(), is(1));
+		assertThat(m0.group(), is("a"));
+		final Regex.Matcher m1 = Regex.compile("a+", Options.DEFAULT.longestMatch(true)).matcher("aaab");
+		assertThat(m1.lookingAt(), is(true));
+		assertThat(m1.end(), is(3));
+		assertThat(m1.group(), is("aaa"));
+		final Regex.Matcher m2 = Regex.compile("a+", Options.EAGER_DFA.longestMatch(true)).matcher("aaab");
+		assertThat(m2.lookingAt(), is(true));
+		assertThat(m2.end(), is(3));
+	}
+	
+	@Test
+	public void lookingAtTest01() {
+		// 空文字列に適合する場合
+		final Regex.Matcher m0 = Regex.compile("a*").matcher("baa");
+		assertThat(m0.lookingAt(), is(true));
+		assertThat(m0.end(), is(0));
+		assertThat(Regex.compile("hel+o").lookingAt("hellllo world"), is(true));
+		assertThat(Regex.compile("hel+o").lookingAt("help"), is(false));
+		assertThat(Regex.compile("hel+o", Options.EAGER_DFA).lookingAt("help"), is(false));
+		final Regex.Matcher m1 = Regex.compile("(ab)*", Options.EAGER_DFA.longestMatch(true)).matcher("ababaab");
+		assertThat(m1.lookingAt(), is(true));
+		assertThat(m1.end(), is(4));
+	}
+	
+	@Test
+	public void charSequenceTest00() {
+		final Regex re0 = Regex.compile("hel+o");
+		final StringBuilder buff = new StringBuilder("say hello");
+		final Regex.Matcher m0 = re0.matcher(buff);
+		assertThat(m0.find(), is(true));
+		final CharSequence group = m0.groupSequence();
+		assertThat(group.toString(), is("hello"));
+		assertThat(group.subSequence(1, 3).toString(), is("el"));
+		// ビューは入力文字シーケンスを参照する
+		buff.setCharAt(4, 'j');
+		assertThat(group.toString(), is("jello"));
+		
+		final char[] chars = "xxhelloxx".toCharArray();
+		final Regex.Matcher m1 = re0.matcher(chars, 2, 5);
+		assertThat(m1.matches(), is(true));
+		assertThat(m1.end(), is(5));
+		assertThat(re0.matcher(chars, 1, 6).matches(), is(false));
+		assertThat(re0.matcher(chars, 1, 6).find(), is(true));
+	}
+	
+	@Test
+	public void charSequenceTest01() {
+		final Regex re0 = Regex.compile("a+b");
+		final Regex.Matcher m0 = re0.matcher("aab aaab ab");
+		assertThat(m0.region(4, 8).matches(), is(true));
+		assertThat(m0.start(), is(4));
+		assertThat(m0.end(), is(8));
+		assertThat(m0.region(4, 7).find(), is(false));
+		assertThat(m0.region(1, 11).lookingAt(), is(true));
+		assertThat(m0.group(), is("ab"));
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(), is("aaab"));
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(), is("ab"));
+		assertThat(m0.find(), is(false));
+		assertThat(m0.reset().regionEnd(), is(11));
+	}
+	
+	@Test
+	public void charSequenceTest02() {
+		// 前方一致型のパターンマッチは適合する部分文字列を決定するのに必要な文字だけを評価する
+		final CountingSequence input = new CountingSequence(1 << 20);
+		final Regex.Matcher m0 = Regex.compile("a+b", Options.DEFAULT.longestMatch(true)).matcher(input);
+		assertThat(m0.lookingAt(), is(true));
+		assertThat(m0.end(), is(3));
+		assertThat(input.count < 10, is(true));
+		input.count = 0;
+		assertThat(Regex.compile("ab*").matches(input), is(false));
+		assertThat(input.count < 10, is(true));
+	}
+	private static final class CountingSequence implements CharSequence {
+		private final int length;
+		int count = 0;
+		CountingSequence(final int length) {
+			this.length = length;
+		}
+		@Override
+		public int length() {
+			return length;
+		}
+		@Override
+		public char charAt(final int index) {
+			count ++;
+			return index < 2 ? 'a' : index == 2 ? 'b' : 'c';
+		}
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	@Test
+	public void utf8Test00() {
+		// ドットの符号化結果はサロゲート領域を除くすべてのコードポイントのUTF-8表現にちょうど1つずつ適合する
+		final Charset utf8 = Charset.forName("UTF-8");
+		final int[] ranges = Char.DOT.ranges();
+		final List<int[]> sequences = new ArrayList<int[]>();
+		for (int i = 0; i < ranges.length; i += 2) {
+			sequences.addAll(Utf8.sequences(ranges[i], ranges[i + 1]));
+		}
+		for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp += (cp < 0x10000 ? 1 : 7)) {
+			if (Character.MIN_SURROGATE <= cp && cp <= Character.MAX_SURROGATE) {
+				continue;
+			}
+			final byte[] bytes = new String(Character.toChars(cp)).getBytes(utf8);
+			int count = 0;
+			for (final int[] sequence : sequences) {
+				if (sequence.length != bytes.length * 2) {
+					continue;
+				}
+				boolean matched = true;
+				for (int j = 0; j < bytes.length; j ++) {
+					final int b = bytes[j] & 0xFF;
+					matched &= sequence[j * 2] <= b && b <= sequence[j * 2 + 1];
+				}
+				count += matched ? 1 : 0;
+			}
+			assertThat(Integer.toHexString(cp), count, is(1));
+		}
+	}
+	
+	@Test
+	public void utf8Test01() {
+		final Charset utf8 = Charset.forName("UTF-8");
+		final String[] patterns = {"あ(い|う)*え", "[^あ]+", "a.c", "[αβγ]+δ", "(.|x)*ん"};
+		final String chars = "あいうえおαβγδaxcん\ud83d\ude00";
+		final Random random = new Random(0);
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern);
+			for (int i = 0; i < 300; i ++) {
+				final StringBuilder buff = new StringBuilder();
+				final int len = random.nextInt(8);
+				for (int j = 0; j < len; j ++) {
+					final int k = random.nextInt(chars.length() - 1);
+					// サロゲート・ペアは分割しない
+					if (Character.isHighSurrogate(chars.charAt(k))) {
+						buff.append(chars, k, k + 2);
+					} else if (!Character.isLowSurrogate(chars.charAt(k))) {
+						buff.append(chars.charAt(k));
+					}
+				}
+				final String input = buff.toString();
+				final byte[] bytes = input.getBytes(utf8);
+				// サロゲート・ペアはバイト単位では1文字として扱われる
+				final boolean supplementary = input.length() != input.codePointCount(0, input.length());
+				if (!supplementary) {
+					assertThat(pattern + " " + input, re0.matches(bytes), is(re0.matches(input)));
+					assertThat(pattern + " " + input, re0.find(bytes), is(re0.find(input)));
+				}
+				final Regex.Matcher m0 = re0.matcher(ByteBuffer.wrap(bytes));
+				if (m0.find()) {
+					final String group = m0.group();
+					assertThat(new String(bytes, 0, m0.start(), utf8) + group, is(new String(bytes, 0, m0.end(), utf8)));
+					assertThat(re0.matches(group.getBytes(utf8)), is(true));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void utf8Test02() {
+		final Charset utf8 = Charset.forName("UTF-8");
+		final Regex re0 = Regex.compile("b.d", Options.EAGER_DFA);
+		final byte[] bytes = "xxaあbｃdb\ud83d\ude00d".getBytes(utf8);
+		final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes);
+		direct.flip();
+		direct.position(2);
+		final Regex.Matcher m0 = re0.matcher(direct);
+		assertThat(m0.find(), is(true));
+		assertThat(m0.start(), is(4));
+		assertThat(m0.end(), is(9));
+		assertThat(m0.group(), is("bｃd"));
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(), is("b\ud83d\ude00d"));
+		assertThat(m0.find(), is(false));
+		assertThat(direct.position(), is(2));
+		assertThat(re0.lookingAt(direct), is(false));
+		direct.position(6);
+		assertThat(re0.lookingAt(direct), is(true));
+		assertThat(re0.matches("bあd".getBytes(utf8)), is(true));
+		assertThat(re0.matches("bあいd".getBytes(utf8)), is(false));
+	}
+	
+	@Test
+	public void utf8Test03() {
+		// 空文字列に適合するパターンでもバイト単位では文字の途中の位置に適合しない
+		final Charset utf8 = Charset.forName("UTF-8");
+		final String[] patterns = {"\\B\\B", "( )*", "x*", "\\b", "é*"};
+		final String[] inputs = {"aé", "あい う", "é é", ""};
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern);
+			for (final String input : inputs) {
+				final byte[] bytes = input.getBytes(utf8);
+				// 文字単位の位置をバイト単位の位置に変換して比較する
+				final List<String> expected = new ArrayList<String>();
+				final Regex.Matcher m0 = re0.matcher(input);
+				while (m0.find()) {
+					expected.add(input.substring(0, m0.start()).getBytes(utf8).length
+							+ "-" + input.substring(0, m0.end()).getBytes(utf8).length);
+				}
+				final List<String> actual = new ArrayList<String>();
+				final Regex.Matcher m1 = re0.matcher(ByteBuffer.wrap(bytes));
+				while (m1.find()) {
+					actual.add(m1.start() + "-" + m1.end());
+				}
+				assertThat(pattern + " " + input, actual, is(expected));
+				// ストリームには1バイトずつ与える
+				final List<String> streamed = new ArrayList<String>();
+				final StreamMatcher m2 = re0.byteStreamMatcher(new MatchHandler() {
+					@Override
+					public boolean handle(final StreamMatcher m) {
+						streamed.add(m.start() + "-" + m.end());
+						return true;
+					}
+				});
+				for (int i = 0; i < bytes.length; i ++) {
+					m2.feed(bytes, i, 1);
+				}
+				m2.finish();
+				assertThat(pattern + " " + input, streamed, is(expected));
+				assertThat(m2.matchCount(), is((long) expected.size()));
+			}
+		}
+	}
+	
+	@Test
+	public void scanTest00() throws Exception {
+		final Charset utf8 = Charset.forName("UTF-8");
+		final StringBuilder buff = new StringBuilder();
+		final Random random = new Random(0);
+		for (int i = 0; i < 200; i ++) {
+			// ウィンドウより長い行も含める
+			final int len = random.nextInt(i % 50 == 0 ? 100 : 12);
+			for (int j = 0; j < len; j ++) {
+				buff.append("abcあ ".charAt(random.nextInt(5)));
+			}
+			buff.append('\n');
+		}
+		buff.append("末尾のabあc");
+		final String content = buff.toString();
+		final Path file = Files.createTempFile("regex", ".txt");
+		try {
+			Files.write(file, content.getBytes(utf8));
+			final Regex re0 = Regex.compile("b(あ|c)+");
+			final List<String> expected = new ArrayList<String>();
+			final String[] lines = content.split("\n", -1);
+			for (int i = 0; i < lines.length; i ++) {
+				final Regex.Matcher m = re0.matcher(lines[i]);
+				if (m.find()) {
+					expected.add((i + 1) + ":" + lines[i] + ":" + m.group());
+				}
+			}
+			for (final int window : new int[]{16, 64, Regex.SCAN_WINDOW}) {
+				final List<String> actual = new ArrayList<String>();
+				final long count = re0.scan(file, new LineHandler() {
+					@Override
+					public boolean handle(final Line line) {
+						final byte[] bytes = new byte[(int) (line.matchEnd() - line.matchStart())];
+						final ByteBuffer view = line.bytes();
+						view.position((int) (line.matchStart() - line.offset()));
+						view.get(bytes);
+						actual.add(line.number() + ":" + line.text() + ":" + new String(bytes, utf8));
+						return true;
+					}
+				}, window);
+				assertThat(actual, is(expected));
+				assertThat(count, is((long) expected.size()));
+			}
+			// コールバックが false を返せば走査を中断する
+			assertThat(re0.scan(file, new LineHandler() {
+				@Override
+				public boolean handle(final Line line) {
+					return false;
+				}
+			}), is(1L));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void streamTest00() {
+		// 入力をどのように分割しても find() を繰り返した場合と同じ結果になる
+		final String[] patterns = {"ab|a|bab", "(a|b)*c", "a*", "b+a|ab*", "[^a]a.b"};
+		final Random random = new Random(0);
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern, random.nextBoolean() ? Options.DEFAULT : Options.EAGER_DFA);
+			for (int i = 0; i < 100; i ++) {
+				final StringBuilder buff = new StringBuilder();
+				final int len = random.nextInt(40);
+				for (int j = 0; j < len; j ++) {
+					buff.append("abc".charAt(random.nextInt(3)));
+				}
+				final String input = buff.toString();
+				final List<String> expected = new ArrayList<String>();
+				for (final MatchResult r : re0.findAll(input)) {
+					expected.add(r.start() + "-" + r.end() + ":" + r.group());
+				}
+				final List<String> actual = new ArrayList<String>();
+				final StreamMatcher m0 = re0.streamMatcher(new MatchHandler() {
+					@Override
+					public boolean handle(final StreamMatcher m) {
+						actual.add(m.start() + "-" + m.end() + ":" + m.group());
+						return true;
+					}
+				});
+				int from = 0;
+				while (from < input.length()) {
+					final int to = Math.min(input.length(), from + random.nextInt(5));
+					m0.feed(input.subSequence(from, to));
+					from = to;
+				}
+				m0.finish();
+				assertThat(pattern + " " + input, actual, is(expected));
+			}
+		}
+	}
+	
+	@Test
+	public void streamTest01() throws Exception {
+		// 適合途中の部分文字列がなければ入力は保持されない
+		final Regex re0 = Regex.compile("x(a|b)*y");
+		final List<Long> starts = new ArrayList<Long>();
+		final StreamMatcher m0 = re0.streamMatcher(new MatchHandler() {
+			@Override
+			public boolean handle(final StreamMatcher m) {
+				starts.add(m.start());
+				return true;
+			}
+		});
+		final char[] chunk = "ab abc xaby cab".toCharArray();
+		for (int i = 0; i < 10000; i ++) {
+			m0.feed(chunk, 0, chunk.length);
+			assertThat(m0.buffered() <= chunk.length, is(true));
+		}
+		m0.finish();
+		assertThat(starts.size(), is(10000));
+		assertThat(starts.get(9999), is(9999L * chunk.length + 7));
+		assertThat(m0.position(), is(10000L * chunk.length));
+		
+		final Charset utf8 = Charset.forName("UTF-8");
+		final List<String> groups = new ArrayList<String>();
+		final MatchHandler handler = new MatchHandler() {
+			@Override
+			public boolean handle(final StreamMatcher m) {
+				groups.add(m.start() + ":" + m.group());
+				return groups.size() < 2;
+			}
+		};
+		final Regex re1 = Regex.compile("あ[^x]*う");
+		assertThat(re1.scan(new ByteArrayInputStream("xあいうxあうxあう".getBytes(utf8)), handler), is(2L));
+		assertThat(re1.scan(new StringReader("あいうxあう"), handler), is(1L));
+		assertThat(groups.toString(), is("[1:あいう, 11:あう, 0:あいう]"));
+	}
+
+	@Test
+	public void regexSetTest00() {
+		final RegexSet set0 = RegexSet.compile("abc", "a.*", "[0-9]+", "z*", "x|y");
+		assertThat(set0.size(), is(5));
+		assertThat(set0.matches("abc").toString(), is("{0, 1}"));
+		assertThat(set0.matches("").toString(), is("{3}"));
+		assertThat(set0.matches("123").toString(), is("{2}"));
+		assertThat(set0.matches("zzz").toString(), is("{3}"));
+		assertThat(set0.matches("zzy").toString(), is("{}"));
+		assertThat(set0.find("zzz").toString(), is("{3}"));
+		assertThat(set0.find("-abc-9y").toString(), is("{0, 1, 2, 3, 4}"));
+		assertThat(set0.findAny("-"), is(true));
+		
+		final RegexSet set1 = RegexSet.compile("ab+c", "b+");
+		assertThat(set1.find("xabbd").toString(), is("{1}"));
+		assertThat(set1.findAny("xyz"), is(false));
+		assertThat(set1.findAny("xyzb"), is(true));
+	}
+	@Test
+	public void regexSetTest01() {
+		// 個別の正規表現オブジェクトによる結果と一致する
+		final List<String> patterns = Arrays.asList("a+b", "(ab)*", "b[ac]", "c.a", "[^a]+", "abc|bca", "a?a?b");
+		final Random random = new Random(13);
+		for (final Options options : new Options[]{Options.DEFAULT, Options.EAGER_DFA, Options.DEFAULT.cacheLimit(4)}) {
+			final RegexSet set = RegexSet.compile(patterns, options);
+			final List<Regex> regexes = new ArrayList<Regex>();
+			for (final String pattern : patterns) {
+				regexes.add(Regex.compile(pattern, options));
+			}
+			for (int i = 0; i < 500; i ++) {
+				final StringBuilder buff = new StringBuilder();
+				final int length = random.nextInt(8);
+				for (int j = 0; j < length; j ++) {
+					buff.append("abc".charAt(random.nextInt(3)));
+				}
+				final String input = buff.toString();
+				final BitSet matches = new BitSet();
+				final BitSet found = new BitSet();
+				for (int k = 0; k < regexes.size(); k ++) {
+					matches.set(k, regexes.get(k).matches(input));
+					found.set(k, regexes.get(k).find(input));
+				}
+				assertThat(input, set.matches(input), is(matches));
+				assertThat(input, set.find(input), is(found));
+				assertThat(input, set.findAny(input), is(!found.isEmpty()));
+			}
+		}
+	}
+
+	@Test
+	public void literalsTest00() {
+		final Literals l0 = Literals.of(new Parser(new Lexer("ERROR.*timeout")).parse());
+		assertThat(l0.exact, nullValue());
+		assertThat(l0.prefix, is("ERROR"));
+		assertThat(l0.suffix, is("timeout"));
+		assertThat(l0.inner, is("timeout"));
+		final Literals l1 = Literals.of(new Parser(new Lexer("x(abc|abd)y")).parse());
+		assertThat(l1.prefix, is("xab"));
+		assertThat(l1.suffix, is("y"));
+		final Literals l2 = Literals.of(new Parser(new Lexer("[0-9]+ms(elapsed)*")).parse());
+		assertThat(l2.prefix, is(""));
+		assertThat(l2.inner, is("ms"));
+		final Literals l3 = Literals.of(new Parser(new Lexer("abc")).parse());
+		assertThat(l3.exact, is("abc"));
+		assertThat(l3.utf8().exact, is("abc"));
+		assertThat(Literals.of(new Parser(new Lexer("あ")).parse()).utf8().exact, is("\u00E3\u0081\u0082"));
+		
+		final Literals.Finder f0 = new Literals.Finder("abab");
+		assertThat(f0.indexOf(CharBuffer.wrap("aabababab"), 0, 9), is(1));
+		assertThat(f0.indexOf(CharBuffer.wrap("aabababab"), 2, 9), is(3));
+		assertThat(f0.indexOf(CharBuffer.wrap("aabababab"), 2, 6), is(-1));
+		assertThat(f0.indexOf("aabababab", 4, 9), is(5));
+	}
+	@Test
+	public void literalsTest01() {
+		// 必須リテラルによる事前検証はパターンマッチの結果を変えない
+		final String[] patterns = {"ab.*cd", "x(ab|ac)y", "(ab)+c", "a[bc]*ab", "abc|abd", "(abc)*", "[^a]xy", "あい.*う"};
+		final Charset utf8 = Charset.forName("UTF-8");
+		final Random random = new Random(14);
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern);
+			final Pattern p0 = Pattern.compile(pattern);
+			for (int i = 0; i < 300; i ++) {
+				final StringBuilder buff = new StringBuilder();
+				final int len = random.nextInt(16);
+				for (int j = 0; j < len; j ++) {
+					buff.append("abcdxyあいう".charAt(random.nextInt(9)));
+				}
+				final String input = buff.toString();
+				assertThat(pattern + " " + input, re0.matches(input), is(p0.matcher(input).matches()));
+				assertThat(pattern + " " + input, re0.matches(CharBuffer.wrap(input)), is(p0.matcher(input).matches()));
+				assertThat(pattern + " " + input, re0.matches(input.getBytes(utf8)), is(p0.matcher(input).matches()));
+				assertThat(pattern + " " + input, re0.lookingAt(input), is(p0.matcher(input).lookingAt()));
+				
+				final Regex.Matcher m0 = re0.matcher(CharBuffer.wrap(input));
+				int from = 0;
+				while (true) {
+					int[] expected = null;
+					for (int start = from; start <= input.length() && expected == null; start ++) {
+						for (int end = input.length(); end >= start; end --) {
+							if (p0.matcher(input.substring(start, end)).matches()) {
+								expected = new int[]{start, end};
+								break;
+							}
+						}
+					}
+					assertThat(pattern + " " + input, m0.find(), is(expected != null));
+					if (expected == null) {
+						break;
+					}
+					assertThat(pattern + " " + input, m0.start(), is(expected[0]));
+					assertThat(pattern + " " + input, m0.end(), is(expected[1]));
+					from = expected[0] == expected[1] ? expected[1] + 1 : expected[1];
+				}
+				assertThat(pattern + " " + input, re0.find(input.getBytes(utf8)), is(p0.matcher(input).find()));
+			}
+		}
+	}
+
+	@Test
+	public void dictionaryTest00() {
+		// 多数のリテラルの選択や長いリテラルでも構文木の深さは抑えられる
+		final Random random = new Random(15);
+		final StringBuilder pattern = new StringBuilder();
+		final List<String> words = new ArrayList<String>();
+		for (int i = 0; i < 20000; i ++) {
+			final StringBuilder word = new StringBuilder();
+			final int len = 3 + random.nextInt(6);
+			for (int j = 0; j < len; j ++) {
+				word.append((char) ('a' + random.nextInt(26)));
+			}
+			words.add(word.toString());
+			pattern.append(i == 0 ? "" : "|").append(word);
+		}
+		final Regex re0 = Regex.compile(pattern.toString(), Options.DEFAULT.useCache(false));
+		assertThat(re0.matches(words.get(12345)), is(true));
+		assertThat(re0.matches(words.get(12345) + "!"), is(false));
+		final Regex.Matcher m0 = re0.matcher("!!" + words.get(777) + "!!");
+		assertThat(m0.find(), is(true));
+		assertThat(m0.start(), is(2));
+		assertThat(m0.group(), is(words.get(777)));
+		
+		final StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < 20000; i ++) {
+			literal.append((char) ('a' + i % 26));
+		}
+		final Regex re1 = Regex.compile(literal.toString(), Options.DEFAULT.useCache(false));
+		assertThat(re1.matches(literal), is(true));
+		assertThat(re1.find("x" + literal), is(true));
+	}
+	@Test
+	public void dictionaryTest02() {
+		// 辞書照合オートマトンで評価されるパターンはNFAの状態の数の見積もりが上限を超えてもコンパイルできる
+		final Random random = new Random(17);
+		final StringBuilder pattern = new StringBuilder();
+		final List<String> words = new ArrayList<String>();
+		for (int i = 0; i < 80000; i ++) {
+			final StringBuilder word = new StringBuilder();
+			final int len = 4 + random.nextInt(6);
+			for (int j = 0; j < len; j ++) {
+				word.append((char) ('a' + random.nextInt(26)));
+			}
+			words.add(word.toString());
+			pattern.append(i == 0 ? "" : "|").append(word);
+		}
+		final Options options = Options.DEFAULT.useCache(false);
+		final Regex re0 = Regex.compile(pattern.toString(), options);
+		assertThat(re0.matches(words.get(54321)), is(true));
+		assertThat(re0.find("!!" + words.get(79999) + "!!"), is(true));
+		assertThat(re0.find(words.get(123).getBytes(Charset.forName("UTF-8"))), is(true));
+		
+		// NFAを構築する時点で上限が適用される
+		final Regex re1 = Regex.compile("abc|" + pattern.substring(0, 2000), options.sizeLimit(100));
+		assertThat(re1.find("xabcx"), is(true));
+		try {
+			re1.streamMatcher(new MatchHandler() {
+				@Override
+				public boolean handle(final StreamMatcher m) {
+					return true;
+				}
+			});
+			fail();
+		} catch (final IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Pattern too large."));
+		}
+		try {
+			Regex.compile("abc|(" + pattern.substring(0, 2000) + ")*", options.sizeLimit(100));
+			fail();
+		} catch (final IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Pattern too large."));
+		}
+	}
+	@Test
+	public void dictionaryTest01() {
+		// 辞書照合オートマトンはDFAと同じくもっとも左側からはじまるもののうちもっとも長いものを選択する
+		final Random random = new Random(16);
+		final Charset utf8 = Charset.forName("UTF-8");
+		final java.util.Set<String> words = new java.util.HashSet<String>();
+		final StringBuilder pattern = new StringBuilder();
+		while (words.size() < 40) {
+			final StringBuilder word = new StringBuilder();
+			final int len = 1 + random.nextInt(4);
+			for (int j = 0; j < len; j ++) {
+				word.append("abcあ".charAt(random.nextInt(4)));
+			}
+			if (words.add(word.toString())) {
+				pattern.append(words.size() == 1 ? "" : "|").append(word);
+			}
+		}
+		final Regex re0 = Regex.compile(pattern.toString());
+		final Regex re1 = Regex.compile(pattern.toString(), Options.DEFAULT.longestMatch(true));
+		for (int i = 0; i < 300; i ++) {
+			final StringBuilder buff = new StringBuilder();
+			final int len = random.nextInt(12);
+			for (int j = 0; j < len; j ++) {
+				buff.append("abcあx".charAt(random.nextInt(5)));
+			}
+			final String input = buff.toString();
+			assertThat(input, re0.matches(input), is(words.contains(input)));
+			int shortest = -1;
+			int longest = -1;
+			for (int end = 0; end <= input.length(); end ++) {
+				if (words.contains(input.substring(0, end))) {
+					shortest = shortest < 0 ? end : shortest;
+					longest = end;
+				}
+			}
+			final Regex.Matcher m0 = re0.matcher(input);
+			assertThat(input, m0.lookingAt() ? m0.end() : -1, is(shortest));
+			final Regex.Matcher m1 = re1.matcher(input);
+			assertThat(input, m1.lookingAt() ? m1.end() : -1, is(longest));
+			
+			final Regex.Matcher m2 = re0.matcher(input);
+			final Regex.Matcher m3 = re0.matcher(input.getBytes(utf8));
+			int from = 0;
+			while (true) {
+				int[] expected = null;
+				for (int start = from; start <= input.length() && expected == null; start ++) {
+					for (int end = input.length(); end >= start; end --) {
+						if (words.contains(input.substring(start, end))) {
+							expected = new int[]{start, end};
+							break;
+						}
+					}
+				}
+				assertThat(input, m2.find(), is(expected != null));
+				assertThat(input, m3.find(), is(expected != null));
+				if (expected == null) {
+					break;
+				}
+				assertThat(input, m2.start(), is(expected[0]));
+				assertThat(input, m2.end(), is(expected[1]));
+				assertThat(input, m3.group(), is(m2.group()));
+				from = expected[1];
+			}
+		}
+	}
+
+	@Test
+	public void klassTest00() {
+		final Regex re0 = Regex.compile("[\u4e00-\u9fff]+");
+		assertThat(re0.matches("漢字"), is(true));
+		assertThat(re0.matches("漢字かな"), is(false));
+		assertThat(re0.matcher("かな漢字".getBytes(Charset.forName("UTF-8"))).find(), is(true));
+		final Regex re1 = Regex.compile("[a-\u00ff]");
+		assertThat(re1.matches("\u00e9"), is(true));
+		assertThat(re1.matches("\u0100"), is(false));
+		final Regex re2 = Regex.compile("[-a^]+");
+		assertThat(re2.matches("-a^"), is(true));
+		final Regex re3 = Regex.compile("[a-c-]");
+		assertThat(re3.matches("-"), is(true));
+		assertThat(re3.matches("b"), is(true));
+		assertThat(re3.matches("d"), is(false));
+		final Regex re4 = Regex.compile("[^a-c\u3041-\u3096]");
+		assertThat(re4.matches("d"), is(true));
+		assertThat(re4.matches("あ"), is(false));
+		assertThat(re4.matcher("\ud842\udfb7".getBytes(Charset.forName("UTF-8"))).matches(), is(true));
+		try {
+			Regex.compile("[z-a]");
+			fail();
+		} catch (final IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void klassTest01() {
+		// いずれの状態遷移パスからも区別されない区間は1つの入力文字クラスにまとめられる
+		final NFA nfa0 = new Parser(new Lexer("[aeiou]x|[aeiou]y")).parse().assemble(IDFactory.create()).build();
+		final Alphabet alpha0 = nfa0.alphabet;
+		assertThat(alpha0.size(), is(4));
+		assertThat(alpha0.classOf('a'), is(alpha0.classOf('u')));
+		assertThat(alpha0.classOf('b'), is(alpha0.classOf('\uffff')));
+		assertThat(alpha0.classOf('x') == alpha0.classOf('y'), is(false));
+		// 入力文字クラスIDの表引きは文字クラスの検証と一致する
+		final Char klass = Char.klass(new int[]{'0', '9', 0x3041, 0x3096, 0x4e00, 0x9fff, 0xff10, 0xff19});
+		final NFA nfa1 = new Parser(new Lexer("[0-9\u3041-\u3096\u4e00-\u9fff\uff10-\uff19]")).parse().assemble(IDFactory.create()).build();
+		final Alphabet alpha1 = nfa1.alphabet;
+		final int member = alpha1.classOf('5');
+		for (int ch = 0; ch <= Character.MAX_VALUE; ch ++) {
+			assertThat(alpha1.classOf((char) ch) == member, is(klass.matches((char) ch)));
+		}
+	}
+
+	@Test
+	public void transitionTest00() {
+		// 同じ状態から複数の遷移がある場合（UTF-8の区間の分割など）も遷移先の状態セットは結合される
+		final Regex re0 = Regex.compile("(x[a-c\u3041-\u3096]|x[^b]|xy.)*");
+		final Pattern expected = Pattern.compile("(x[a-c\u3041-\u3096]|x[^b]|xy.)*");
+		final Random random = new Random(0);
+		final String alphabet = "xyabcあん漢";
+		final StringBuilder buff = new StringBuilder();
+		for (int i = 0; i < 200; i ++) {
+			buff.setLength(0);
+			final int len = random.nextInt(12);
+			for (int j = 0; j < len; j ++) {
+				buff.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			final String input = buff.toString();
+			assertThat(input, re0.matches(input), is(expected.matcher(input).matches()));
+			assertThat(input, re0.matcher(input.getBytes(Charset.forName("UTF-8"))).matches(), is(expected.matcher(input).matches()));
+		}
+	}
+
+	@Test
+	public void epsilonTest00() {
+		// 入れ子になったスター演算と選択は長い空文字（イプシロン）の遷移の連鎖をつくる
+		final StringBuilder pattern = new StringBuilder("a");
+		for (int i = 0; i < 300; i ++) {
+			pattern.insert(0, "((").append(")*|").append((char) ('b' + i % 20)).append(")*");
+		}
+		final Regex re0 = Regex.compile(pattern.toString(), Options.DEFAULT.useCache(false));
+		// 'a'から'u'までの文字だけで構成される文字列に適合する
+		for (final String input : new String[]{"", "a", "abc", "uaua", "abcdefghijklmnopqrstu"}) {
+			assertThat(input, re0.matches(input), is(true));
+			assertThat(input, re0.matcher("!" + input + "!").find(), is(true));
+		}
+		for (final String input : new String[]{"aaz", "zzzzb", "v"}) {
+			assertThat(input, re0.matches(input), is(false));
+		}
+	}
+
+	@Test
+	public void simulationTest00() {
+		final Options options = Options.DEFAULT.nfaSimulation(true).useCache(false);
+		final String[] patterns = {"(a|b)*a(a|b)(a|b)", "a[^b]*c", "(ab|a)(bc|c)*", "[a-c]+d|b*", "x*"};
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern, options);
+			final Pattern expected = Pattern.compile(pattern);
+			for (int i = 0; i < 100; i ++) {
+				buff.setLength(0);
+				final int len = random.nextInt(12);
+				for (int j = 0; j < len; j ++) {
+					buff.append("abcd".charAt(random.nextInt(4)));
+				}
+				final String input = buff.toString();
+				assertThat(input, re0.matches(input), is(expected.matcher(input).matches()));
+				final Regex.Matcher m0 = re0.matcher(input);
+				final Regex.Matcher m1 = Regex.compile(pattern).matcher(input);
+				while (m1.find()) {
+					assertThat(input, m0.find(), is(true));
+					assertThat(input, m0.start(), is(m1.start()));
+					assertThat(input, m0.end(), is(m1.end()));
+				}
+				assertThat(input, m0.find(), is(false));
+			}
+			assertThat(re0.cacheClearCount(), is(0L));
+		}
+		final RegexSet set0 = RegexSet.compile(Arrays.asList("abc", "b+", "[cd]d"), options);
+		final BitSet found = set0.find("xxabcdd");
+		assertThat(found.cardinality(), is(3));
+		assertThat(set0.matches("bbb").get(1), is(true));
+	}
+
+	@Test
+	public void groupTest00() {
+		final String[] patterns = {"(a|ab)(c|bcd)(d*)", "((a)|b)+", "(a*)(a|b)*(b*)", "x(y(z)|[yz]+)*", "(ab|a)(bc|c)*"};
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern);
+			final Pattern expected = Pattern.compile(pattern);
+			for (int i = 0; i < 300; i ++) {
+				buff.setLength(0);
+				final int len = random.nextInt(10);
+				for (int j = 0; j < len; j ++) {
+					buff.append("abcdxyz".charAt(random.nextInt(7)));
+				}
+				final String input = buff.toString();
+				final Regex.Matcher m0 = re0.matcher(input);
+				final java.util.regex.Matcher m1 = expected.matcher(input);
+				assertThat(input, m0.matches(), is(m1.matches()));
+				if (!m1.matches()) {
+					continue;
+				}
+				assertThat(m0.groupCount(), is(m1.groupCount()));
+				for (int g = 0; g <= m1.groupCount(); g ++) {
+					assertThat(input + " " + g, m0.start(g), is(m1.start(g)));
+					assertThat(input + " " + g, m0.end(g), is(m1.end(g)));
+					assertThat(input + " " + g, m0.group(g), is(m1.group(g)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void groupTest01() {
+		final Regex re0 = Regex.compile("([a-z]+)=([0-9]*)(;|,)");
+		final Regex.Matcher m0 = re0.matcher("x foo=12; bar=,");
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(1), is("foo"));
+		assertThat(m0.group(2), is("12"));
+		assertThat(m0.start(3), is(8));
+		final MatchResult r0 = m0.toMatchResult();
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(1), is("bar"));
+		assertThat(m0.group(2), is(""));
+		assertThat(m0.group(3), is(","));
+		assertThat(r0.group(1), is("foo"));
+		assertThat(r0.end(2), is(8));
+		assertThat(m0.find(), is(false));
+		try {
+			m0.start(4);
+			fail();
+		} catch (final IndexOutOfBoundsException e) {
+			// OK
+		}
+		final Regex re1 = Regex.compile("(a)|(b)");
+		final Regex.Matcher m1 = re1.matcher("b");
+		assertThat(m1.matches(), is(true));
+		assertThat(m1.group(1), nullValue());
+		assertThat(m1.start(1), is(-1));
+		assertThat(m1.group(2), is("b"));
+		// バイト単位のマッチャーではバイト単位の位置が返される
+		final Regex re2 = Regex.compile("(\u3042+)(.)");
+		final Regex.Matcher m2 = re2.matcher("xあああい".getBytes(Charset.forName("UTF-8")));
+		assertThat(m2.find(), is(true));
+		assertThat(m2.start(1), is(1));
+		assertThat(m2.end(1), is(10));
+		assertThat(m2.group(2), is("い"));
+	}
+
+	@Test
+	public void repeatTest00() {
+		final String[] patterns = {"[0-9]{4}-[0-9]{2}", "(ab|a){2,3}c", "a{0,2}b{2,}", "(a|b){3}", "x{0}y", "(a{1,2}){2}", "a{b", "a{,2}"};
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (final String pattern : patterns) {
+			final Regex re0 = Regex.compile(pattern);
+			final Regex re1 = Regex.compile(pattern, Options.EAGER_DFA);
+			final Pattern expected = Pattern.compile(pattern.replace("{b", "\\{b").replace("{,", "\\{,"));
+			for (int i = 0; i < 300; i ++) {
+				buff.setLength(0);
+				final int len = random.nextInt(10);
+				for (int j = 0; j < len; j ++) {
+					buff.append("ab01-xy{,2}".charAt(random.nextInt(11)));
+				}
+				final String input = buff.toString();
+				final java.util.regex.Matcher m1 = expected.matcher(input);
+				final boolean matches = m1.matches();
+				assertThat(pattern + " " + input, re1.matches(input), is(matches));
+				final Regex.Matcher m0 = re0.matcher(input);
+				assertThat(pattern + " " + input, m0.matches(), is(matches));
+				for (int g = 1; matches && g <= m1.groupCount(); g ++) {
+					assertThat(pattern + " " + input, m0.group(g), is(m1.group(g)));
+				}
+			}
+		}
+		final Regex re2 = Regex.compile("[0-9]{1000}");
+		final StringBuilder digits = new StringBuilder();
+		for (int i = 0; i < 1000; i ++) {
+			digits.append((char) ('0' + i % 10));
+		}
+		assertThat(re2.matches(digits), is(true));
+		assertThat(re2.matches(digits.substring(1)), is(false));
+	}
+
+	@Test
+	public void repeatTest01() {
+		// 回数分に展開するとNFAが巨大になるパターンは構築前に棄却される
+		for (final String pattern : new String[]{"((a|b){1000}){1000}", "a{3,2}", "a{1000000}"}) {
+			try {
+				Regex.compile(pattern, Options.DEFAULT.useCache(false));
+				fail(pattern);
+			} catch (final IllegalArgumentException e) {
+				// OK
+			}
+		}
+		assertThat(Regex.compile("(a|b){1000}").matches("ab"), is(false));
+	}
+
+	@Test
+	public void assertionTest00() {
+		final String[] patterns = {"^ab", "ab$", "^(a|b)*$", "\\bo+\\b", "\\Bo", "a\\b", "\\b", "^$", "(^|x)a", "b$|ox", "^o*\\b"};
+		final Options[] options = {Options.DEFAULT, Options.EAGER_DFA, Options.DEFAULT.nfaSimulation(true),
+				Options.DEFAULT.cacheLimit(2), Options.DEFAULT.multiline(true), Options.EAGER_DFA.multiline(true)};
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (final String pattern : patterns) {
+			for (final Options option : options) {
+				final Regex re0 = Regex.compile(pattern, option);
+				// 入力の末尾での ^ と $ の扱いはjava.util.regexと異なるため入力を改行で終えない
+				// （複数行モードの ^ はjava.util.regexでは空の入力にも適合しない）
+				final Pattern expected = Pattern.compile(pattern,
+						option.multiline ? Pattern.MULTILINE | Pattern.UNIX_LINES : Pattern.UNIX_LINES);
+				for (int i = 0; i < 200; i ++) {
+					buff.setLength(0);
+					final int len = random.nextInt(8);
+					for (int j = 0; j < len; j ++) {
+						buff.append("ab o\nx".charAt(random.nextInt(6)));
+					}
+					if (len > 0 && buff.charAt(len - 1) == '\n') {
+						buff.append('a');
+					}
+					final String input = buff.toString();
+					if (option.multiline && input.isEmpty()) {
+						continue;
+					}
+					final String message = pattern + " " + option.multiline + " " + input.replace("\n", "\\n");
+					final java.util.regex.Matcher m1 = expected.matcher(input);
+					assertThat(message, re0.matches(input), is(m1.matches()));
+					m1.reset();
+					assertThat(message, re0.matcher(input).lookingAt(), is(m1.lookingAt()));
+					final List<String> actual = new ArrayList<String>();
+					final List<String> actualBytes = new ArrayList<String>();
+					final List<String> found = new ArrayList<String>();
+					final Regex.Matcher m0 = re0.matcher(input);
+					while (m0.find()) {
+						actual.add(m0.start() + "-" + m0.end());
+					}
+					final Regex.Matcher m2 = re0.matcher(input.getBytes());
+					while (m2.find()) {
+						actualBytes.add(m2.start() + "-" + m2.end());
+					}
+					m1.reset();
+					while (m1.find()) {
+						found.add(m1.start() + "-" + m1.end());
+					}
+					assertThat(message, actual, is(found));
+					assertThat(message, actualBytes, is(found));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void assertionTest01() {
+		// 複数行モードの ^ と $ は find() で行ごとに適合する
+		final String text = "foo=1\nbar=22 baz\nqux=333";
+		final Regex.Matcher m0 = Regex.compile("^[a-z]+=[0-9]+$", Options.DEFAULT.multiline(true)).matcher(text);
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(), is("foo=1"));
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(), is("qux=333"));
+		assertThat(m0.find(), is(false));
+		assertThat(Regex.compile("^[a-z]+=[0-9]+$").matcher(text).find(), is(false));
+		
+		// キャプチャ・グループの位置も表明を満たす経路から求められる
+		final Regex.Matcher m1 = Regex.compile("\\b([a-z]+)=([0-9]+)\\b").matcher("x=1y a=22 b=3");
+		assertThat(m1.find(), is(true));
+		assertThat(m1.group(1), is("a"));
+		assertThat(m1.group(2), is("22"));
+		
+		// リージョンの境界は入力文字列の端とみなされる
+		final Regex.Matcher m2 = Regex.compile("^ab\\b").matcher("xabc");
+		m2.region(1, 3);
+		assertThat(m2.find(), is(true));
+		assertThat(m2.start(), is(1));
+		
+		// 文字クラスの内側とエスケープされた記号は通常の文字として扱われる
+		assertThat(Regex.compile("[$^]\\$\\^").matches("^$^"), is(true));
+		
+		// ストリーム処理では入力の区切りをまたいで直前・直後の文字を参照する
+		final List<String> groups = new ArrayList<String>();
+		final StreamMatcher m3 = Regex.compile("\\bfo+\\b|^x|y$", Options.DEFAULT.multiline(true)).streamMatcher(new MatchHandler() {
+			@Override
+			public boolean handle(final StreamMatcher m) {
+				groups.add(m.start() + ":" + m.group());
+				return true;
+			}
+		});
+		for (final String chunk : new String[]{"x fo", "o", " ffoo fo", "\nxfoo\n", "y", ""}) {
+			m3.feed(chunk);
+		}
+		m3.finish();
+		assertThat(groups, is(Arrays.asList("0:x", "2:foo", "11:fo", "14:x", "19:y")));
+		
+		final RegexSet set = RegexSet.compile("^a", "a$", "\\ba\\b");
+		assertThat(set.matches("a").toString(), is("{0, 1, 2}"));
+		assertThat(set.find("ba ab").toString(), is("{}"));
+		assertThat(set.find("ab a").toString(), is("{0, 1, 2}"));
+		assertThat(set.find("b a").toString(), is("{1, 2}"));
+	}
+
+	@Test
+	public void caseInsensitiveTest00() {
+		final String[] patterns = {"a+k", "[a-k]+", "[^a]K", "\u00c9", "\u212a", "(ab|k)x", "i", "[0-9a]+"};
+		final Options[] options = {Options.CASE_INSENSITIVE, Options.CASE_INSENSITIVE.eagerDfa(true),
+				Options.CASE_INSENSITIVE.unicodeCase(true), Options.CASE_INSENSITIVE.unicodeCase(true).eagerDfa(true)};
+		final String alphabet = "aAbBkKxX\u212a\u00e9\u00c9\u0131I1";
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (final String pattern : patterns) {
+			for (final Options option : options) {
+				final Regex re0 = Regex.compile(pattern, option);
+				final Pattern expected = Pattern.compile(pattern,
+						option.unicodeCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : Pattern.CASE_INSENSITIVE);
+				for (int i = 0; i < 200; i ++) {
+					buff.setLength(0);
+					final int len = random.nextInt(6);
+					for (int j = 0; j < len; j ++) {
+						buff.append(alphabet.charAt(random.nextInt(alphabet.length())));
+					}
+					final String input = buff.toString();
+					final String message = pattern + " " + option.unicodeCase + " " + input;
+					assertThat(message, re0.matches(input), is(expected.matcher(input).matches()));
+					final java.util.regex.Matcher m1 = expected.matcher(input);
+					final Regex.Matcher m0 = re0.matcher(input);
+					final Regex.Matcher m2 = re0.matcher(input.getBytes(Charset.forName("UTF-8")));
+					while (m1.find()) {
+						assertThat(message, m0.find(), is(true));
+						assertThat(message, m0.group(), is(m1.group()));
+						assertThat(message, m2.find(), is(true));
+						assertThat(message, m2.group(), is(m1.group()));
+					}
+					assertThat(message, m0.find(), is(false));
+					assertThat(message, m2.find(), is(false));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void caseInsensitiveTest01() {
+		// 大文字・小文字を区別するかどうかはオプションごとにキャッシュされる
+		assertThat(Regex.compile("abc").matches("ABC"), is(false));
+		assertThat(Regex.compile("abc", Options.CASE_INSENSITIVE).matches("aBc"), is(true));
+		assertThat(Regex.compile("abc").matches("ABC"), is(false));
+		
+		// 必須リテラルの探索は変種をもたない文字だけで行われる
+		final Regex.Matcher m0 = Regex.compile("id=[0-9]+;", Options.CASE_INSENSITIVE).matcher("x ID=12; Id=3;");
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(), is("ID=12;"));
+		assertThat(m0.find(), is(true));
+		assertThat(m0.group(), is("Id=3;"));
+		
+		// ASCIIの範囲だけを対象とする場合はASCII以外の文字の変種を加えない
+		assertThat(Regex.compile("\u00e9", Options.CASE_INSENSITIVE).matches("\u00c9"), is(false));
+		assertThat(Regex.compile("\u00e9", Options.CASE_INSENSITIVE.unicodeCase(true)).matches("\u00c9"), is(true));
+		
+		final RegexSet set = RegexSet.compile(Arrays.asList("get", "post"), Options.CASE_INSENSITIVE);
+		assertThat(set.matches("GET").toString(), is("{0}"));
+		assertThat(set.find("a Post b").toString(), is("{1}"));
+	}
+
+	@Test
+	public void reverseTest00() {
+		// 逆向きのDFAで求めた位置がNFAシミュレーションで求めた位置と一致する
+		final String[] patterns = {"abcd|bc", "b|abc", "a*b*", "(ab|a)(bc|c)?", "\\bo+|o\\b", "^a|a$", "(a|b)*a(a|b)", "あ+い?|いあ"};
+		final Options[] options = {Options.DEFAULT, Options.EAGER_DFA, Options.DEFAULT.cacheLimit(2),
+				Options.DEFAULT.multiline(true)};
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (final String pattern : patterns) {
+			for (final Options option : options) {
+				final Regex re0 = Regex.compile(pattern, option);
+				final Regex re1 = Regex.compile(pattern, option.nfaSimulation(true));
+				for (int i = 0; i < 200; i ++) {
+					buff.setLength(0);
+					final int len = random.nextInt(12);
+					for (int j = 0; j < len; j ++) {
+						buff.append("abcd o\nあい".charAt(random.nextInt(9)));
+					}
+					final String input = buff.toString();
+					final String message = pattern + " " + input.replace("\n", "\\n");
+					final Regex.Matcher m0 = re0.matcher(input);
+					final Regex.Matcher m1 = re1.matcher(input);
+					final Regex.Matcher m2 = re0.matcher(input.getBytes(Charset.forName("UTF-8")));
+					final Regex.Matcher m3 = re1.matcher(input.getBytes(Charset.forName("UTF-8")));
+					while (m1.find()) {
+						assertThat(message, m0.find(), is(true));
+						assertThat(message, m0.start() + "-" + m0.end(), is(m1.start() + "-" + m1.end()));
+					}
+					assertThat(message, m0.find(), is(false));
+					while (m3.find()) {
+						assertThat(message, m2.find(), is(true));
+						assertThat(message, m2.start() + "-" + m2.end(), is(m3.start() + "-" + m3.end()));
+					}
+					assertThat(message, m2.find(), is(false));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void reverseTest01() {
+		// より左側からはじまる適合がより右側で終わる場合も左側の適合が優先される
+		final Regex.Matcher m0 = Regex.compile("abcd|bc").matcher("xabcdbc");
+		assertThat(m0.find(), is(true));
+		assertThat(m0.start(), is(1));
+		assertThat(m0.end(), is(5));
+		assertThat(m0.find(), is(true));
+		assertThat(m0.start(), is(5));
+		assertThat(m0.end(), is(7));
+		assertThat(m0.find(), is(false));
+		
+		// 同じ位置からはじまる適合のうちもっとも長いものが選ばれる
+		final Regex.Matcher m1 = Regex.compile("a|ab|abc").matcher("zabcab");
+		assertThat(m1.find(), is(true));
+		assertThat(m1.group(), is("abc"));
+		assertThat(m1.find(), is(true));
+		assertThat(m1.group(), is("ab"));
+		
+		// 逆向きの評価でもUTF-8のバイト列と表明が正しく扱われる
+		final Regex.Matcher m2 = Regex.compile("\\bあ+x|^い").matcher("いあああx".getBytes(Charset.forName("UTF-8")));
+		assertThat(m2.find(), is(true));
+		assertThat(m2.start(), is(0));
+		assertThat(m2.end(), is(3));
+		assertThat(m2.find(), is(false));
+	}
+
+	@Test
+	public void parallelTest00() {
+		// 入力文字列を分割して並列に評価した結果が逐次評価の結果と一致する
+		final String[] patterns = {"(a|b)*a(a|b)", "([a-z]+ )*[a-z]*", "(\\b[a-z]+\\b| )*", "[^x]*(xy)*[^x]*"};
+		final Options[] options = {Options.DEFAULT, Options.EAGER_DFA, Options.DEFAULT.stateLimit(2)};
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		final Random random = new Random(0);
+		final StringBuilder buff = new StringBuilder();
+		for (final String pattern : patterns) {
+			for (final Options option : options) {
+				final Regex re0 = Regex.compile(pattern, option);
+				for (int i = 0; i < 4; i ++) {
+					buff.setLength(0);
+					final int len = 200000 + random.nextInt(100000);
+					for (int j = 0; j < len; j ++) {
+						buff.append("ab z".charAt(random.nextInt(4)));
+					}
+					if (i % 2 == 1) {
+						buff.setCharAt(random.nextInt(len), 'x');
+					}
+					final String input = buff.toString();
+					final String message = pattern + " " + i;
+					assertThat(message, re0.matches(input, pool), is(re0.matches(input)));
+					assertThat(message, re0.matches(ByteBuffer.wrap(input.getBytes(Charset.forName("UTF-8"))), pool),
+							is(re0.matches(input)));
+				}
+			}
+		}
+		// 短い入力文字列は逐次評価となる
+		assertThat(Regex.compile("(a|b)*c").matches("abac", pool), is(true));
+		assertThat(Regex.compile("(a|b)*c").matches("abca", pool), is(false));
+		pool.shutdown();
+	}
 }